@@ -20,6 +20,7 @@
 package org.xwiki.component.internal.multi;
 
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -120,6 +121,13 @@ public <T> void registerComponent(ComponentDescriptor<T> componentDescriptor) th
         getComponentManager().registerComponent(componentDescriptor);
     }
 
+    @Override
+    public void registerComponents(Collection<? extends ComponentDescriptor<?>> componentDescriptors)
+        throws ComponentRepositoryException
+    {
+        getComponentManager().registerComponents(componentDescriptors);
+    }
+
     @Override
     public void unregisterComponent(Type role, String hint)
     {
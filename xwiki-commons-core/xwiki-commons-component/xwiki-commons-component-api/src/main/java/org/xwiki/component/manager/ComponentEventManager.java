@@ -19,6 +19,8 @@
  */
 package org.xwiki.component.manager;
 
+import java.util.Collection;
+
 import org.xwiki.component.descriptor.ComponentDescriptor;
 
 /**
@@ -51,6 +53,22 @@
      */
     void notifyComponentRegistered(ComponentDescriptor<?> descriptor, ComponentManager componentManager);
 
+    /**
+     * Notify all listeners that several components have been registered at once. Listeners are notified only once all
+     * the passed components are available.
+     *
+     * @param descriptors the descriptors of the registered components
+     * @param componentManager the ComponentManager where the components have been registered
+     * @since 8.2M1
+     */
+    default void notifyComponentsRegistered(Collection<? extends ComponentDescriptor<?>> descriptors,
+        ComponentManager componentManager)
+    {
+        for (ComponentDescriptor<?> descriptor : descriptors) {
+            notifyComponentRegistered(descriptor, componentManager);
+        }
+    }
+
     /**
      * Notify all listeners that a component with the passed descriptor has been unregistered.
      *
@@ -20,6 +20,7 @@
 package org.xwiki.component.manager;
 
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -137,6 +138,24 @@
     <T> void registerComponent(ComponentDescriptor<T> componentDescriptor, T componentInstance)
         throws ComponentRepositoryException;
 
+    /**
+     * Add several components in the component repository dynamically.
+     * <p>
+     * Implementations are encouraged to make the components available only once all of them are registered and to
+     * send the registration events only at that point. The default implementation registers the components one by one.
+     *
+     * @param componentDescriptors the descriptors of the components to register
+     * @throws ComponentRepositoryException error when registering component descriptor.
+     * @since 8.2M1
+     */
+    default void registerComponents(Collection<? extends ComponentDescriptor<?>> componentDescriptors)
+        throws ComponentRepositoryException
+    {
+        for (ComponentDescriptor<?> componentDescriptor : componentDescriptors) {
+            registerComponent(componentDescriptor);
+        }
+    }
+
     /**
      * Remove a component from the component repository dynamically.
      *
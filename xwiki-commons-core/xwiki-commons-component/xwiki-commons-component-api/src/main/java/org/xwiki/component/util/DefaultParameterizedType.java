@@ -46,6 +46,11 @@ public class DefaultParameterizedType implements ParameterizedType
      */
     private final Class<?> rawType;
 
+    /**
+     * The type is immutable and often used as key (for example to lookup components) so the hash is computed only once.
+     */
+    private final int hash;
+
     /**
      * @param ownerType the owner type
      * @param rawType the raw type
@@ -54,8 +59,11 @@ public class DefaultParameterizedType implements ParameterizedType
     public DefaultParameterizedType(Type ownerType, Class<?> rawType, Type... actualTypeArguments)
     {
         this.ownerType = ownerType;
-        this.actualTypeArguments = actualTypeArguments;
+        this.actualTypeArguments = actualTypeArguments != null ? actualTypeArguments.clone() : null;
         this.rawType = rawType;
+
+        this.hash = Arrays.hashCode(this.actualTypeArguments) ^ Objects.hashCode(this.ownerType)
+            ^ Objects.hashCode(this.rawType);
     }
 
     /**
@@ -87,13 +95,26 @@ public Type getRawType()
     @Override
     public int hashCode()
     {
-        return Arrays.hashCode(this.actualTypeArguments) ^ Objects.hashCode(this.ownerType)
-            ^ Objects.hashCode(this.rawType);
+        return this.hash;
     }
 
     @Override
     public boolean equals(Object o)
     {
+        if (o == this) {
+            return true;
+        }
+
+        if (o instanceof DefaultParameterizedType) {
+            // Avoid copying the arguments
+            DefaultParameterizedType defaultParameterizedType = (DefaultParameterizedType) o;
+
+            return this.hash == defaultParameterizedType.hash
+                && Objects.equals(this.rawType, defaultParameterizedType.rawType)
+                && Objects.equals(this.ownerType, defaultParameterizedType.ownerType)
+                && Arrays.equals(this.actualTypeArguments, defaultParameterizedType.actualTypeArguments);
+        }
+
         if (o == null || !(o instanceof ParameterizedType)) {
             return false;
         }
@@ -0,0 +1,73 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.util;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DefaultParameterizedType}.
+ *
+ * @version $Id$
+ */
+public class DefaultParameterizedTypeTest
+{
+    private Map<String, List<String>> field;
+
+    @Test
+    public void equalsAndHashCode() throws Exception
+    {
+        ParameterizedType javaType =
+            (ParameterizedType) DefaultParameterizedTypeTest.class.getDeclaredField("field").getGenericType();
+        Type listType = new DefaultParameterizedType(null, List.class, String.class);
+        DefaultParameterizedType type = new DefaultParameterizedType(null, Map.class, String.class, listType);
+        DefaultParameterizedType otherType =
+            new DefaultParameterizedType(null, Map.class, String.class,
+                new DefaultParameterizedType(null, List.class, String.class));
+
+        Assert.assertEquals(type, otherType);
+        Assert.assertEquals(type.hashCode(), otherType.hashCode());
+
+        Assert.assertEquals(type, javaType);
+        Assert.assertEquals(javaType, type);
+        Assert.assertEquals(javaType.hashCode(), type.hashCode());
+        Assert.assertEquals(new DefaultParameterizedType(javaType), type);
+
+        Assert.assertNotEquals(new DefaultParameterizedType(null, Map.class, String.class, String.class), type);
+    }
+
+    @Test
+    public void argumentsAreCopied()
+    {
+        Type[] arguments = new Type[] { String.class };
+        DefaultParameterizedType type = new DefaultParameterizedType(null, List.class, arguments);
+        int hash = type.hashCode();
+
+        arguments[0] = Integer.class;
+
+        Assert.assertEquals(String.class, type.getActualTypeArguments()[0]);
+        Assert.assertEquals(hash, type.hashCode());
+    }
+}
@@ -27,14 +27,27 @@
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.URL;
+import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -57,6 +70,24 @@
  */
 public class ComponentAnnotationLoader
 {
+    /**
+     * The time spent loading and introspecting the component classes of a given jar.
+     *
+     * @version $Id$
+     */
+    private static final class LoadingStatistics
+    {
+        private final AtomicInteger components = new AtomicInteger();
+
+        private final AtomicLong time = new AtomicLong();
+
+        void add(long componentTime)
+        {
+            this.components.incrementAndGet();
+            this.time.addAndGet(componentTime);
+        }
+    }
+
     /**
      * Location in the classloader of the file defining the list of component implementation class to parser for
      * annotations.
@@ -72,11 +103,21 @@
     @Deprecated
     public static final String COMPONENT_OVERRIDE_LIST = "META-INF/component-overrides.txt";
 
+    /**
+     * The name of the system property which indicates the default maximum number of threads to use to load and
+     * introspect component classes.
+     *
+     * @since 8.2M1
+     */
+    public static final String PARALLELISM_PROPERTY = "xwiki.component.loader.parallelism";
+
     /**
      * The encoding used to parse component list files.
      */
     private static final String COMPONENT_LIST_ENCODING = "UTF-8";
 
+    private static final String UNKNOWN_LOCATION = "unknown location";
+
     /**
      * Logger to use for logging...
      */
@@ -87,6 +128,33 @@
      */
     private ComponentDescriptorFactory factory = new ComponentDescriptorFactory();
 
+    /**
+     * The maximum number of threads used to load and introspect component classes.
+     */
+    private int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 1);
+
+    /**
+     * @return the maximum number of threads used to load and introspect component classes
+     * @since 8.2M1
+     */
+    public int getParallelism()
+    {
+        return this.parallelism;
+    }
+
+    /**
+     * Indicate how many threads can be used to load and introspect component classes. Whatever the number of threads
+     * the components are always registered in the same order, from the current thread.
+     *
+     * @param parallelism the maximum number of threads used to load and introspect component classes, 1 (the default
+     *            unless the {@value #PARALLELISM_PROPERTY} system property is set) means sequential loading
+     * @since 8.2M1
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
     /**
      * Loads all components defined using annotations.
      *
@@ -149,39 +217,44 @@ public void register(ComponentManager manager, ClassLoader classLoader,
         try {
             // 2) For each component class name found, load its class and use introspection to find the necessary
             // annotations required to create a Component Descriptor.
-            Map<RoleHint<?>, ComponentDescriptor<?>> descriptorMap =
-                new HashMap<RoleHint<?>, ComponentDescriptor<?>>();
-            Map<RoleHint<?>, Integer> priorityMap = new HashMap<RoleHint<?>, Integer>();
+            List<Collection<? extends ComponentDescriptor>> declarationsDescriptors =
+                getComponentsDescriptors(classLoader, componentDeclarations);
 
-            for (ComponentDeclaration componentDeclaration : componentDeclarations) {
-                Class<?> componentClass;
-                try {
-                    componentClass = classLoader.loadClass(componentDeclaration.getImplementationClassName());
-                } catch (Exception e) {
-                    throw new RuntimeException(
-                        String.format("Failed to load component class [%s] for annotation parsing",
-                            componentDeclaration.getImplementationClassName()), e);
-                }
-
-                // Look for ComponentRole annotations and register one component per ComponentRole found
-                for (Type componentRoleType : findComponentRoleTypes(componentClass)) {
-                    for (ComponentDescriptor<?> componentDescriptor : this.factory.createComponentDescriptors(
-                        componentClass, componentRoleType)) {
-                        // If there's already a existing role/hint in the list of descriptors then decide which one
-                        // to keep by looking at their priorities. Highest priority wins (i.e. lowest integer value).
-                        RoleHint<?> roleHint =
-                            new RoleHint(componentDescriptor.getRoleType(), componentDescriptor.getRoleHint());
-
-                        addComponent(descriptorMap, priorityMap, roleHint, componentDescriptor, componentDeclaration,
-                            true);
-                    }
+            Map<RoleHint<?>, ComponentDescriptor<?>> descriptorMap =
+                new LinkedHashMap<RoleHint<?>, ComponentDescriptor<?>>();
+            final Map<RoleHint<?>, Integer> priorityMap = new HashMap<RoleHint<?>, Integer>();
+
+            // Always resolve overrides in declaration order so that the result does not depend on the way the
+            // descriptors were created
+            for (int i = 0; i < componentDeclarations.size(); ++i) {
+                ComponentDeclaration componentDeclaration = componentDeclarations.get(i);
+                for (ComponentDescriptor<?> componentDescriptor : declarationsDescriptors.get(i)) {
+                    // If there's already a existing role/hint in the list of descriptors then decide which one
+                    // to keep by looking at their priorities. Highest priority wins (i.e. lowest integer value).
+                    RoleHint<?> roleHint =
+                        new RoleHint(componentDescriptor.getRoleType(), componentDescriptor.getRoleHint());
+
+                    addComponent(descriptorMap, priorityMap, roleHint, componentDescriptor, componentDeclaration,
+                        true);
                 }
             }
 
-            // 3) Activate all component descriptors
-            for (ComponentDescriptor<?> descriptor : descriptorMap.values()) {
-                manager.registerComponent(descriptor);
+            // 3) Activate all component descriptors at once, highest priority first (the sort is stable so components
+            // with the same priority keep the declaration order)
+            List<RoleHint<?>> roleHints = new ArrayList<RoleHint<?>>(descriptorMap.keySet());
+            Collections.sort(roleHints, new Comparator<RoleHint<?>>()
+            {
+                @Override
+                public int compare(RoleHint<?> roleHint1, RoleHint<?> roleHint2)
+                {
+                    return priorityMap.get(roleHint1).compareTo(priorityMap.get(roleHint2));
+                }
+            });
+            List<ComponentDescriptor<?>> descriptors = new ArrayList<ComponentDescriptor<?>>(roleHints.size());
+            for (RoleHint<?> roleHint : roleHints) {
+                descriptors.add(descriptorMap.get(roleHint));
             }
+            manager.registerComponents(descriptors);
         } catch (Exception e) {
             // Make sure we make the calling code fail in order to fail fast and prevent the application to start
             // if something is amiss.
@@ -189,6 +262,123 @@ public void register(ComponentManager manager, ClassLoader classLoader,
         }
     }
 
+    /**
+     * @return the descriptors of each passed declaration, in the same order as the declarations
+     */
+    private List<Collection<? extends ComponentDescriptor>> getComponentsDescriptors(final ClassLoader classLoader,
+        List<ComponentDeclaration> componentDeclarations)
+    {
+        final ConcurrentMap<String, LoadingStatistics> statistics =
+            new ConcurrentHashMap<String, LoadingStatistics>();
+
+        List<Collection<? extends ComponentDescriptor>> declarationsDescriptors =
+            new ArrayList<Collection<? extends ComponentDescriptor>>(componentDeclarations.size());
+
+        if (this.parallelism > 1 && componentDeclarations.size() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+
+            try {
+                List<ForkJoinTask<Collection<? extends ComponentDescriptor>>> tasks =
+                    new ArrayList<ForkJoinTask<Collection<? extends ComponentDescriptor>>>(
+                        componentDeclarations.size());
+                for (final ComponentDeclaration componentDeclaration : componentDeclarations) {
+                    tasks.add(pool.submit(new Callable<Collection<? extends ComponentDescriptor>>()
+                    {
+                        @Override
+                        public Collection<? extends ComponentDescriptor> call()
+                        {
+                            return getComponentsDescriptors(classLoader, componentDeclaration, statistics);
+                        }
+                    }));
+                }
+
+                for (ForkJoinTask<Collection<? extends ComponentDescriptor>> task : tasks) {
+                    // Rethrow the exact failure of the task
+                    declarationsDescriptors.add(task.join());
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } else {
+            for (ComponentDeclaration componentDeclaration : componentDeclarations) {
+                declarationsDescriptors
+                    .add(getComponentsDescriptors(classLoader, componentDeclaration, statistics));
+            }
+        }
+
+        logStatistics(statistics);
+
+        return declarationsDescriptors;
+    }
+
+    private Collection<? extends ComponentDescriptor> getComponentsDescriptors(ClassLoader classLoader,
+        ComponentDeclaration componentDeclaration, ConcurrentMap<String, LoadingStatistics> statistics)
+    {
+        long start = System.nanoTime();
+
+        Class<?> componentClass;
+        try {
+            componentClass = classLoader.loadClass(componentDeclaration.getImplementationClassName());
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Failed to load component class [%s] for annotation parsing",
+                componentDeclaration.getImplementationClassName()), e);
+        }
+
+        // Look for ComponentRole annotations and register one component per ComponentRole found
+        List<ComponentDescriptor> descriptors = getComponentsDescriptors(componentClass);
+
+        getStatistics(statistics, componentClass).add(System.nanoTime() - start);
+
+        return descriptors;
+    }
+
+    private LoadingStatistics getStatistics(ConcurrentMap<String, LoadingStatistics> statistics,
+        Class<?> componentClass)
+    {
+        String location;
+        CodeSource codeSource = componentClass.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            location = codeSource.getLocation().toString();
+        } else {
+            location = UNKNOWN_LOCATION;
+        }
+
+        LoadingStatistics locationStatistics = statistics.get(location);
+        if (locationStatistics == null) {
+            locationStatistics = new LoadingStatistics();
+            LoadingStatistics existingStatistics = statistics.putIfAbsent(location, locationStatistics);
+            if (existingStatistics != null) {
+                locationStatistics = existingStatistics;
+            }
+        }
+
+        return locationStatistics;
+    }
+
+    private void logStatistics(Map<String, LoadingStatistics> statistics)
+    {
+        if (LOGGER.isDebugEnabled()) {
+            List<Map.Entry<String, LoadingStatistics>> entries =
+                new ArrayList<Map.Entry<String, LoadingStatistics>>(statistics.entrySet());
+            // Slowest jars first
+            Collections.sort(entries, new Comparator<Map.Entry<String, LoadingStatistics>>()
+            {
+                @Override
+                public int compare(Map.Entry<String, LoadingStatistics> entry1,
+                    Map.Entry<String, LoadingStatistics> entry2)
+                {
+                    return Long.compare(entry2.getValue().time.get(), entry1.getValue().time.get());
+                }
+            });
+
+            for (Map.Entry<String, LoadingStatistics> entry : entries) {
+                LOGGER.debug("Loaded [{}] component classes from [{}] in [{}] ms",
+                    entry.getValue().components.get(), entry.getKey(),
+                    TimeUnit.NANOSECONDS.toMillis(entry.getValue().time.get()));
+            }
+        }
+    }
+
     private void addComponent(Map<RoleHint<?>, ComponentDescriptor<?>> descriptorMap,
         Map<RoleHint<?>, Integer> priorityMap, RoleHint<?> roleHint, ComponentDescriptor<?> componentDescriptor,
         ComponentDeclaration componentDeclaration, boolean warn)
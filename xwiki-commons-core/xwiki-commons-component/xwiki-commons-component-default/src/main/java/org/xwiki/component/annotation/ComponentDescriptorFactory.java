@@ -48,8 +48,21 @@
      * cannot use Components to do this since it would be a chicken and egg issue since this factory class is used to
      * initialize Components...
      */
-    private ServiceLoader<ComponentDependencyFactory> componentDependencyFactories = ServiceLoader
-        .load(ComponentDependencyFactory.class);
+    private final List<ComponentDependencyFactory> componentDependencyFactories;
+
+    /**
+     * Default constructor.
+     */
+    public ComponentDescriptorFactory()
+    {
+        // Iterating a ServiceLoader is not thread safe so resolve the factories once and for all (descriptors can be
+        // created from several threads, see ComponentAnnotationLoader#setParallelism)
+        List<ComponentDependencyFactory> factories = new ArrayList<ComponentDependencyFactory>();
+        for (ComponentDependencyFactory factory : ServiceLoader.load(ComponentDependencyFactory.class)) {
+            factories.add(factory);
+        }
+        this.componentDependencyFactories = factories;
+    }
 
     /**
      * Create component descriptors for the passed component implementation class and component role class. There can be
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import org.xwiki.component.util.DefaultParameterizedType;
+
+/**
+ * Convert role types to a canonical representation which is cheap to use as a lookup key: {@link Class}es are used as
+ * is and {@link ParameterizedType}s are converted to {@link DefaultParameterizedType}s, which cache their hash code and
+ * compare to each other without copying their arguments.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class CanonicalTypes
+{
+    private CanonicalTypes()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param type the type to convert
+     * @return a type equal to the passed one, in canonical form
+     */
+    static Type canonicalize(Type type)
+    {
+        if (!(type instanceof ParameterizedType)) {
+            return type;
+        }
+
+        ParameterizedType parameterizedType = (ParameterizedType) type;
+
+        boolean changed = !(type instanceof DefaultParameterizedType);
+
+        Type ownerType = parameterizedType.getOwnerType();
+        Type canonicalOwnerType = canonicalize(ownerType);
+        changed |= canonicalOwnerType != ownerType;
+
+        Type[] arguments = parameterizedType.getActualTypeArguments();
+        for (int i = 0; i < arguments.length; ++i) {
+            Type argument = canonicalize(arguments[i]);
+            changed |= argument != arguments[i];
+            arguments[i] = argument;
+        }
+
+        return changed
+            ? new DefaultParameterizedType(canonicalOwnerType, (Class<?>) parameterizedType.getRawType(), arguments)
+            : type;
+    }
+}
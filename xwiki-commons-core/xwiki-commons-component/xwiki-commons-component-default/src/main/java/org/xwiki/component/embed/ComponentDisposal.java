@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.internal.RoleHint;
+
+/**
+ * Dispose a set of components, priority level by priority level. Inside a priority level the components are disposed
+ * in waves of components which are not used by the components remaining to dispose.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class ComponentDisposal
+{
+    private static final Logger SHUTDOWN_LOGGER = LoggerFactory.getLogger("org.xwiki.shutdown");
+
+    /**
+     * A component to dispose.
+     *
+     * @version $Id$
+     */
+    private static final class Node extends ComponentWaves.AbstractNode
+    {
+        private final EmbeddableComponentManager componentManager;
+
+        private final RoleHint<?> roleHint;
+
+        private final int priority;
+
+        Node(EmbeddableComponentManager componentManager, RoleHint<?> roleHint, ComponentDescriptor<?> descriptor,
+            int priority)
+        {
+            super(descriptor);
+
+            this.componentManager = componentManager;
+            this.roleHint = roleHint;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                this.componentManager.disposeComponent(this.roleHint);
+            } catch (RuntimeException e) {
+                SHUTDOWN_LOGGER.error("Unexpected error when disposing component [{}]", this.roleHint, e);
+            }
+        }
+    }
+
+    private final EmbeddableComponentManager componentManager;
+
+    private final DisposalPolicy policy;
+
+    /**
+     * The components to dispose grouped by priority level, in disposal order.
+     */
+    private final List<List<Node>> levels = new ArrayList<>();
+
+    private int size;
+
+    /**
+     * @param componentManager the component manager to use to dispose the components
+     * @param policy the way to dispose the components
+     */
+    ComponentDisposal(EmbeddableComponentManager componentManager, DisposalPolicy policy)
+    {
+        this.componentManager = componentManager;
+        this.policy = policy;
+    }
+
+    /**
+     * Add a component to dispose. The components must be added by increasing priority.
+     *
+     * @param roleHint the role and hint of the component to dispose
+     * @param descriptor the descriptor of the component to dispose
+     * @param priority the priority of the component (components with the lowest priority are disposed first)
+     */
+    void add(RoleHint<?> roleHint, ComponentDescriptor<?> descriptor, int priority)
+    {
+        List<Node> level = this.levels.isEmpty() ? null : this.levels.get(this.levels.size() - 1);
+        if (level == null || level.get(0).priority != priority) {
+            level = new ArrayList<>();
+            this.levels.add(level);
+        }
+
+        level.add(new Node(this.componentManager, roleHint, descriptor, priority));
+        ++this.size;
+    }
+
+    /**
+     * Dispose the components.
+     */
+    void run()
+    {
+        long start = System.nanoTime();
+
+        ComponentWaves executor = new ComponentWaves("XWiki component disposal %d", this.policy.getParallelism(),
+            this.policy.getTimeout());
+
+        try {
+            if (!dispose(executor)) {
+                SHUTDOWN_LOGGER.warn("Could not dispose all the components in less than [{}] ms",
+                    this.policy.getTimeout());
+
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return;
+        } finally {
+            // Don't interrupt components being disposed
+            executor.shutdown();
+        }
+
+        SHUTDOWN_LOGGER.debug("Disposed [{}] components in [{}] ms", this.size,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private boolean dispose(ComponentWaves executor) throws InterruptedException
+    {
+        for (List<Node> level : this.levels) {
+            // A component is disposed after all the components using it
+            List<List<Node>> waves = ComponentWaves.getWaves(level, ComponentWaves.Order.DEPENDENTS_FIRST);
+
+            if (executor.run(waves) < waves.size()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
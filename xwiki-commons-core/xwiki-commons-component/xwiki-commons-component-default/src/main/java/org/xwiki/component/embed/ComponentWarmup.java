@@ -0,0 +1,210 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+
+/**
+ * Create a set of singleton components in advance, in waves of components which only depend on components created in
+ * previous waves.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class ComponentWarmup
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComponentWarmup.class);
+
+    /**
+     * A component to create.
+     *
+     * @version $Id$
+     */
+    private static final class Node extends ComponentWaves.AbstractNode
+    {
+        private final ComponentManager componentManager;
+
+        private volatile long creationTime = -1;
+
+        private volatile Throwable failure;
+
+        private long criticalPathTime;
+
+        private Node criticalPathPrevious;
+
+        Node(ComponentManager componentManager, ComponentDescriptor<?> descriptor)
+        {
+            super(descriptor);
+
+            this.componentManager = componentManager;
+        }
+
+        @Override
+        public void run()
+        {
+            long start = System.nanoTime();
+
+            try {
+                this.componentManager.getInstance(getDescriptor().getRoleType(), getDescriptor().getRoleHint());
+
+                this.creationTime = System.nanoTime() - start;
+            } catch (ComponentLookupException | RuntimeException e) {
+                this.failure = e;
+
+                LOGGER.warn("Failed to create component [{}] in advance: {}", getDescriptor(),
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+    }
+
+    private final WarmupPolicy policy;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * @param componentManager the component manager to use to create the components
+     * @param policy the way to create the components
+     * @param descriptors the descriptors of the singleton components to create
+     */
+    ComponentWarmup(ComponentManager componentManager, WarmupPolicy policy,
+        Collection<ComponentDescriptor<?>> descriptors)
+    {
+        this.policy = policy;
+
+        for (ComponentDescriptor<?> descriptor : descriptors) {
+            this.nodes.add(new Node(componentManager, descriptor));
+        }
+    }
+
+    /**
+     * @return what happened
+     */
+    WarmupReport run()
+    {
+        long start = System.nanoTime();
+
+        List<List<Node>> waves = ComponentWaves.getWaves(this.nodes, ComponentWaves.Order.DEPENDENCIES_FIRST);
+
+        int createdWaves = create(waves);
+
+        Node last = computeCriticalPath(waves);
+
+        List<ComponentDescriptor<?>> criticalPath = new ArrayList<>();
+        for (Node node = last; node != null; node = node.criticalPathPrevious) {
+            criticalPath.add(node.getDescriptor());
+        }
+        Collections.reverse(criticalPath);
+
+        Map<ComponentDescriptor<?>, Long> creationTimes = new LinkedHashMap<>();
+        Map<ComponentDescriptor<?>, Throwable> failures = new LinkedHashMap<>();
+        for (List<Node> wave : waves) {
+            for (Node node : wave) {
+                if (node.creationTime >= 0) {
+                    creationTimes.put(node.getDescriptor(), node.creationTime);
+                } else if (node.failure != null) {
+                    failures.put(node.getDescriptor(), node.failure);
+                }
+            }
+        }
+
+        WarmupReport report = new WarmupReport(creationTimes, failures, createdWaves, criticalPath,
+            last != null ? last.criticalPathTime : 0, System.nanoTime() - start);
+
+        LOGGER.debug("Created [{}] components in advance in [{}] waves and [{}] ms (critical path: [{}] ms)",
+            creationTimes.size(), createdWaves, TimeUnit.NANOSECONDS.toMillis(report.getTime()),
+            TimeUnit.NANOSECONDS.toMillis(report.getCriticalPathTime()));
+
+        return report;
+    }
+
+    private int create(List<List<Node>> waves)
+    {
+        ComponentWaves executor = new ComponentWaves("XWiki component warmup %d", this.policy.getParallelism(),
+            this.policy.getTimeout());
+
+        int createdWaves = 0;
+        try {
+            createdWaves = executor.run(waves);
+
+            if (createdWaves < waves.size()) {
+                LOGGER.warn("Could not create all the components in advance in less than [{}] ms",
+                    this.policy.getTimeout());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Don't interrupt components being created
+            executor.shutdown();
+        }
+
+        return createdWaves;
+    }
+
+    /**
+     * @return the last node of the critical path
+     */
+    private Node computeCriticalPath(List<List<Node>> waves)
+    {
+        // The dependencies of a node are always in a previous wave
+        Node last = null;
+        for (List<Node> wave : waves) {
+            for (Node node : wave) {
+                computeCriticalPath(node);
+
+                if (last == null || node.criticalPathTime > last.criticalPathTime) {
+                    last = node;
+                }
+            }
+        }
+
+        return last;
+    }
+
+    private void computeCriticalPath(Node node)
+    {
+        Node previous = null;
+        for (ComponentWaves.AbstractNode dependency : node.getPrevious()) {
+            Node dependencyNode = (Node) dependency;
+
+            // Ignore dependency cycles
+            if (dependencyNode.getWave() < node.getWave()
+                && (previous == null || dependencyNode.criticalPathTime > previous.criticalPathTime)) {
+                previous = dependencyNode;
+            }
+        }
+
+        node.criticalPathPrevious = previous;
+        node.criticalPathTime =
+            Math.max(0, node.creationTime) + (previous != null ? previous.criticalPathTime : 0);
+    }
+}
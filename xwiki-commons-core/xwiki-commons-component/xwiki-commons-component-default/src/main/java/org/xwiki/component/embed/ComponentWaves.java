@@ -0,0 +1,289 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.descriptor.ComponentDependency;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.internal.RoleHint;
+import org.xwiki.component.util.ReflectionUtils;
+
+/**
+ * Run a task for each component of a set, in waves: the tasks of a wave are executed in parallel and only once all the
+ * tasks of the previous waves are finished. The waves are computed from the dependencies between the components of
+ * the set, in dependency order (see {@link Order}).
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class ComponentWaves
+{
+    /**
+     * The order in which the components are handled.
+     *
+     * @version $Id$
+     */
+    enum Order
+    {
+        /**
+         * A component is handled after the components it depends on (e.g. to create them).
+         */
+        DEPENDENCIES_FIRST,
+
+        /**
+         * A component is handled after the components depending on it (e.g. to dispose them).
+         */
+        DEPENDENTS_FIRST
+    }
+
+    /**
+     * The task to execute for a component, and the components to handle before it.
+     *
+     * @version $Id$
+     */
+    abstract static class AbstractNode implements Runnable
+    {
+        private final ComponentDescriptor<?> descriptor;
+
+        private final List<AbstractNode> previous = new ArrayList<>();
+
+        private int wave = -1;
+
+        /**
+         * @param descriptor the descriptor of the component
+         */
+        AbstractNode(ComponentDescriptor<?> descriptor)
+        {
+            this.descriptor = descriptor;
+        }
+
+        /**
+         * @return the descriptor of the component
+         */
+        ComponentDescriptor<?> getDescriptor()
+        {
+            return this.descriptor;
+        }
+
+        /**
+         * @return the components to handle before this one, in previous waves unless there is a dependency cycle
+         */
+        List<AbstractNode> getPrevious()
+        {
+            return this.previous;
+        }
+
+        /**
+         * @return the index of the wave of the component
+         */
+        int getWave()
+        {
+            return this.wave;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComponentWaves.class);
+
+    private final ExecutorService executor;
+
+    private final long deadline;
+
+    /**
+     * @param threadNamePattern the naming pattern of the threads executing the tasks
+     * @param parallelism the maximum number of tasks executed at the same time
+     * @param timeout the maximum time in milliseconds to wait for the tasks, 0 or less to wait as long as needed
+     */
+    ComponentWaves(String threadNamePattern, int parallelism, long timeout)
+    {
+        this.deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+
+        BasicThreadFactory threadFactory =
+            new BasicThreadFactory.Builder().namingPattern(threadNamePattern).daemon(true).build();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), threadFactory);
+    }
+
+    /**
+     * Group the passed nodes in waves.
+     *
+     * @param <N> the type of the nodes
+     * @param nodes the nodes to group
+     * @param order the order in which the components are handled
+     * @return the waves
+     */
+    static <N extends AbstractNode> List<List<N>> getWaves(Collection<N> nodes, Order order)
+    {
+        Map<RoleHint<?>, N> nodesByRoleHint = new HashMap<>();
+        Map<Type, List<N>> nodesByType = new HashMap<>();
+        for (N node : nodes) {
+            ComponentDescriptor<?> descriptor = node.getDescriptor();
+
+            nodesByRoleHint.put(new RoleHint<>(descriptor.getRoleType(), descriptor.getRoleHint()), node);
+
+            List<N> typeNodes = nodesByType.get(descriptor.getRoleType());
+            if (typeNodes == null) {
+                typeNodes = new ArrayList<>();
+                nodesByType.put(descriptor.getRoleType(), typeNodes);
+            }
+            typeNodes.add(node);
+        }
+
+        for (N node : nodes) {
+            for (ComponentDependency<?> dependency : node.getDescriptor().getComponentDependencies()) {
+                for (N dependencyNode : getDependencyNodes(dependency, nodesByRoleHint, nodesByType)) {
+                    if (dependencyNode == node) {
+                        continue;
+                    }
+
+                    if (order == Order.DEPENDENCIES_FIRST) {
+                        node.getPrevious().add(dependencyNode);
+                    } else {
+                        dependencyNode.getPrevious().add(node);
+                    }
+                }
+            }
+        }
+
+        List<List<N>> waves = new ArrayList<>();
+        for (N node : nodes) {
+            int wave = computeWave(node, new HashSet<AbstractNode>());
+
+            while (waves.size() <= wave) {
+                waves.add(new ArrayList<N>());
+            }
+            waves.get(wave).add(node);
+        }
+
+        return waves;
+    }
+
+    private static <N extends AbstractNode> List<N> getDependencyNodes(ComponentDependency<?> dependency,
+        Map<RoleHint<?>, N> nodesByRoleHint, Map<Type, List<N>> nodesByType)
+    {
+        List<N> dependencyNodes = null;
+
+        switch (InjectionPlan.DependencyKind.of(dependency)) {
+            case COMPONENT:
+            case PROVIDER:
+                N dependencyNode =
+                    nodesByRoleHint.get(new RoleHint<>(dependency.getRoleType(), dependency.getRoleHint()));
+                if (dependencyNode != null) {
+                    dependencyNodes = Collections.singletonList(dependencyNode);
+                }
+                break;
+            case LIST:
+            case MAP:
+                dependencyNodes = nodesByType.get(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
+                break;
+            default:
+                // Not a dependency on another component
+                break;
+        }
+
+        return dependencyNodes != null ? dependencyNodes : Collections.<N>emptyList();
+    }
+
+    private static int computeWave(AbstractNode node, Set<AbstractNode> visiting)
+    {
+        if (node.wave < 0) {
+            if (!visiting.add(node)) {
+                // Dependency cycle, there is no right order
+                return 0;
+            }
+
+            int wave = 0;
+            for (AbstractNode previousNode : node.previous) {
+                wave = Math.max(wave, computeWave(previousNode, visiting) + 1);
+            }
+            node.wave = wave;
+
+            visiting.remove(node);
+        }
+
+        return node.wave;
+    }
+
+    /**
+     * Execute the tasks of the passed waves, wave by wave.
+     *
+     * @param waves the waves to execute
+     * @return the number of waves fully executed before the timeout
+     * @throws InterruptedException if the current thread was interrupted while waiting for the tasks
+     */
+    int run(List<? extends List<? extends AbstractNode>> waves) throws InterruptedException
+    {
+        int executedWaves = 0;
+        for (List<? extends AbstractNode> wave : waves) {
+            if (!runWave(wave)) {
+                break;
+            }
+
+            ++executedWaves;
+        }
+
+        return executedWaves;
+    }
+
+    private boolean runWave(List<? extends AbstractNode> wave) throws InterruptedException
+    {
+        List<Future<?>> futures = new ArrayList<>(wave.size());
+        for (AbstractNode node : wave) {
+            futures.add(this.executor.submit(node));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get(this.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                // Should never happen since the nodes catch their own errors
+                LOGGER.error("Unexpected error when handling a component", e);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop the threads once the tasks already submitted are finished (they are not interrupted).
+     */
+    void shutdown()
+    {
+        this.executor.shutdown();
+    }
+}
@@ -21,14 +21,20 @@
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Provider;
 
@@ -41,6 +47,7 @@
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.descriptor.DefaultComponentDescriptor;
 import org.xwiki.component.internal.RoleHint;
+import org.xwiki.component.internal.multi.DelegateComponentManager;
 import org.xwiki.component.manager.ComponentEventManager;
 import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentLookupException;
@@ -91,6 +98,22 @@ public class EmbeddableComponentManager implements NamespacedComponentManager, D
          */
         public volatile R instance;
 
+        /**
+         * How to create new instances of the component. Lazily initialized when needed.
+         */
+        public volatile InjectionPlan<R> injectionPlan;
+
+        /**
+         * The creation of the singleton instance in progress, if any.
+         */
+        public final AtomicReference<InstanceCreation<R>> creation = new AtomicReference<>();
+
+        /**
+         * True once the entry has been unregistered or replaced: an instance created after that must not be stored.
+         * Only modified while holding the lock of the entry.
+         */
+        public boolean released;
+
         public ComponentEntry(ComponentDescriptor<R> descriptor, R instance)
         {
             this.descriptor = descriptor;
@@ -98,15 +121,61 @@ public ComponentEntry(ComponentDescriptor<R> descriptor, R instance)
         }
     }
 
-    private Map<RoleHint<?>, ComponentEntry<?>> componentEntries = new ConcurrentHashMap<>();
+    /**
+     * The registered components indexed by role type and then by role hint so that lookups of all the components
+     * implementing a given role don't have to go through all the registered components.
+     */
+    private ConcurrentMap<Type, Map<String, ComponentEntry<?>>> componentEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented each time a component is registered or unregistered in any component manager of this type or when
+     * the parent of one of them is replaced. Shared by all the component managers so that checking whether something
+     * changed in any of the parents is a single read.
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /**
+     * The generation in which {@link #staticParents} was computed.
+     */
+    private volatile long staticParentsGeneration = -1;
+
+    /**
+     * True if all the parents of this component manager are component managers of this type, i.e. don't depend on
+     * the context.
+     */
+    private volatile boolean staticParents;
+
+    /**
+     * The components which can't be found in this component manager or its parents, to avoid going through all the
+     * parents again and again when looking for components which don't exist.
+     */
+    private final MissingComponentCache missingComponents = new MissingComponentCache();
 
     private Logger logger = LoggerFactory.getLogger(EmbeddableComponentManager.class);
 
+    /**
+     * @see #setDisposalPolicy(DisposalPolicy)
+     */
+    private DisposalPolicy disposalPolicy;
+
     /**
      * Finds all lifecycle handlers to use when instantiating a Component.
      */
     private ServiceLoader<LifecycleHandler> lifecycleHandlers = ServiceLoader.load(LifecycleHandler.class);
 
+    /**
+     * True if an extending class customized the way dependencies are resolved, in which case pre-classified
+     * dependencies can't be used.
+     */
+    private final boolean customDependencyInstance =
+        isOverridden("getDependencyInstance", ComponentDescriptor.class, Object.class, ComponentDependency.class);
+
+    /**
+     * True if an extending class customized the way components are looked up, in which case lookups have to go through
+     * {@link #getComponentInstance(RoleHint)}.
+     */
+    private final boolean customComponentInstance = isOverridden("getComponentInstance", RoleHint.class);
+
     public EmbeddableComponentManager()
     {
         registerThis();
@@ -162,6 +231,64 @@ public void initialize(ClassLoader classLoader)
         }
     }
 
+    /**
+     * Load all component annotations, register them as components and create all the singleton components in advance
+     * so that the first lookups don't have to pay for it.
+     *
+     * @param classLoader the class loader to use to look for component definitions
+     * @param policy the way to create the singleton components
+     * @return what happened when creating the singleton components
+     * @since 8.2M1
+     */
+    public WarmupReport initialize(ClassLoader classLoader, WarmupPolicy policy)
+    {
+        initialize(classLoader);
+
+        return warmup(policy);
+    }
+
+    /**
+     * Create all the registered singleton components which don't exist yet. The dependencies between components are
+     * used to create them in waves of components which can be created in parallel.
+     *
+     * @param policy the way to create the singleton components
+     * @return what happened when creating the singleton components
+     * @since 8.2M1
+     */
+    public WarmupReport warmup(WarmupPolicy policy)
+    {
+        List<ComponentDescriptor<?>> descriptors = new ArrayList<>();
+        for (Map<String, ComponentEntry<?>> entries : this.componentEntries.values()) {
+            for (ComponentEntry<?> entry : entries.values()) {
+                if (entry.instance == null
+                    && entry.descriptor.getInstantiationStrategy() == ComponentInstantiationStrategy.SINGLETON) {
+                    descriptors.add(entry.descriptor);
+                }
+            }
+        }
+
+        return new ComponentWarmup(this, policy, descriptors).run();
+    }
+
+    /**
+     * @return the way to dispose the components, null if they are disposed one by one
+     * @since 8.2M1
+     */
+    public DisposalPolicy getDisposalPolicy()
+    {
+        return this.disposalPolicy;
+    }
+
+    /**
+     * @param disposalPolicy the way to dispose the components when this component manager is disposed, null (the
+     *            default) to dispose them one by one in the current thread
+     * @since 8.2M1
+     */
+    public void setDisposalPolicy(DisposalPolicy disposalPolicy)
+    {
+        this.disposalPolicy = disposalPolicy;
+    }
+
     @Override
     public boolean hasComponent(Type role)
     {
@@ -171,23 +298,45 @@ public boolean hasComponent(Type role)
     @Override
     public boolean hasComponent(Type role, String hint)
     {
-        if (this.componentEntries.containsKey(new RoleHint<>(role, hint))) {
+        if (getComponentEntry(role, hint) != null) {
             return true;
         }
 
-        return getParent() != null ? getParent().hasComponent(role, hint) : false;
+        ComponentManager parentComponentManager = getParent();
+        if (parentComponentManager == null) {
+            return false;
+        }
+
+        String roleHint = hint != null ? hint : RoleHint.DEFAULT_HINT;
+        long currentGeneration = GENERATION.get();
+        ComponentManager cacheParent = getCacheParent();
+        if (this.missingComponents.isMissing(currentGeneration, cacheParent, role, roleHint)) {
+            return false;
+        }
+
+        boolean result = parentComponentManager.hasComponent(role, hint);
+        if (!result) {
+            this.missingComponents.setMissing(currentGeneration, cacheParent, role, roleHint);
+        }
+
+        return result;
     }
 
     @Override
     public <T> T getInstance(Type roleType) throws ComponentLookupException
     {
-        return getComponentInstance(new RoleHint<T>(roleType));
+        return getInstance(roleType, RoleHint.DEFAULT_HINT);
     }
 
     @Override
     public <T> T getInstance(Type roleType, String roleHint) throws ComponentLookupException
     {
-        return getComponentInstance(new RoleHint<T>(roleType, roleHint));
+        if (this.customComponentInstance) {
+            return getComponentInstance(new RoleHint<T>(roleType, roleHint));
+        }
+
+        // Don't allocate any lookup key
+        return getComponentInstance(roleType, roleHint != null ? roleHint : RoleHint.DEFAULT_HINT);
     }
 
     @Override
@@ -206,14 +355,14 @@ public <T> Map<String, T> getInstanceMap(Type role) throws ComponentLookupExcept
     {
         Map<String, T> objects = new HashMap<>();
 
-        for (Map.Entry<RoleHint<?>, ComponentEntry<?>> entry : this.componentEntries.entrySet()) {
-            RoleHint<?> roleHint = entry.getKey();
-
-            if (role.equals(roleHint.getRoleType())) {
+        Map<String, ComponentEntry<?>> entries = this.componentEntries.get(role);
+        if (entries != null) {
+            for (Map.Entry<String, ComponentEntry<?>> entry : entries.entrySet()) {
                 try {
-                    objects.put(roleHint.getHint(), getComponentInstance((ComponentEntry<T>) entry.getValue()));
+                    objects.put(entry.getKey(), getComponentInstance((ComponentEntry<T>) entry.getValue()));
                 } catch (Exception e) {
-                    throw new ComponentLookupException("Failed to lookup component [" + roleHint + "]", e);
+                    throw new ComponentLookupException(
+                        "Failed to lookup component [" + new RoleHint<>(role, entry.getKey()) + "]", e);
                 }
             }
         }
@@ -236,11 +385,20 @@ public <T> Map<String, T> getInstanceMap(Type role) throws ComponentLookupExcept
     public <T> ComponentDescriptor<T> getComponentDescriptor(Type role, String hint)
     {
         ComponentDescriptor<T> result = null;
-        ComponentEntry<T> componentEntry = (ComponentEntry<T>) this.componentEntries.get(new RoleHint<T>(role, hint));
+        ComponentEntry<T> componentEntry = (ComponentEntry<T>) getComponentEntry(role, hint);
         if (componentEntry == null) {
             // Check in parent!
-            if (getParent() != null) {
-                result = getParent().getComponentDescriptor(role, hint);
+            ComponentManager parentComponentManager = getParent();
+            if (parentComponentManager != null) {
+                String roleHint = hint != null ? hint : RoleHint.DEFAULT_HINT;
+                long currentGeneration = GENERATION.get();
+                ComponentManager cacheParent = getCacheParent();
+                if (!this.missingComponents.isMissing(currentGeneration, cacheParent, role, roleHint)) {
+                    result = parentComponentManager.getComponentDescriptor(role, hint);
+                    if (result == null) {
+                        this.missingComponents.setMissing(currentGeneration, cacheParent, role, roleHint);
+                    }
+                }
             }
         } else {
             result = componentEntry.descriptor;
@@ -255,9 +413,10 @@ public <T> List<ComponentDescriptor<T>> getComponentDescriptorList(Type role)
     {
         Map<String, ComponentDescriptor<T>> descriptors = new HashMap<>();
 
-        for (Map.Entry<RoleHint<?>, ComponentEntry<?>> entry : this.componentEntries.entrySet()) {
-            if (entry.getKey().getRoleType().equals(role)) {
-                descriptors.put(entry.getKey().getHint(), (ComponentDescriptor<T>) entry.getValue().descriptor);
+        Map<String, ComponentEntry<?>> entries = this.componentEntries.get(role);
+        if (entries != null) {
+            for (Map.Entry<String, ComponentEntry<?>> entry : entries.entrySet()) {
+                descriptors.put(entry.getKey(), (ComponentDescriptor<T>) entry.getValue().descriptor);
             }
         }
 
@@ -297,23 +456,98 @@ public ComponentManager getParent()
     public void setParent(ComponentManager parentComponentManager)
     {
         this.parent = parentComponentManager;
+
+        GENERATION.incrementAndGet();
     }
 
-    private <T> T createInstance(ComponentDescriptor<T> descriptor) throws Exception
+    /**
+     * The missing components can only be cached against a parent whose answers don't depend on the context. The
+     * parents delegating to another component manager (e.g. depending on the current wiki or user) are resolved first
+     * and the result is cached against the component manager they currently delegate to.
+     *
+     * @return the resolved parent to cache the missing components against, null if they can't be cached
+     */
+    private ComponentManager getCacheParent()
     {
-        T instance = descriptor.getImplementation().newInstance();
+        ComponentManager cacheParent = getParent();
+        while (cacheParent instanceof DelegateComponentManager) {
+            cacheParent = ((DelegateComponentManager) cacheParent).getComponentManager();
+        }
 
-        // Set each dependency
-        for (ComponentDependency<?> dependency : descriptor.getComponentDependencies()) {
+        return cacheParent instanceof EmbeddableComponentManager
+            && ((EmbeddableComponentManager) cacheParent).hasStaticParents() ? cacheParent : null;
+    }
+
+    /**
+     * @return true if all the parents of this component manager are component managers of this type (only recomputed
+     *         when the generation changes)
+     */
+    private boolean hasStaticParents()
+    {
+        long currentGeneration = GENERATION.get();
+
+        if (this.staticParentsGeneration != currentGeneration) {
+            ComponentManager parentComponentManager = getParent();
+            this.staticParents = parentComponentManager == null
+                || parentComponentManager instanceof EmbeddableComponentManager
+                    && ((EmbeddableComponentManager) parentComponentManager).hasStaticParents();
+            this.staticParentsGeneration = currentGeneration;
+        }
+
+        return this.staticParents;
+    }
+
+    private boolean isOverridden(String methodName, Class<?>... parameterTypes)
+    {
+        for (Class<?> currentClass = getClass(); currentClass != EmbeddableComponentManager.class;
+            currentClass = currentClass.getSuperclass()) {
+            try {
+                currentClass.getDeclaredMethod(methodName, parameterTypes);
+
+                return true;
+            } catch (NoSuchMethodException e) {
+                // Look in superclass
+            }
+        }
+
+        return false;
+    }
+
+    private <T> InjectionPlan<T> getInjectionPlan(ComponentEntry<T> componentEntry) throws Exception
+    {
+        InjectionPlan<T> injectionPlan = componentEntry.injectionPlan;
+
+        // Not a problem if several threads end up creating the plan at the same time, they are all equivalent
+        if (injectionPlan == null) {
+            injectionPlan = new InjectionPlan<>(componentEntry.descriptor);
+            componentEntry.injectionPlan = injectionPlan;
+        }
+
+        return injectionPlan;
+    }
+
+    private <T> T createInstance(ComponentEntry<T> componentEntry) throws Exception
+    {
+        ComponentDescriptor<T> descriptor = componentEntry.descriptor;
+        InjectionPlan<T> injectionPlan = getInjectionPlan(componentEntry);
+
+        T instance = injectionPlan.newInstance();
 
-            // TODO: Handle dependency cycles
+        // Set each dependency
+        for (InjectionPlan.Injection injection : injectionPlan.getInjections()) {
 
             // Handle different field types
-            Object fieldValue = getDependencyInstance(descriptor, instance, dependency);
+            Object fieldValue;
+            if (this.customDependencyInstance) {
+                fieldValue = getDependencyInstance(descriptor, instance, injection.getDependency());
+            } else {
+                fieldValue = getDependencyInstance(descriptor, instance, injection.getDependency(),
+                    injection.getKind(), injection.getRoleType(), injection.getGenericArgument());
+            }
 
-            // Set the field by introspection
+            // Set the field
             if (fieldValue != null) {
-                ReflectionUtils.setFieldValue(instance, dependency.getName(), fieldValue);
+                injection.inject(instance, fieldValue);
             }
         }
 
@@ -328,8 +562,15 @@ private <T> T createInstance(ComponentDescriptor<T> descriptor) throws Exception
     protected Object getDependencyInstance(ComponentDescriptor<?> descriptor, Object parentInstance,
         ComponentDependency<?> dependency) throws ComponentLookupException
     {
-        // TODO: Handle dependency cycles
+        return getDependencyInstance(descriptor, parentInstance, dependency,
+            InjectionPlan.DependencyKind.of(dependency), dependency.getRoleType(),
+            ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
+    }
 
+    private Object getDependencyInstance(ComponentDescriptor<?> descriptor, Object parentInstance,
+        ComponentDependency<?> dependency, InjectionPlan.DependencyKind kind, Type roleType, Type genericArgument)
+        throws ComponentLookupException
+    {
         // Handle different field types
         Object fieldValue;
 
@@ -342,25 +583,30 @@ protected Object getDependencyInstance(ComponentDescriptor<?> descriptor, Object
         // Step 3: No producer found, handle scalar and collection types by looking up standard component
         // implementations.
 
-        Class<?> dependencyRoleClass = ReflectionUtils.getTypeClass(dependency.getRoleType());
-
-        if (dependencyRoleClass.isAssignableFrom(Logger.class)) {
-            fieldValue = createLogger(parentInstance.getClass());
-        } else if (dependencyRoleClass.isAssignableFrom(List.class)) {
-            fieldValue = getInstanceList(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
-        } else if (dependencyRoleClass.isAssignableFrom(Map.class)) {
-            fieldValue = getInstanceMap(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
-        } else if (dependencyRoleClass.isAssignableFrom(Provider.class)) {
-            // Check if there's a Provider registered for the type
-            if (hasComponent(dependency.getRoleType(), dependency.getRoleHint())) {
-                fieldValue = getInstance(dependency.getRoleType(), dependency.getRoleHint());
-            } else {
-                fieldValue = createGenericProvider(descriptor, dependency);
-            }
-        } else if (dependencyRoleClass.isAssignableFrom(ComponentDescriptor.class)) {
-            fieldValue = new DefaultComponentDescriptor(descriptor);
-        } else {
-            fieldValue = getInstance(dependency.getRoleType(), dependency.getRoleHint());
+        switch (kind) {
+            case LOGGER:
+                fieldValue = createLogger(parentInstance.getClass());
+                break;
+            case LIST:
+                fieldValue = getInstanceList(genericArgument);
+                break;
+            case MAP:
+                fieldValue = getInstanceMap(genericArgument);
+                break;
+            case PROVIDER:
+                // Check if there's a Provider registered for the type
+                if (hasComponent(roleType, dependency.getRoleHint())) {
+                    fieldValue = getInstance(roleType, dependency.getRoleHint());
+                } else {
+                    fieldValue = createGenericProvider(descriptor, dependency);
+                }
+                break;
+            case DESCRIPTOR:
+                fieldValue = new DefaultComponentDescriptor(descriptor);
+                break;
+            default:
+                fieldValue = getInstance(roleType, dependency.getRoleHint());
+                break;
         }
 
         return fieldValue;
@@ -380,31 +626,57 @@ protected Object createLogger(Class<?> instanceClass)
         return LoggerFactory.getLogger(instanceClass);
     }
 
-    @SuppressWarnings("unchecked")
     protected <T> T getComponentInstance(RoleHint<T> roleHint) throws ComponentLookupException
+    {
+        return getComponentInstance(roleHint.getRoleType(), roleHint.getHint());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getComponentInstance(Type roleType, String roleHint) throws ComponentLookupException
     {
         T instance;
 
-        ComponentEntry<T> componentEntry = (ComponentEntry<T>) this.componentEntries.get(roleHint);
+        ComponentEntry<T> componentEntry = (ComponentEntry<T>) getComponentEntry(roleType, roleHint);
 
         if (componentEntry != null) {
             try {
                 instance = getComponentInstance(componentEntry);
             } catch (Throwable e) {
                 throw new ComponentLookupException(String.format("Failed to lookup component [%s] identified by [%s]",
-                    componentEntry.descriptor.getImplementation().getName(), roleHint.toString()), e);
+                    componentEntry.descriptor.getImplementation().getName(),
+                    new RoleHint<>(componentEntry.descriptor.getRoleType(), roleHint)), e);
             }
         } else {
-            if (getParent() != null) {
-                instance = getParent().getInstance(roleHint.getRoleType(), roleHint.getHint());
-            } else {
-                throw new ComponentLookupException("Can't find descriptor for the component [" + roleHint + "]");
-            }
+            instance = getParentInstance(roleType, roleHint);
         }
 
         return instance;
     }
 
+    private <T> T getParentInstance(Type roleType, String roleHint) throws ComponentLookupException
+    {
+        ComponentManager parentComponentManager = getParent();
+        long currentGeneration = GENERATION.get();
+        ComponentManager cacheParent = parentComponentManager != null ? getCacheParent() : null;
+
+        if (parentComponentManager == null
+            || this.missingComponents.isMissing(currentGeneration, cacheParent, roleType, roleHint)) {
+            throw new ComponentLookupException(
+                "Can't find descriptor for the component [" + new RoleHint<>(roleType, roleHint) + "]");
+        }
+
+        try {
+            return parentComponentManager.getInstance(roleType, roleHint);
+        } catch (ComponentLookupException e) {
+            // Remember the component does not exist (as opposed to failing to be created)
+            if (!parentComponentManager.hasComponent(roleType, roleHint)) {
+                this.missingComponents.setMissing(currentGeneration, cacheParent, roleType, roleHint);
+            }
+
+            throw e;
+        }
+    }
+
     private <T> T getComponentInstance(ComponentEntry<T> componentEntry) throws Exception
     {
         T instance;
@@ -412,27 +684,132 @@ private <T> T getComponentInstance(ComponentEntry<T> componentEntry) throws Exce
         ComponentDescriptor<T> descriptor = componentEntry.descriptor;
 
         if (descriptor.getInstantiationStrategy() == ComponentInstantiationStrategy.SINGLETON) {
-            if (componentEntry.instance != null) {
-                // If the instance exists return it
-                instance = componentEntry.instance;
+            // If the instance exists return it
+            instance = componentEntry.instance;
+            if (instance == null) {
+                instance = getSingletonInstance(componentEntry);
+            }
+        } else {
+            instance = createInstance(componentEntry, InstanceCreation.Context.get());
+        }
+
+        return instance;
+    }
+
+    private <T> T getSingletonInstance(ComponentEntry<T> componentEntry) throws Exception
+    {
+        // Only one thread creates the instance and the others wait for it, without holding any lock so that
+        // independent singletons can be created in parallel and dependency cycles can be detected
+        T instance = componentEntry.instance;
+        while (instance == null) {
+            InstanceCreation<T> creation = componentEntry.creation.get();
+            if (creation != null) {
+                instance = creation.get(InstanceCreation.Context.get());
             } else {
-                synchronized (componentEntry) {
-                    // Recheck in case it has been created while we were waiting
-                    if (componentEntry.instance != null) {
-                        instance = componentEntry.instance;
-                    } else {
-                        componentEntry.instance = createInstance(descriptor);
-                        instance = componentEntry.instance;
-                    }
+                InstanceCreation.Context context = InstanceCreation.Context.get();
+                creation = new InstanceCreation<>(componentEntry.descriptor, context);
+                if (componentEntry.creation.compareAndSet(null, creation)) {
+                    instance = createSingletonInstance(componentEntry, creation, context);
+                } else {
+                    instance = componentEntry.instance;
                 }
             }
-        } else {
-            instance = createInstance(descriptor);
         }
 
         return instance;
     }
 
+    private <T> T createSingletonInstance(ComponentEntry<T> componentEntry, InstanceCreation<T> creation,
+        InstanceCreation.Context context) throws Exception
+    {
+        try {
+            // Recheck in case it has been created before the creation was registered
+            T instance = componentEntry.instance;
+            if (instance == null) {
+                instance = createInstance(componentEntry, context);
+                storeSingletonInstance(componentEntry, instance);
+            }
+
+            creation.complete(instance);
+
+            return instance;
+        } catch (Exception | Error e) {
+            creation.fail(e);
+
+            throw e;
+        } finally {
+            componentEntry.creation.compareAndSet(creation, null);
+        }
+    }
+
+    private <T> void storeSingletonInstance(ComponentEntry<T> componentEntry, T instance)
+        throws ComponentLookupException
+    {
+        // The entry might have been released while the instance was created without holding its lock
+        synchronized (componentEntry) {
+            if (!componentEntry.released) {
+                componentEntry.instance = instance;
+
+                return;
+            }
+        }
+
+        // Nobody else knows about this instance so it has to be disposed here
+        if (instance instanceof Disposable && instance != this) {
+            try {
+                ((Disposable) instance).dispose();
+            } catch (ComponentLifecycleException e) {
+                this.logger.warn("Failed to dispose component [{}] unregistered while being created",
+                    instance.getClass().getName(), e);
+            }
+        }
+
+        throw new ComponentLookupException(String.format(
+            "Component with role type [%s] and role hint [%s] has been unregistered while being created",
+            componentEntry.descriptor.getRoleType(), componentEntry.descriptor.getRoleHint()));
+    }
+
+    private <T> T createInstance(ComponentEntry<T> componentEntry, InstanceCreation.Context context)
+        throws Exception
+    {
+        context.push(componentEntry.descriptor);
+        try {
+            return createInstance(componentEntry);
+        } finally {
+            context.pop();
+        }
+    }
+
+    private ComponentEntry<?> getComponentEntry(Type role, String hint)
+    {
+        Map<String, ComponentEntry<?>> entries = this.componentEntries.get(role);
+
+        return entries != null ? entries.get(hint != null ? hint : RoleHint.DEFAULT_HINT) : null;
+    }
+
+    private ComponentEntry<?> getComponentEntry(RoleHint<?> roleHint)
+    {
+        Map<String, ComponentEntry<?>> entries = this.componentEntries.get(roleHint.getRoleType());
+
+        return entries != null ? entries.get(roleHint.getHint()) : null;
+    }
+
+    /**
+     * @return a snapshot of the role/hint pairs of all the components registered in this component manager
+     */
+    private List<RoleHint<?>> getRoleHints()
+    {
+        List<RoleHint<?>> roleHints = new ArrayList<>();
+
+        for (Map.Entry<Type, Map<String, ComponentEntry<?>>> entries : this.componentEntries.entrySet()) {
+            for (String hint : entries.getValue().keySet()) {
+                roleHints.add(new RoleHint<>(entries.getKey(), hint));
+            }
+        }
+
+        return roleHints;
+    }
+
     // Add
 
     private <T> RoleHint<T> getRoleHint(ComponentDescriptor<T> componentDescriptor)
@@ -458,12 +835,108 @@ public <T> void registerComponent(ComponentDescriptor<T> componentDescriptor, T
         addComponent(roleHint, new DefaultComponentDescriptor<T>(componentDescriptor), componentInstance);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * None of the passed components is visible before all of them are ready and the registration events are sent in
+     * one go once all of them are visible, so that listeners don't see a partially registered set of components.
+     *
+     * @since 8.2M1
+     */
+    @Override
+    public void registerComponents(Collection<? extends ComponentDescriptor<?>> componentDescriptors)
+    {
+        // Prepare all the entries before making any of them visible (the last descriptor wins for a given role/hint)
+        Map<RoleHint<?>, ComponentEntry<?>> newEntries = new LinkedHashMap<>();
+        for (ComponentDescriptor<?> componentDescriptor : componentDescriptors) {
+            RoleHint<?> roleHint = getRoleHint(componentDescriptor);
+
+            newEntries.remove(roleHint);
+            newEntries.put(roleHint, createComponentEntry(componentDescriptor));
+        }
+
+        if (newEntries.isEmpty()) {
+            return;
+        }
+
+        // Make them visible
+        List<ComponentEntry<?>> oldEntries = new ArrayList<>();
+        for (Map.Entry<RoleHint<?>, ComponentEntry<?>> entry : newEntries.entrySet()) {
+            ComponentEntry<?> oldEntry = putComponentEntry(entry.getKey(), entry.getValue());
+            if (oldEntry != null) {
+                oldEntries.add(oldEntry);
+            }
+        }
+
+        // Invalidate the missing components (only once the components are visible)
+        GENERATION.incrementAndGet();
+
+        // Get rid of the replaced components
+        for (ComponentEntry<?> oldEntry : oldEntries) {
+            releaseReplacedComponentEntry(oldEntry);
+        }
+
+        // Send events about component registration
+        if (this.eventManager != null) {
+            List<ComponentDescriptor<?>> descriptors = new ArrayList<>(newEntries.size());
+            for (ComponentEntry<?> entry : newEntries.values()) {
+                descriptors.add(entry.descriptor);
+            }
+            this.eventManager.notifyComponentsRegistered(descriptors, this);
+        }
+    }
+
+    private <T> ComponentEntry<T> createComponentEntry(ComponentDescriptor<T> componentDescriptor)
+    {
+        return new ComponentEntry<>(new DefaultComponentDescriptor<T>(componentDescriptor), null);
+    }
+
+    private void releaseReplacedComponentEntry(ComponentEntry<?> componentEntry)
+    {
+        // We don't want the component manager to dispose itself just because it's not registered as component
+        // anymore
+        if (componentEntry.instance != this) {
+            try {
+                releaseComponentEntry(componentEntry);
+            } catch (Exception e) {
+                this.logger.warn("Instance released but disposal failed. Some resources may not have been released.",
+                    e);
+            }
+        }
+
+        if (this.eventManager != null) {
+            this.eventManager.notifyComponentUnregistered(componentEntry.descriptor, this);
+        }
+    }
+
+    /**
+     * @return the entry previously registered for the passed role and hint, if any
+     */
+    private ComponentEntry<?> putComponentEntry(RoleHint<?> roleHint, ComponentEntry<?> componentEntry)
+    {
+        Map<String, ComponentEntry<?>> entries = this.componentEntries.get(roleHint.getRoleType());
+        if (entries == null) {
+            entries = new ConcurrentHashMap<>();
+            // Use a role type which is cheap to compare and hash as key
+            Map<String, ComponentEntry<?>> existingEntries =
+                this.componentEntries.putIfAbsent(CanonicalTypes.canonicalize(roleHint.getRoleType()), entries);
+            if (existingEntries != null) {
+                entries = existingEntries;
+            }
+        }
+
+        return entries.put(roleHint.getHint(), componentEntry);
+    }
+
     private <T> void addComponent(RoleHint<T> roleHint, ComponentDescriptor<T> descriptor, T instance)
     {
         ComponentEntry<T> componentEntry = new ComponentEntry<T>(descriptor, instance);
 
         // Register new component
-        this.componentEntries.put(roleHint, componentEntry);
+        putComponentEntry(roleHint, componentEntry);
+
+        // Invalidate the missing components (only once the component is visible)
+        GENERATION.incrementAndGet();
 
         // Send event about component registration
         if (this.eventManager != null) {
@@ -496,10 +969,16 @@ public void release(Object component) throws ComponentLifecycleException
         // First find the descriptor matching the passed component
         RoleHint<?> key = null;
         ComponentDescriptor<?> oldDescriptor = null;
-        for (Map.Entry<RoleHint<?>, ComponentEntry<?>> entry : this.componentEntries.entrySet()) {
-            if (entry.getValue().instance == component) {
-                key = entry.getKey();
-                oldDescriptor = entry.getValue().descriptor;
+        for (Map<String, ComponentEntry<?>> entries : this.componentEntries.values()) {
+            for (ComponentEntry<?> entry : entries.values()) {
+                if (entry.instance == component) {
+                    key = getRoleHint(entry.descriptor);
+                    oldDescriptor = entry.descriptor;
+                    break;
+                }
+            }
+
+            if (key != null) {
                 break;
             }
         }
@@ -523,8 +1002,10 @@ public void release(Object component) throws ComponentLifecycleException
     private void releaseInstance(ComponentEntry<?> componentEntry) throws ComponentLifecycleException
     {
         // Make sure the singleton component instance can't be "lost" (impossible to dispose because returned but not
-        // stored).
+        // stored): a creation still in progress sees the entry as released and disposes its own instance.
         synchronized (componentEntry) {
+            componentEntry.released = true;
+
             Object instance = componentEntry.instance;
 
             // Give a chance to the component to clean up
@@ -546,9 +1027,12 @@ private void removeComponent(RoleHint<?> roleHint) throws ComponentLifecycleExce
     {
         // Make sure to remove the entry from the map before destroying it to reduce at the minimum the risk of
         // lookupping something invalid
-        ComponentEntry<?> componentEntry = this.componentEntries.remove(roleHint);
+        Map<String, ComponentEntry<?>> entries = this.componentEntries.get(roleHint.getRoleType());
+        ComponentEntry<?> componentEntry = entries != null ? entries.remove(roleHint.getHint()) : null;
 
         if (componentEntry != null) {
+            GENERATION.incrementAndGet();
+
             ComponentDescriptor<?> oldDescriptor = componentEntry.descriptor;
 
             // We don't want the component manager to dispose itself just because it's not registered as component*
@@ -584,7 +1068,7 @@ private int sortEntry(List<RoleHint<?>> keys, int index)
         int newIndex = index;
 
         RoleHint<?> key = keys.get(index);
-        ComponentEntry<?> componentEntry = this.componentEntries.get(key);
+        ComponentEntry<?> componentEntry = getComponentEntry(key);
 
         for (ComponentDependency<?> dependency : componentEntry.descriptor.getComponentDependencies()) {
             RoleHint<?> dependencyRole = new RoleHint<Object>(dependency.getRoleType(), dependency.getRoleHint());
@@ -609,11 +1093,11 @@ private int sortEntry(List<RoleHint<?>> keys, int index)
     @Override
     public void dispose()
     {
-        List<RoleHint<?>> keys = new ArrayList<>(this.componentEntries.keySet());
+        List<RoleHint<?>> keys = getRoleHints();
 
         // Exclude this component
         RoleHint<ComponentManager> cmRoleHint = new RoleHint<>(ComponentManager.class);
-        ComponentEntry<?> cmEntry = this.componentEntries.get(cmRoleHint);
+        ComponentEntry<?> cmEntry = getComponentEntry(cmRoleHint);
         if (cmEntry != null && cmEntry.instance == this) {
             keys.remove(cmRoleHint);
         }
@@ -629,42 +1113,20 @@ public void dispose()
             @Override
             public int compare(RoleHint<?> rh1, RoleHint<?> rh2)
             {
-                return getPriority(rh1) - getPriority(rh2);
-            }
-
-            private int getPriority(RoleHint<?> rh)
-            {
-                Object instance = componentEntries.get(rh).instance;
-                if (instance == null) {
-                    // The component has not been instantiated yet. We don't need to dispose it in this case... :)
-                    // Return the default priority since it doesn't matter.
-                    return DisposePriority.DEFAULT_PRIORITY;
-                } else {
-                    DisposePriority priorityAnnotation = instance.getClass().getAnnotation(DisposePriority.class);
-                    return (priorityAnnotation == null) ? DisposePriority.DEFAULT_PRIORITY : priorityAnnotation.value();
-                }
+                return getDisposePriority(rh1) - getDisposePriority(rh2);
             }
         });
 
         // Dispose old components
-        for (RoleHint<?> key : keys) {
-            ComponentEntry<?> componentEntry = this.componentEntries.get(key);
-
-            synchronized (componentEntry) {
-                Object instance = componentEntry.instance;
-
-                // Protection to prevent infinite recursion in case a component implementation points to this
-                // instance.
-                if (instance instanceof Disposable && componentEntry.instance != this) {
-                    try {
-                        SHUTDOWN_LOGGER.debug("Disposing component [{}]...", instance.getClass().getName());
-                        ((Disposable) instance).dispose();
-                        SHUTDOWN_LOGGER.debug("Component [{}] has been disposed", instance.getClass().getName());
-                    } catch (ComponentLifecycleException e) {
-                        this.logger.error("Failed to dispose component with role type [{}] and role hint [{}]",
-                            componentEntry.descriptor.getRoleType(), componentEntry.descriptor.getRoleHint(), e);
-                    }
-                }
+        if (this.disposalPolicy != null) {
+            ComponentDisposal disposal = new ComponentDisposal(this, this.disposalPolicy);
+            for (RoleHint<?> key : keys) {
+                disposal.add(key, getComponentEntry(key).descriptor, getDisposePriority(key));
+            }
+            disposal.run();
+        } else {
+            for (RoleHint<?> key : keys) {
+                disposeComponent(key);
             }
         }
 
@@ -672,7 +1134,53 @@ private int getPriority(RoleHint<?> rh)
         // components that have to use a component already disposed (usually because it dynamically requires it and
         // there is no way for the ComponentManager to know that dependency).
         for (RoleHint<?> key : keys) {
-            this.componentEntries.remove(key);
+            Map<String, ComponentEntry<?>> entries = this.componentEntries.get(key.getRoleType());
+            if (entries != null) {
+                entries.remove(key.getHint());
+            }
+        }
+        GENERATION.incrementAndGet();
+    }
+
+    private int getDisposePriority(RoleHint<?> roleHint)
+    {
+        Object instance = getComponentEntry(roleHint).instance;
+        if (instance == null) {
+            // The component has not been instantiated yet. We don't need to dispose it in this case... :)
+            // Return the default priority since it doesn't matter.
+            return DisposePriority.DEFAULT_PRIORITY;
+        } else {
+            DisposePriority priorityAnnotation = instance.getClass().getAnnotation(DisposePriority.class);
+            return (priorityAnnotation == null) ? DisposePriority.DEFAULT_PRIORITY : priorityAnnotation.value();
+        }
+    }
+
+    /**
+     * Dispose the instance of the passed component, if any, without unregistering it.
+     *
+     * @param roleHint the role and hint of the component to dispose
+     */
+    void disposeComponent(RoleHint<?> roleHint)
+    {
+        ComponentEntry<?> componentEntry = getComponentEntry(roleHint);
+
+        synchronized (componentEntry) {
+            Object instance = componentEntry.instance;
+
+            // Protection to prevent infinite recursion in case a component implementation points to this
+            // instance.
+            if (instance instanceof Disposable && componentEntry.instance != this) {
+                try {
+                    SHUTDOWN_LOGGER.debug("Disposing component [{}]...", instance.getClass().getName());
+                    long start = System.nanoTime();
+                    ((Disposable) instance).dispose();
+                    SHUTDOWN_LOGGER.debug("Component [{}] has been disposed in [{}] ms", instance.getClass().getName(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } catch (ComponentLifecycleException e) {
+                    this.logger.error("Failed to dispose component with role type [{}] and role hint [{}]",
+                        componentEntry.descriptor.getRoleType(), componentEntry.descriptor.getRoleHint(), e);
+                }
+            }
         }
     }
 
@@ -684,9 +1192,11 @@ private int getPriority(RoleHint<?> rh)
     public <T> List<ComponentDescriptor<T>> getComponentDescriptorList(Class<T> role)
     {
         List<ComponentDescriptor<T>> results = new ArrayList<>();
-        for (Map.Entry<RoleHint<?>, ComponentEntry<?>> entry : this.componentEntries.entrySet()) {
-            if (entry.getKey().getRoleClass() == role) {
-                results.add((ComponentDescriptor<T>) entry.getValue().descriptor);
+        for (Map.Entry<Type, Map<String, ComponentEntry<?>>> entries : this.componentEntries.entrySet()) {
+            if (ReflectionUtils.getTypeClass(entries.getKey()) == role) {
+                for (ComponentEntry<?> entry : entries.getValue().values()) {
+                    results.add((ComponentDescriptor<T>) entry.descriptor);
+                }
             }
         }
         return results;
@@ -0,0 +1,275 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.slf4j.Logger;
+import org.xwiki.component.descriptor.ComponentDependency;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.util.ReflectionUtils;
+
+/**
+ * Everything needed to create an instance of a component, resolved once per {@link ComponentDescriptor} so that
+ * instantiating a component (and especially a {@code PER_LOOKUP} one) does not have to go through reflection again.
+ *
+ * @param <T> the type of the component implementation
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class InjectionPlan<T>
+{
+    /**
+     * The various ways a dependency can be resolved.
+     *
+     * @version $Id$
+     */
+    enum DependencyKind
+    {
+        /**
+         * A {@link Logger} created for the component implementation.
+         */
+        LOGGER,
+
+        /**
+         * The list of all components implementing the generic argument.
+         */
+        LIST,
+
+        /**
+         * The map of all components implementing the generic argument, indexed by hint.
+         */
+        MAP,
+
+        /**
+         * A registered {@link Provider} or a generic one.
+         */
+        PROVIDER,
+
+        /**
+         * A copy of the descriptor of the component.
+         */
+        DESCRIPTOR,
+
+        /**
+         * A standard component.
+         */
+        COMPONENT;
+
+        /**
+         * @param dependency the dependency
+         * @return the way to resolve the passed dependency
+         */
+        static DependencyKind of(ComponentDependency<?> dependency)
+        {
+            Class<?> dependencyRoleClass = ReflectionUtils.getTypeClass(dependency.getRoleType());
+
+            DependencyKind kind;
+            if (dependencyRoleClass.isAssignableFrom(Logger.class)) {
+                kind = LOGGER;
+            } else if (dependencyRoleClass.isAssignableFrom(List.class)) {
+                kind = LIST;
+            } else if (dependencyRoleClass.isAssignableFrom(Map.class)) {
+                kind = MAP;
+            } else if (dependencyRoleClass.isAssignableFrom(Provider.class)) {
+                kind = PROVIDER;
+            } else if (dependencyRoleClass.isAssignableFrom(ComponentDescriptor.class)) {
+                kind = DESCRIPTOR;
+            } else {
+                kind = COMPONENT;
+            }
+
+            return kind;
+        }
+    }
+
+    /**
+     * A dependency to inject and where to inject it.
+     *
+     * @version $Id$
+     */
+    static final class Injection
+    {
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private static final MethodHandle FIELD_SET;
+
+        static {
+            try {
+                FIELD_SET = MethodHandles.lookup().findVirtual(Field.class, "set", SETTER_TYPE);
+            } catch (Exception e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final ComponentDependency<?> dependency;
+
+        private final DependencyKind kind;
+
+        private final Type roleType;
+
+        private final Type genericArgument;
+
+        private final MethodHandle setter;
+
+        Injection(ComponentDependency<?> dependency, Class<?> implementation) throws IllegalAccessException
+        {
+            this.dependency = dependency;
+            this.kind = DependencyKind.of(dependency);
+            this.roleType = CanonicalTypes.canonicalize(dependency.getRoleType());
+            this.genericArgument =
+                CanonicalTypes.canonicalize(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
+            this.setter = createSetter(implementation, dependency.getName());
+        }
+
+        private static MethodHandle createSetter(Class<?> implementation, String fieldName)
+            throws IllegalAccessException
+        {
+            // Same field resolution as ReflectionUtils#setFieldValue
+            for (Class<?> targetClass = implementation; targetClass != null; targetClass =
+                targetClass.getSuperclass()) {
+                for (Field field : targetClass.getDeclaredFields()) {
+                    if (field.getName().equalsIgnoreCase(fieldName)) {
+                        field.setAccessible(true);
+
+                        if (Modifier.isFinal(field.getModifiers())) {
+                            // Method handles refuse to write final fields, fallback on reflection
+                            return FIELD_SET.bindTo(field);
+                        }
+
+                        return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * @return the dependency to inject
+         */
+        ComponentDependency<?> getDependency()
+        {
+            return this.dependency;
+        }
+
+        /**
+         * @return the way to resolve the dependency
+         */
+        DependencyKind getKind()
+        {
+            return this.kind;
+        }
+
+        /**
+         * @return the dependency role type, in canonical form
+         */
+        Type getRoleType()
+        {
+            return this.roleType;
+        }
+
+        /**
+         * @return the last generic argument of the dependency role type, in canonical form
+         */
+        Type getGenericArgument()
+        {
+            return this.genericArgument;
+        }
+
+        /**
+         * @param instance the instance in which to inject the dependency
+         * @param value the value to inject
+         */
+        void inject(Object instance, Object value)
+        {
+            if (this.setter != null) {
+                try {
+                    this.setter.invokeExact(instance, value);
+                } catch (Throwable e) {
+                    throw new RuntimeException("Failed to set field [" + this.dependency.getName()
+                        + "] in instance of [" + instance.getClass().getName() + "]", e);
+                }
+            }
+        }
+    }
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final MethodHandle constructor;
+
+    private final List<Injection> injections;
+
+    /**
+     * @param descriptor the descriptor of the component
+     * @throws NoSuchMethodException when the component implementation does not have a constructor without parameters
+     * @throws IllegalAccessException when failing to access the constructor or one of the fields
+     */
+    InjectionPlan(ComponentDescriptor<T> descriptor) throws NoSuchMethodException, IllegalAccessException
+    {
+        Constructor<? extends T> implementationConstructor = descriptor.getImplementation().getDeclaredConstructor();
+        implementationConstructor.setAccessible(true);
+        this.constructor = MethodHandles.lookup().unreflectConstructor(implementationConstructor)
+            .asType(CONSTRUCTOR_TYPE);
+
+        List<Injection> dependencies = new ArrayList<>(descriptor.getComponentDependencies().size());
+        for (ComponentDependency<?> dependency : descriptor.getComponentDependencies()) {
+            dependencies.add(new Injection(dependency, descriptor.getImplementation()));
+        }
+        this.injections = Collections.unmodifiableList(dependencies);
+    }
+
+    /**
+     * @return a new instance of the component implementation, without any injected dependency
+     * @throws Exception when failing to create the instance
+     */
+    @SuppressWarnings("unchecked")
+    T newInstance() throws Exception
+    {
+        try {
+            return (T) this.constructor.invokeExact();
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * @return the dependencies to inject in a new instance
+     */
+    List<Injection> getInjections()
+    {
+        return this.injections;
+    }
+}
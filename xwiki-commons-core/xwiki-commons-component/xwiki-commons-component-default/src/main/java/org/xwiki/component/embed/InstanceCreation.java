@@ -0,0 +1,227 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.manager.ComponentLookupException;
+
+/**
+ * The creation of a singleton component instance in progress, shared between the thread creating the instance and the
+ * threads waiting for it.
+ * <p>
+ * No lock is held while a component is created so that independent singletons can be created in parallel. Instead,
+ * each thread keeps track of the components it's creating and of the creation it's waiting for, which makes possible to
+ * detect dependency cycles (in the same thread or between several threads) instead of recursing or waiting forever.
+ *
+ * @param <T> the type of the component instance
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class InstanceCreation<T>
+{
+    /**
+     * The component instances being created by a thread.
+     *
+     * @version $Id$
+     */
+    static final class Context
+    {
+        private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+        private final Thread thread = Thread.currentThread();
+
+        /**
+         * The descriptors of the components being created by the thread, the most recent one being the last.
+         */
+        private final Deque<ComponentDescriptor<?>> descriptors = new ConcurrentLinkedDeque<>();
+
+        private volatile InstanceCreation<?> waitingFor;
+
+        /**
+         * @return the context of the current thread
+         */
+        static Context get()
+        {
+            Context context = CONTEXT.get();
+
+            // The context is only attached to the thread while it's creating components
+            return context != null ? context : new Context();
+        }
+
+        /**
+         * @param descriptor the descriptor of the component the thread starts creating
+         */
+        void push(ComponentDescriptor<?> descriptor)
+        {
+            if (this.descriptors.isEmpty()) {
+                CONTEXT.set(this);
+            }
+
+            this.descriptors.addLast(descriptor);
+        }
+
+        /**
+         * Indicate that the thread finished creating the last pushed component.
+         */
+        void pop()
+        {
+            this.descriptors.pollLast();
+
+            // Don't keep anything in the thread once it's not creating components anymore
+            if (this.descriptors.isEmpty()) {
+                CONTEXT.remove();
+            }
+        }
+    }
+
+    private final ComponentDescriptor<T> descriptor;
+
+    private final Context owner;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private T instance;
+
+    private Throwable failure;
+
+    /**
+     * @param descriptor the descriptor of the component to create
+     * @param owner the context of the thread creating the instance
+     */
+    InstanceCreation(ComponentDescriptor<T> descriptor, Context owner)
+    {
+        this.descriptor = descriptor;
+        this.owner = owner;
+    }
+
+    /**
+     * @param instance the created instance
+     */
+    void complete(T instance)
+    {
+        this.instance = instance;
+        this.done.countDown();
+    }
+
+    /**
+     * @param failure the reason why the instance could not be created
+     */
+    void fail(Throwable failure)
+    {
+        this.failure = failure;
+        this.done.countDown();
+    }
+
+    /**
+     * Wait for the instance to be created.
+     *
+     * @param context the context of the current thread
+     * @return the created instance
+     * @throws ComponentLookupException when waiting would never end because of a dependency cycle or when the creation
+     *             failed
+     */
+    T get(Context context) throws ComponentLookupException
+    {
+        context.waitingFor = this;
+        try {
+            checkCycle(context);
+
+            this.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new ComponentLookupException(
+                String.format("Interrupted while waiting for the creation of component %s", toString(this.descriptor)),
+                e);
+        } finally {
+            context.waitingFor = null;
+        }
+
+        if (this.failure != null) {
+            throw new ComponentLookupException(String.format("Failed to create component %s in thread [%s]",
+                toString(this.descriptor), this.owner.thread.getName()), this.failure);
+        }
+
+        return this.instance;
+    }
+
+    private void checkCycle(Context context) throws ComponentLookupException
+    {
+        List<ComponentDescriptor<?>> chain = new ArrayList<>(context.descriptors);
+
+        // Follow the creations each thread is waiting for, until we come back to the current thread
+        Set<Context> visited = new HashSet<>();
+        for (InstanceCreation<?> creation = this; creation != null; creation = creation.owner.waitingFor) {
+            chain.add(creation.descriptor);
+
+            if (creation.owner == context) {
+                throw new ComponentLookupException(
+                    String.format("Dependency cycle detected: %s", toString(chain, creation.descriptor)));
+            }
+
+            if (!visited.add(creation.owner)) {
+                // A cycle which does not involve the current thread, one of the threads involved will report it
+                break;
+            }
+
+            // Add the components the owner thread started creating since then
+            boolean found = false;
+            for (ComponentDescriptor<?> ownerDescriptor : creation.owner.descriptors) {
+                if (found) {
+                    chain.add(ownerDescriptor);
+                } else {
+                    found = ownerDescriptor == creation.descriptor;
+                }
+            }
+        }
+    }
+
+    private static String toString(List<ComponentDescriptor<?>> chain, ComponentDescriptor<?> start)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        boolean started = false;
+        for (ComponentDescriptor<?> element : chain) {
+            started |= element == start;
+
+            if (started) {
+                if (builder.length() > 0) {
+                    builder.append(" -> ");
+                }
+                builder.append(toString(element));
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static String toString(ComponentDescriptor<?> descriptor)
+    {
+        return "[" + descriptor.getRoleType().getTypeName() + "]:[" + descriptor.getRoleHint() + "]";
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The role/hint pairs which could not be found in the parents of a component manager. The cache is stamped with a
+ * generation which changes each time a component is registered or unregistered (see
+ * {@link EmbeddableComponentManager}) and with the parent it was filled from, and is ignored as soon as one of them
+ * changes.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class MissingComponentCache
+{
+    /**
+     * Protection against lookups with unbounded hints (usually coming from user inputs).
+     */
+    private static final int MAX_SIZE = 10000;
+
+    /**
+     * The missing components for a given generation.
+     *
+     * @version $Id$
+     */
+    private static final class Generation
+    {
+        private final long stamp;
+
+        private final Object parent;
+
+        private final ConcurrentMap<Type, Set<String>> missing = new ConcurrentHashMap<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        Generation(long stamp, Object parent)
+        {
+            this.stamp = stamp;
+            this.parent = parent;
+        }
+
+        boolean is(long otherStamp, Object otherParent)
+        {
+            return this.stamp == otherStamp && this.parent == otherParent;
+        }
+    }
+
+    private volatile Generation generation = new Generation(-1, null);
+
+    /**
+     * @param stamp the current generation
+     * @param parent the parent the component is looked for in, null if the missing components can't be cached
+     * @param role the role of the component
+     * @param hint the hint of the component
+     * @return true if the component is known to be missing in the passed generation
+     */
+    boolean isMissing(long stamp, Object parent, Type role, String hint)
+    {
+        Generation current = this.generation;
+
+        if (parent == null || !current.is(stamp, parent)) {
+            return false;
+        }
+
+        Set<String> hints = current.missing.get(role);
+
+        return hints != null && hints.contains(hint);
+    }
+
+    /**
+     * @param stamp the generation in which the component could not be found (taken before looking for it)
+     * @param parent the parent the component could not be found in, null if the missing components can't be cached
+     * @param role the role of the component
+     * @param hint the hint of the component
+     */
+    void setMissing(long stamp, Object parent, Type role, String hint)
+    {
+        if (parent == null) {
+            return;
+        }
+
+        Generation current = this.generation;
+
+        if (!current.is(stamp, parent) || current.size.get() >= MAX_SIZE) {
+            current = new Generation(stamp, parent);
+            this.generation = current;
+        }
+
+        Set<String> hints = current.missing.get(role);
+        if (hints == null) {
+            hints = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            Set<String> existingHints = current.missing.putIfAbsent(role, hints);
+            if (existingHints != null) {
+                hints = existingHints;
+            }
+        }
+
+        if (hints.add(hint)) {
+            current.size.incrementAndGet();
+        }
+    }
+}
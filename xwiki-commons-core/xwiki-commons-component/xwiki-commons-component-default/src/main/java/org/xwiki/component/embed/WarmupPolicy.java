@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+/**
+ * Indicate how {@link EmbeddableComponentManager#warmup(WarmupPolicy)} should create the singleton components in
+ * advance.
+ * <p>
+ * Note that the components are created from worker threads so components expecting to be created in a specific
+ * context (for example with an initialized execution context) should not be registered as singletons in a component
+ * manager being warmed up.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class WarmupPolicy
+{
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private long timeout;
+
+    /**
+     * @return the maximum number of threads used to create the components
+     */
+    public int getParallelism()
+    {
+        return this.parallelism;
+    }
+
+    /**
+     * @param parallelism the maximum number of threads used to create the components
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the maximum time in milliseconds to spend creating components, the components which could not be created
+     *         in time are created when first needed as usual, 0 (the default) means no limit
+     */
+    public long getTimeout()
+    {
+        return this.timeout;
+    }
+
+    /**
+     * @param timeout the maximum time in milliseconds to spend creating components, the components which could not be
+     *            created in time are created when first needed as usual, 0 (the default) means no limit
+     */
+    public void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.component.descriptor.ComponentDescriptor;
+
+/**
+ * What happened when creating the singleton components in advance (see
+ * {@link EmbeddableComponentManager#warmup(WarmupPolicy)}).
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class WarmupReport
+{
+    private final Map<ComponentDescriptor<?>, Long> creationTimes;
+
+    private final Map<ComponentDescriptor<?>, Throwable> failures;
+
+    private final int waves;
+
+    private final List<ComponentDescriptor<?>> criticalPath;
+
+    private final long criticalPathTime;
+
+    private final long time;
+
+    /**
+     * @param creationTimes the time in nanoseconds spent creating each component
+     * @param failures the components which failed to be created
+     * @param waves the number of waves in which the components were created
+     * @param criticalPath the longest (in time) dependency chain, the first component being the first one created
+     * @param criticalPathTime the time in nanoseconds spent creating the components of the critical path
+     * @param time the total time in nanoseconds spent creating the components
+     */
+    public WarmupReport(Map<ComponentDescriptor<?>, Long> creationTimes,
+        Map<ComponentDescriptor<?>, Throwable> failures, int waves, List<ComponentDescriptor<?>> criticalPath,
+        long criticalPathTime, long time)
+    {
+        this.creationTimes = Collections.unmodifiableMap(creationTimes);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.waves = waves;
+        this.criticalPath = Collections.unmodifiableList(criticalPath);
+        this.criticalPathTime = criticalPathTime;
+        this.time = time;
+    }
+
+    /**
+     * @return the time in nanoseconds spent creating each successfully created component, in creation order
+     */
+    public Map<ComponentDescriptor<?>, Long> getCreationTimes()
+    {
+        return this.creationTimes;
+    }
+
+    /**
+     * @return the components which failed to be created and the reason of the failure
+     */
+    public Map<ComponentDescriptor<?>, Throwable> getFailures()
+    {
+        return this.failures;
+    }
+
+    /**
+     * @return the number of waves in which the components were created, each wave only containing components which
+     *         depend on components created in previous waves
+     */
+    public int getWaves()
+    {
+        return this.waves;
+    }
+
+    /**
+     * @return the longest (in time) dependency chain, the first component being the first one created
+     */
+    public List<ComponentDescriptor<?>> getCriticalPath()
+    {
+        return this.criticalPath;
+    }
+
+    /**
+     * @return the time in nanoseconds spent creating the components of the critical path, which is the minimum time
+     *         needed to create all the components whatever the number of threads
+     */
+    public long getCriticalPathTime()
+    {
+        return this.criticalPathTime;
+    }
+
+    /**
+     * @return the total time in nanoseconds spent creating the components
+     */
+    public long getTime()
+    {
+        return this.time;
+    }
+}
@@ -32,6 +32,13 @@
  */
 public class RoleHint<T>
 {
+    /**
+     * The hint used when none is provided.
+     *
+     * @since 8.2M1
+     */
+    public static final String DEFAULT_HINT = "default";
+
     /**
      * @see #getRoleType()
      */
@@ -61,7 +68,7 @@ public RoleHint(Type role, String hint)
         this.role = role;
         this.hint = hint;
         if (this.hint == null) {
-            this.hint = "default";
+            this.hint = DEFAULT_HINT;
         }
     }
 
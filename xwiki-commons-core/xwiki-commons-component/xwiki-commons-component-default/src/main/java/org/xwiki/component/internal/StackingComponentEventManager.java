@@ -19,6 +19,10 @@
  */
 package org.xwiki.component.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Stack;
 
 import org.xwiki.component.descriptor.ComponentDescriptor;
@@ -68,6 +72,18 @@ public void notifyComponentRegistered(ComponentDescriptor<?> descriptor, Compone
             descriptor, componentManager);
     }
 
+    @Override
+    public void notifyComponentsRegistered(Collection<? extends ComponentDescriptor<?>> descriptors,
+        ComponentManager componentManager)
+    {
+        List<Event> addedEvents = new ArrayList<>(descriptors.size());
+        for (ComponentDescriptor<?> descriptor : descriptors) {
+            addedEvents.add(new ComponentDescriptorAddedEvent(descriptor.getRoleType(), descriptor.getRoleHint()));
+        }
+
+        notifyComponentEvents(new ComponentEventEntry(addedEvents, new ArrayList<>(descriptors), componentManager));
+    }
+
     @Override
     public void notifyComponentUnregistered(ComponentDescriptor<?> descriptor)
     {
@@ -88,8 +104,7 @@ public void notifyComponentUnregistered(ComponentDescriptor<?> descriptor, Compo
     public synchronized void flushEvents()
     {
         while (!this.events.isEmpty()) {
-            ComponentEventEntry entry = this.events.pop();
-            sendEvent(entry.event, entry.descriptor, entry.componentManager);
+            sendEvents(this.events.pop());
         }
     }
 
@@ -119,46 +134,62 @@ public void setObservationManager(ObservationManager observationManager)
      */
     private void notifyComponentEvent(Event event, ComponentDescriptor<?> descriptor,
         ComponentManager componentManager)
+    {
+        notifyComponentEvents(new ComponentEventEntry(Collections.singletonList(event),
+            Collections.<ComponentDescriptor<?>>singletonList(descriptor), componentManager));
+    }
+
+    /**
+     * Send or stack the provided events dependening on the configuration.
+     *
+     * @param entry the events send by the component manager
+     * @see #shouldStack(boolean)
+     */
+    private void notifyComponentEvents(ComponentEventEntry entry)
     {
         if (this.shouldStack) {
             synchronized (this) {
-                this.events.push(new ComponentEventEntry(event, descriptor, componentManager));
+                this.events.push(entry);
             }
         } else {
-            sendEvent(event, descriptor, componentManager);
+            sendEvents(entry);
         }
     }
 
     /**
-     * Send the event.
+     * Send the events, in a single batch when there's several of them.
      *
-     * @param event the event to send
-     * @param descriptor the event related component descriptor.
-     * @param componentManager the event related component manager instance.
+     * @param entry the events to send
      */
-    private void sendEvent(Event event, ComponentDescriptor<?> descriptor, ComponentManager componentManager)
+    private void sendEvents(ComponentEventEntry entry)
     {
         if (this.observationManager != null) {
-            this.observationManager.notify(event, componentManager, descriptor);
+            if (entry.events.size() == 1) {
+                this.observationManager.notify(entry.events.get(0), entry.componentManager,
+                    entry.descriptors.get(0));
+            } else {
+                this.observationManager.notifyBatchWithEventsData(entry.events, entry.componentManager,
+                    entry.descriptors);
+            }
         }
     }
 
     /**
-     * Contains a stacked event.
+     * Contains stacked events.
      *
      * @version $Id$
      */
     static class ComponentEventEntry
     {
         /**
-         * The stacked event.
+         * The stacked events.
          */
-        public Event event;
+        public List<Event> events;
 
         /**
-         * The event related component descriptor.
+         * The event related component descriptors, in the same order as the events.
          */
-        public ComponentDescriptor<?> descriptor;
+        public List<ComponentDescriptor<?>> descriptors;
 
         /**
          * The event related component manager instance.
@@ -166,14 +197,15 @@ private void sendEvent(Event event, ComponentDescriptor<?> descriptor, Component
         public ComponentManager componentManager;
 
         /**
-         * @param event the stacked event.
-         * @param descriptor the event related component descriptor.
+         * @param events the stacked events.
+         * @param descriptors the event related component descriptors.
          * @param componentManager the event related component manager instance.
          */
-        ComponentEventEntry(Event event, ComponentDescriptor<?> descriptor, ComponentManager componentManager)
+        ComponentEventEntry(List<Event> events, List<ComponentDescriptor<?>> descriptors,
+            ComponentManager componentManager)
         {
-            this.event = event;
-            this.descriptor = descriptor;
+            this.events = events;
+            this.descriptors = descriptors;
             this.componentManager = componentManager;
         }
     }
@@ -20,6 +20,9 @@
 package org.xwiki.component.annotation;
 
 import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 import javax.inject.Named;
@@ -27,6 +30,8 @@
 import javax.inject.Singleton;
 
 import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -225,30 +230,45 @@ public void testPriorities() throws Exception
         final ComponentDescriptor descriptor13 =
             this.loader.getComponentsDescriptors(ProviderTest.TestComponentWithProviderInException.class).get(0);
 
-        // This is the test, we verify that registerComponent() is called for each of the descriptor we're expecting
+        // This is the test, we verify that registerComponents() is called with each of the descriptor we're expecting
         // to be discovered through annotations by the call to initialize() below.
+        final Set<ComponentDescriptor> expected = new HashSet<ComponentDescriptor>(Arrays.asList(descriptor1,
+            descriptor2, descriptor3, descriptor4, descriptor5, descriptor6, descriptor7, descriptor8, descriptor9,
+            descriptor10, descriptor11, descriptor12, descriptor13));
         this.mockery.checking(new Expectations()
         {
             {
-                oneOf(mockManager).registerComponent(descriptor1);
-                oneOf(mockManager).registerComponent(descriptor2);
-                oneOf(mockManager).registerComponent(descriptor3);
-                oneOf(mockManager).registerComponent(descriptor4);
-                oneOf(mockManager).registerComponent(descriptor5);
-                oneOf(mockManager).registerComponent(descriptor6);
-                oneOf(mockManager).registerComponent(descriptor7);
-                oneOf(mockManager).registerComponent(descriptor8);
-                oneOf(mockManager).registerComponent(descriptor9);
-                oneOf(mockManager).registerComponent(descriptor10);
-                oneOf(mockManager).registerComponent(descriptor11);
-                oneOf(mockManager).registerComponent(descriptor12);
-                oneOf(mockManager).registerComponent(descriptor13);
+                oneOf(mockManager).registerComponents(with(any(Collection.class)));
+                will(new CustomAction("check registered descriptors")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        Collection<?> descriptors = (Collection<?>) invocation.getParameter(0);
+
+                        Assert.assertEquals(expected.size(), descriptors.size());
+                        Assert.assertEquals(expected, new HashSet<Object>(descriptors));
+
+                        return null;
+                    }
+                });
             }
         });
 
         this.loader.initialize(mockManager, this.getClass().getClassLoader());
     }
 
+    /**
+     * Verify that loading the component classes from several threads gives the same result.
+     */
+    @Test
+    public void testPrioritiesWithParallelLoading() throws Exception
+    {
+        this.loader.setParallelism(4);
+
+        testPriorities();
+    }
+
     @Test
     public void testFindComponentRoleTypes()
     {
@@ -0,0 +1,218 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.descriptor.DefaultComponentDependency;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.component.util.ReflectionUtils;
+
+/**
+ * Micro-benchmarks of the {@link EmbeddableComponentManager} hot paths. To stay reliable on any machine they only
+ * compare the best time of several rounds with a reference path, or assert the memory allocated in the steady state.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class EmbeddableComponentManagerBenchmarkTest
+{
+    private static final int ROUNDS = 10;
+
+    private static final int ITERATIONS = 50000;
+
+    public static interface Role
+    {
+    }
+
+    public static class RoleImpl implements Role
+    {
+    }
+
+    public static class DependencyRoleImpl implements Role
+    {
+        private Logger logger;
+
+        private Role role;
+    }
+
+    /**
+     * @param operation the operation to measure
+     * @return the best average time of one call to the operation among all rounds, in nanoseconds
+     */
+    private static double measure(Callable<?> operation) throws Exception
+    {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                Assert.assertNotNull(operation.call());
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return (double) best / ITERATIONS;
+    }
+
+    /**
+     * @param operation the operation to measure
+     * @return the average number of bytes allocated by one call to the operation
+     */
+    private static double measureAllocation(Callable<?> operation) throws Exception
+    {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Warm up, so that only the steady state is measured
+        measure(operation);
+
+        long threadId = Thread.currentThread().getId();
+        long start = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            operation.call();
+        }
+
+        return (double) (allocationBean.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+    }
+
+    private static void assertFaster(String message, double optimized, double reference)
+    {
+        Assert.assertTrue(String.format("%s: [%.1f] ns instead of [%.1f] ns", message, optimized, reference),
+            optimized < reference);
+    }
+
+    @Test
+    public void injectWithInjectionPlan() throws Exception
+    {
+        final EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> roleDescriptor = new DefaultComponentDescriptor<>();
+        roleDescriptor.setRoleType(Role.class);
+        roleDescriptor.setImplementation(RoleImpl.class);
+        ecm.registerComponent(roleDescriptor);
+
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setRoleHint("dependency");
+        cd.setImplementation(DependencyRoleImpl.class);
+        cd.setInstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP);
+        DefaultComponentDependency<Logger> loggerDependency = new DefaultComponentDependency<>();
+        loggerDependency.setRoleType(Logger.class);
+        loggerDependency.setName("logger");
+        cd.addComponentDependency(loggerDependency);
+        DefaultComponentDependency<Role> roleDependency = new DefaultComponentDependency<>();
+        roleDependency.setRoleType(Role.class);
+        roleDependency.setName("role");
+        cd.addComponentDependency(roleDependency);
+        ecm.registerComponent(cd);
+
+        final Logger logger = LoggerFactory.getLogger(DependencyRoleImpl.class);
+        final Role role = ecm.getInstance(Role.class);
+        final InjectionPlan<Role> plan = new InjectionPlan<>(cd);
+
+        // What the component manager used to do for each new instance: reflection by field name
+        double reflection = measure(new Callable<Role>()
+        {
+            @Override
+            public Role call() throws Exception
+            {
+                DependencyRoleImpl instance = DependencyRoleImpl.class.newInstance();
+                ReflectionUtils.setFieldValue(instance, "logger", logger);
+                ReflectionUtils.setFieldValue(instance, "role", role);
+
+                return instance;
+            }
+        });
+
+        double injectionPlan = measure(new Callable<Role>()
+        {
+            @Override
+            public Role call() throws Exception
+            {
+                Role instance = plan.newInstance();
+                plan.getInjections().get(0).inject(instance, logger);
+                plan.getInjections().get(1).inject(instance, role);
+
+                return instance;
+            }
+        });
+
+        assertFaster("Injection plan slower than reflection", injectionPlan, reflection);
+
+        // Make sure the component manager actually uses the plan
+        DependencyRoleImpl instance = ecm.getInstance(Role.class, "dependency");
+        Assert.assertNotNull(instance.logger);
+        Assert.assertSame(role, instance.role);
+    }
+
+    private Callable<Object> lookup(final EmbeddableComponentManager ecm, final Type roleType)
+    {
+        return new Callable<Object>()
+        {
+            @Override
+            public Object call() throws ComponentLookupException
+            {
+                return ecm.getInstance(roleType, "hint");
+            }
+        };
+    }
+
+    @Test
+    public void lookupWithoutAllocation() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setRoleHint("hint");
+        ecm.registerComponent(cd, new RoleImpl());
+
+        Type genericRole = new DefaultParameterizedType(null, List.class,
+            new DefaultParameterizedType(null, List.class, String.class));
+        DefaultComponentDescriptor<List<List<String>>> genericDescriptor = new DefaultComponentDescriptor<>();
+        genericDescriptor.setRoleType(genericRole);
+        genericDescriptor.setRoleHint("hint");
+        ecm.registerComponent(genericDescriptor, new ArrayList<List<String>>());
+
+        Assert.assertEquals(0, measureAllocation(lookup(ecm, Role.class)), 1);
+        Assert.assertEquals(0, measureAllocation(lookup(ecm, genericRole)), 1);
+
+        // The hash of the generic role is cached and the registered role is compared without copying the arguments
+        double plain = measure(lookup(ecm, Role.class));
+        double generic = measure(lookup(ecm, genericRole));
+        assertFaster("Generic role lookup more than 3 times slower than plain role lookup", generic, plain * 3);
+    }
+}
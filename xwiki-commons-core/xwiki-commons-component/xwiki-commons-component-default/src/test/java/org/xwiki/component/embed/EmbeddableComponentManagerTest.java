@@ -19,21 +19,41 @@
  */
 package org.xwiki.component.embed;
 
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.DisposePriority;
+import org.xwiki.component.descriptor.ComponentDependency;
 import org.xwiki.component.descriptor.ComponentDescriptor;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.descriptor.DefaultComponentDependency;
 import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.component.internal.multi.DelegateComponentManager;
 import org.xwiki.component.manager.ComponentEventManager;
 import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentLookupException;
@@ -98,6 +118,27 @@ public boolean isFinalized()
         }
     }
 
+    public static class BlockingDisposableRoleImpl implements Role, Disposable
+    {
+        static CountDownLatch creating;
+
+        static CountDownLatch unregistered;
+
+        static volatile BlockingDisposableRoleImpl disposedInstance;
+
+        public BlockingDisposableRoleImpl() throws InterruptedException
+        {
+            creating.countDown();
+            unregistered.await();
+        }
+
+        @Override
+        public void dispose()
+        {
+            disposedInstance = this;
+        }
+    }
+
     @DisposePriority(2000)
     public static class DisposableWithPriorityRoleImpl implements Role, Disposable
     {
@@ -116,6 +157,36 @@ public boolean isFinalized()
         }
     }
 
+    public static class RecordingDisposableRoleImpl implements Role, Disposable
+    {
+        private final String name;
+
+        private final List<String> disposed;
+
+        private final CyclicBarrier barrier;
+
+        public RecordingDisposableRoleImpl(String name, List<String> disposed, CyclicBarrier barrier)
+        {
+            this.name = name;
+            this.disposed = disposed;
+            this.barrier = barrier;
+        }
+
+        @Override
+        public void dispose() throws ComponentLifecycleException
+        {
+            if (this.barrier != null) {
+                try {
+                    this.barrier.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new ComponentLifecycleException("Not disposed in parallel", e);
+                }
+            }
+
+            this.disposed.add(this.name);
+        }
+    }
+
     public static class LoggingRoleImpl implements Role
     {
         private Logger logger;
@@ -306,6 +377,34 @@ public void testGetInstanceListAndMapWhenSomeComponentsInParent() throws Excepti
         Assert.assertSame(roleImpl, instances.get("default"));
     }
 
+    @Test
+    public void getInstanceMapAfterUnregister() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> cd1 = new DefaultComponentDescriptor<Role>();
+        cd1.setRoleType(Role.class);
+        cd1.setRoleHint("hint1");
+        cd1.setImplementation(RoleImpl.class);
+        ecm.registerComponent(cd1);
+
+        DefaultComponentDescriptor<Role> cd2 = new DefaultComponentDescriptor<Role>();
+        cd2.setRoleType(Role.class);
+        cd2.setRoleHint("hint2");
+        cd2.setImplementation(OtherRoleImpl.class);
+        ecm.registerComponent(cd2);
+
+        Assert.assertEquals(2, ecm.getInstanceMap(Role.class).size());
+
+        ecm.unregisterComponent(Role.class, "hint1");
+
+        Map<String, Role> instances = ecm.getInstanceMap(Role.class);
+        Assert.assertEquals(1, instances.size());
+        Assert.assertSame(OtherRoleImpl.class, instances.get("hint2").getClass());
+        Assert.assertEquals(1, ecm.getComponentDescriptorList((Type) Role.class).size());
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint1"));
+    }
+
     @Test
     public void testHasComponent() throws Exception
     {
@@ -522,6 +621,101 @@ public void testRegisterComponentNotificationOnSecondRegistration() throws Excep
         verify(cem).notifyComponentRegistered(cd2, ecm);
     }
 
+    @Test
+    public void registerComponents() throws Exception
+    {
+        final EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> cd1 = new DefaultComponentDescriptor<Role>();
+        cd1.setRoleType(Role.class);
+        cd1.setImplementation(DisposableRoleImpl.class);
+        ecm.registerComponent(cd1);
+        DisposableRoleImpl instance = ecm.getInstance(Role.class);
+
+        DefaultComponentDescriptor<Role> cd2 = new DefaultComponentDescriptor<Role>();
+        cd2.setRoleType(Role.class);
+        cd2.setImplementation(OtherRoleImpl.class);
+
+        DefaultComponentDescriptor<Role> cd3 = new DefaultComponentDescriptor<Role>();
+        cd3.setRoleType(Role.class);
+        cd3.setRoleHint("other");
+        cd3.setImplementation(RoleImpl.class);
+
+        ComponentEventManager cem = mock(ComponentEventManager.class);
+        ecm.setComponentEventManager(cem);
+
+        // Make sure all the components are visible when listeners are notified
+        final List<Object> instances = new ArrayList<>();
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                instances.add(ecm.getInstance(Role.class));
+                instances.add(ecm.getInstance(Role.class, "other"));
+
+                return null;
+            }
+        }).when(cem).notifyComponentsRegistered(Arrays.asList(cd2, cd3), ecm);
+
+        ecm.registerComponents(Arrays.<ComponentDescriptor<?>>asList(cd2, cd3));
+
+        verify(cem).notifyComponentUnregistered(cd1, ecm);
+        verify(cem).notifyComponentsRegistered(Arrays.asList(cd2, cd3), ecm);
+
+        Assert.assertTrue(instance.isFinalized());
+        Assert.assertEquals(2, instances.size());
+        Assert.assertTrue(instances.get(0) instanceof OtherRoleImpl);
+        Assert.assertTrue(instances.get(1) instanceof RoleImpl);
+    }
+
+    @Test
+    public void disposeInParallel() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        List<String> disposed = Collections.synchronizedList(new ArrayList<String>());
+        CyclicBarrier barrier = new CyclicBarrier(2);
+
+        DefaultComponentDependency<Role> dependency = new DefaultComponentDependency<>();
+        dependency.setRoleType(Role.class);
+        dependency.setRoleHint("used");
+        dependency.setName("used");
+
+        registerDisposable(ecm, "used", new RecordingDisposableRoleImpl("used", disposed, null), null);
+        // Only disposed if disposed at the same time
+        registerDisposable(ecm, "user", new RecordingDisposableRoleImpl("user", disposed, barrier), dependency);
+        registerDisposable(ecm, "other", new RecordingDisposableRoleImpl("other", disposed, barrier), null);
+
+        DisposalPolicy policy = new DisposalPolicy();
+        policy.setParallelism(2);
+        policy.setTimeout(60000);
+        ecm.setDisposalPolicy(policy);
+
+        ecm.dispose();
+
+        // The component used by another one is disposed last
+        Assert.assertEquals(3, disposed.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("user", "other")), new HashSet<>(disposed.subList(0, 2)));
+        Assert.assertEquals("used", disposed.get(2));
+
+        Assert.assertNull(ecm.getComponentDescriptor(Role.class, "used"));
+        Assert.assertNotNull(ecm.getComponentDescriptor(ComponentManager.class, "default"));
+    }
+
+    private void registerDisposable(EmbeddableComponentManager ecm, String hint, Role instance,
+        ComponentDependency<?> dependency)
+    {
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setRoleHint(hint);
+        cd.setImplementation(RecordingDisposableRoleImpl.class);
+        if (dependency != null) {
+            cd.addComponentDependency(dependency);
+        }
+        ecm.registerComponent(cd, instance);
+    }
+
     @Test
     public void testDispose() throws Exception
     {
@@ -567,6 +761,51 @@ public void testDispose() throws Exception
         Assert.assertEquals("DisposableWithPriorityRoleImpl", lastDisposedComponent);
     }
 
+    @Test
+    public void unregisterWhileCreatingSingleton() throws Exception
+    {
+        final EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(BlockingDisposableRoleImpl.class);
+        ecm.registerComponent(cd);
+
+        BlockingDisposableRoleImpl.creating = new CountDownLatch(1);
+        BlockingDisposableRoleImpl.unregistered = new CountDownLatch(1);
+        BlockingDisposableRoleImpl.disposedInstance = null;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Role> future = executor.submit(new Callable<Role>()
+            {
+                @Override
+                public Role call() throws Exception
+                {
+                    return ecm.getInstance(Role.class);
+                }
+            });
+
+            // Unregister the component while its instance is being created
+            BlockingDisposableRoleImpl.creating.await();
+            ecm.unregisterComponent(Role.class, "default");
+            BlockingDisposableRoleImpl.unregistered.countDown();
+
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                Assert.fail("Should have failed");
+            } catch (ExecutionException expected) {
+                Assert.assertTrue(expected.getCause() instanceof ComponentLookupException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The instance created for the unregistered component is not lost
+        Assert.assertNotNull(BlockingDisposableRoleImpl.disposedInstance);
+        Assert.assertFalse(ecm.hasComponent(Role.class));
+    }
+
     @Test
     public void diposeWhenImplementationIsECM() throws Exception
     {
@@ -614,4 +853,333 @@ public void testComponentDescriptorInjection() throws Exception
         Assert.assertNotNull(impl.getComponentDescriptor());
     }
 
+    public static class DependencyRoleImpl extends LoggingRoleImpl
+    {
+        private Role role;
+
+        public Role getRole()
+        {
+            return this.role;
+        }
+    }
+
+    private DefaultComponentDescriptor<Role> createDependencyRoleDescriptor()
+    {
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setRoleHint("dependency");
+        cd.setImplementation(DependencyRoleImpl.class);
+        cd.setInstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP);
+
+        DefaultComponentDependency<Logger> loggerDependency = new DefaultComponentDependency<>();
+        loggerDependency.setRoleType(Logger.class);
+        loggerDependency.setName("logger");
+        cd.addComponentDependency(loggerDependency);
+
+        DefaultComponentDependency<Role> roleDependency = new DefaultComponentDependency<>();
+        roleDependency.setRoleType(Role.class);
+        roleDependency.setName("role");
+        cd.addComponentDependency(roleDependency);
+
+        return cd;
+    }
+
+    @Test
+    public void getPerLookupInstanceWithDependencies() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(RoleImpl.class);
+        ecm.registerComponent(cd);
+
+        ecm.registerComponent(createDependencyRoleDescriptor());
+
+        DependencyRoleImpl instance1 = ecm.getInstance(Role.class, "dependency");
+        DependencyRoleImpl instance2 = ecm.getInstance(Role.class, "dependency");
+
+        Assert.assertNotSame(instance1, instance2);
+        Assert.assertNotNull(instance1.getLogger());
+        Assert.assertSame(ecm.getInstance(Role.class), instance1.getRole());
+        Assert.assertNotNull(instance2.getLogger());
+        Assert.assertSame(ecm.getInstance(Role.class), instance2.getRole());
+    }
+
+    @Test
+    public void getInstanceWithCustomDependencyInstance() throws Exception
+    {
+        final Role customRole = new OtherRoleImpl();
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager()
+        {
+            @Override
+            protected Object getDependencyInstance(ComponentDescriptor<?> descriptor, Object parentInstance,
+                ComponentDependency<?> dependency) throws ComponentLookupException
+            {
+                if (dependency.getRoleType() == Role.class) {
+                    return customRole;
+                }
+
+                return super.getDependencyInstance(descriptor, parentInstance, dependency);
+            }
+        };
+
+        ecm.registerComponent(createDependencyRoleDescriptor());
+
+        DependencyRoleImpl instance = ecm.getInstance(Role.class, "dependency");
+
+        Assert.assertSame(customRole, instance.getRole());
+        Assert.assertNotNull(instance.getLogger());
+    }
+
+    private DefaultComponentDescriptor<Role> createCycleRoleDescriptor(String hint, String dependencyHint)
+    {
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setRoleHint(hint);
+        cd.setImplementation(DependencyRoleImpl.class);
+
+        DefaultComponentDependency<Role> roleDependency = new DefaultComponentDependency<>();
+        roleDependency.setRoleType(Role.class);
+        roleDependency.setRoleHint(dependencyHint);
+        roleDependency.setName("role");
+        cd.addComponentDependency(roleDependency);
+
+        return cd;
+    }
+
+    @Test
+    public void getSingletonInstanceWithDependencyCycle() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        ecm.registerComponent(createCycleRoleDescriptor("a", "b"));
+        ecm.registerComponent(createCycleRoleDescriptor("b", "a"));
+
+        // Make sure the failed creation does not leave anything behind
+        for (int i = 0; i < 2; ++i) {
+            try {
+                ecm.getInstance(Role.class, "a");
+                Assert.fail("Should have failed because of the dependency cycle");
+            } catch (ComponentLookupException expected) {
+                String role = Role.class.getTypeName();
+                Assert.assertEquals(String.format("Dependency cycle detected: [%s]:[a] -> [%s]:[b] -> [%s]:[a]", role,
+                    role, role), ExceptionUtils.getRootCause(expected).getMessage());
+            }
+        }
+    }
+
+    public static class SlowInitializableRoleImpl implements Role, Initializable
+    {
+        private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+        @Override
+        public void initialize() throws InitializationException
+        {
+            INSTANCES.incrementAndGet();
+
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new InitializationException("Interrupted", e);
+            }
+        }
+    }
+
+    @Test
+    public void getSingletonInstanceFromSeveralThreads() throws Exception
+    {
+        final EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(SlowInitializableRoleImpl.class);
+        ecm.registerComponent(cd);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Role>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                futures.add(executor.submit(new Callable<Role>()
+                {
+                    @Override
+                    public Role call() throws Exception
+                    {
+                        return ecm.getInstance(Role.class);
+                    }
+                }));
+            }
+
+            Role instance = ecm.getInstance(Role.class);
+            for (Future<Role> future : futures) {
+                Assert.assertSame(instance, future.get());
+            }
+            Assert.assertEquals(1, SlowInitializableRoleImpl.INSTANCES.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void warmup() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(RoleImpl.class);
+        ecm.registerComponent(cd);
+
+        DefaultComponentDescriptor<Role> dependencyDescriptor = createDependencyRoleDescriptor();
+        dependencyDescriptor.setInstantiationStrategy(ComponentInstantiationStrategy.SINGLETON);
+        ecm.registerComponent(dependencyDescriptor);
+
+        WarmupReport report = ecm.warmup(new WarmupPolicy());
+
+        Assert.assertEquals(2, report.getWaves());
+        Assert.assertEquals(2, report.getCreationTimes().size());
+        Assert.assertTrue(report.getFailures().isEmpty());
+        Assert.assertEquals(2, report.getCriticalPath().size());
+        Assert.assertEquals(ecm.getComponentDescriptor(Role.class, "default"), report.getCriticalPath().get(0));
+        Assert.assertEquals(ecm.getComponentDescriptor(Role.class, "dependency"), report.getCriticalPath().get(1));
+        Assert.assertTrue(report.getCriticalPathTime() <= report.getTime());
+
+        DependencyRoleImpl instance = ecm.getInstance(Role.class, "dependency");
+        Assert.assertSame(ecm.getInstance(Role.class), instance.getRole());
+
+        // Everything is already created
+        Assert.assertEquals(0, ecm.warmup(new WarmupPolicy()).getCreationTimes().size());
+    }
+
+    @Test
+    public void lookupMissingComponentInParent() throws Exception
+    {
+        final AtomicInteger parentLookups = new AtomicInteger();
+        EmbeddableComponentManager parent = new EmbeddableComponentManager()
+        {
+            @Override
+            public boolean hasComponent(Type role, String hint)
+            {
+                parentLookups.incrementAndGet();
+
+                return super.hasComponent(role, hint);
+            }
+        };
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(parent);
+
+        Assert.assertFalse(ecm.hasComponent(Role.class));
+        Assert.assertFalse(ecm.hasComponent(Role.class));
+        Assert.assertNull(ecm.getComponentDescriptor(Role.class, "default"));
+        try {
+            ecm.getInstance(Role.class);
+            Assert.fail("Should have failed");
+        } catch (ComponentLookupException expected) {
+            // The component does not exist
+        }
+
+        // The parent is only asked once
+        Assert.assertEquals(1, parentLookups.get());
+
+        // Registering a component in the parent invalidates the missing components of the child
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(RoleImpl.class);
+        parent.registerComponent(cd);
+
+        Assert.assertTrue(ecm.hasComponent(Role.class));
+        Assert.assertNotNull(ecm.getComponentDescriptor(Role.class, "default"));
+        Assert.assertNotNull(ecm.getInstance(Role.class));
+
+        parent.unregisterComponent(Role.class, "default");
+
+        Assert.assertFalse(ecm.hasComponent(Role.class));
+    }
+
+    @Test
+    public void lookupMissingComponentAfterChangingParent() throws Exception
+    {
+        EmbeddableComponentManager parentWithComponent = new EmbeddableComponentManager();
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(RoleImpl.class);
+        parentWithComponent.registerComponent(cd);
+
+        // Whatever the number of registrations in the previous parent, the missing component is looked up again
+        for (int registrations = 0; registrations < 4; ++registrations) {
+            EmbeddableComponentManager parentWithoutComponent = new EmbeddableComponentManager();
+            for (int i = 0; i < registrations; ++i) {
+                DefaultComponentDescriptor<Role> otherCd = new DefaultComponentDescriptor<>();
+                otherCd.setRoleType(Role.class);
+                otherCd.setRoleHint("other" + i);
+                otherCd.setImplementation(RoleImpl.class);
+                parentWithoutComponent.registerComponent(otherCd);
+            }
+
+            EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+            ecm.setParent(parentWithoutComponent);
+            Assert.assertFalse(ecm.hasComponent(Role.class));
+
+            ecm.setParent(parentWithComponent);
+            Assert.assertTrue(ecm.hasComponent(Role.class));
+        }
+    }
+
+    @Test
+    public void lookupMissingComponentThroughDelegateParent() throws Exception
+    {
+        EmbeddableComponentManager parentWithComponent = new EmbeddableComponentManager();
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(RoleImpl.class);
+        parentWithComponent.registerComponent(cd);
+
+        // The delegate stands for a component manager depending on the context (current wiki, user, etc.)
+        DelegateComponentManager delegate = new DelegateComponentManager();
+        delegate.setComponentManager(new EmbeddableComponentManager());
+
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(delegate);
+        Assert.assertFalse(ecm.hasComponent(Role.class));
+
+        delegate.setComponentManager(parentWithComponent);
+        Assert.assertTrue(ecm.hasComponent(Role.class));
+
+        // A parent whose own parent depends on the context
+        EmbeddableComponentManager child = new EmbeddableComponentManager();
+        EmbeddableComponentManager parent = new EmbeddableComponentManager();
+        parent.setParent(delegate);
+        child.setParent(parent);
+
+        delegate.setComponentManager(new EmbeddableComponentManager());
+        Assert.assertFalse(child.hasComponent(Role.class));
+
+        delegate.setComponentManager(parentWithComponent);
+        Assert.assertTrue(child.hasComponent(Role.class));
+    }
+
+    public static class GenericDependencyRoleImpl implements Role
+    {
+        private List<String> list;
+    }
+
+    @Test
+    public void getInstanceWithGenericRole() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        // Register the component with the Java representation of the role
+        DefaultComponentDescriptor<List<String>> cd = new DefaultComponentDescriptor<>();
+        cd.setRoleType(GenericDependencyRoleImpl.class.getDeclaredField("list").getGenericType());
+        List<String> list = Collections.singletonList("value");
+        ecm.registerComponent(cd, list);
+
+        Type listType = new DefaultParameterizedType(null, List.class, String.class);
+        Assert.assertTrue(ecm.hasComponent(listType));
+        Assert.assertSame(list, ecm.getInstance(listType));
+        Assert.assertSame(list, ecm.getInstance(listType, null));
+        Assert.assertSame(list, ecm.getInstance(GenericDependencyRoleImpl.class.getDeclaredField("list")
+            .getGenericType()));
+        Assert.assertFalse(ecm.hasComponent(new DefaultParameterizedType(null, List.class, Integer.class)));
+    }
 }
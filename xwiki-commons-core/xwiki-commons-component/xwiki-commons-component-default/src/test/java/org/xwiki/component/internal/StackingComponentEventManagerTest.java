@@ -20,18 +20,22 @@
 package org.xwiki.component.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.xwiki.component.descriptor.ComponentDescriptor;
 import org.xwiki.component.descriptor.DefaultComponentDescriptor;
 import org.xwiki.component.event.ComponentDescriptorAddedEvent;
 import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 
 /**
  * Test {@link StackingComponentEventManager}.
@@ -113,4 +117,50 @@ public void flushEvents()
 
         this.eventManager.flushEvents();
     }
+
+    @Test
+    public void notifyComponentsRegisteredSendsASingleBatch()
+    {
+        this.eventManager.shouldStack(false);
+
+        final List<Event> events = Arrays.<Event>asList(
+            new ComponentDescriptorAddedEvent(this.descriptor1.getRoleType(), this.descriptor1.getRoleHint()),
+            new ComponentDescriptorAddedEvent(this.descriptor2.getRoleType(), this.descriptor2.getRoleHint()));
+        final List<ComponentDescriptor<?>> descriptors =
+            Arrays.<ComponentDescriptor<?>>asList(this.descriptor1, this.descriptor2);
+
+        this.mockery.checking(new Expectations()
+        {
+            {
+                oneOf(mockObservationManager).notifyBatchWithEventsData(with(equal(events)),
+                    with(same(mockComponentManager)), with(equal(descriptors)));
+            }
+        });
+
+        this.eventManager.notifyComponentsRegistered(descriptors, this.mockComponentManager);
+    }
+
+    @Test
+    public void flushStackedComponentsRegistered()
+    {
+        this.eventManager.shouldStack(true);
+
+        final List<ComponentDescriptor<?>> descriptors =
+            Arrays.<ComponentDescriptor<?>>asList(this.descriptor1, this.descriptor2);
+        this.eventManager.notifyComponentsRegistered(descriptors, this.mockComponentManager);
+
+        final List<Event> events = Arrays.<Event>asList(
+            new ComponentDescriptorAddedEvent(this.descriptor1.getRoleType(), this.descriptor1.getRoleHint()),
+            new ComponentDescriptorAddedEvent(this.descriptor2.getRoleType(), this.descriptor2.getRoleHint()));
+
+        this.mockery.checking(new Expectations()
+        {
+            {
+                oneOf(mockObservationManager).notifyBatchWithEventsData(with(equal(events)),
+                    with(same(mockComponentManager)), with(equal(descriptors)));
+            }
+        });
+
+        this.eventManager.flushEvents();
+    }
 }
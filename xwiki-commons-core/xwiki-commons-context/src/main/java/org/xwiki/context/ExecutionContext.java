@@ -22,13 +22,20 @@
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.inject.Provider;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.context.internal.ExecutionContextInitializerStatistics;
 import org.xwiki.context.internal.ExecutionContextProperty;
+import org.xwiki.context.internal.MeasuredProvider;
 
 /**
  * Contains all state data related to the current user action. Note that the execution context is independent of the
  * environment and all environment-dependent data are stored in the Container component instead.
+ * <p>
+ * Properties which are accessed often should use a registered {@link ExecutionContextKey} and the corresponding typed
+ * methods, which access the property directly by index.
  *
  * @version $Id$
  * @since 1.5M2
@@ -41,7 +48,12 @@
     /**
      * @see #getProperty(String)
      */
-    private Map<String, ExecutionContextProperty> properties = new HashMap<String, ExecutionContextProperty>();
+    private ExecutionContextProperties properties = new ExecutionContextProperties();
+
+    /**
+     * @see #setLazyPropertyStatistics(ExecutionContextInitializerStatistics)
+     */
+    private ExecutionContextInitializerStatistics lazyPropertyStatistics;
 
     /**
      * @param key the key under which is stored the property to retrieve
@@ -49,8 +61,22 @@
      */
     public Object getProperty(String key)
     {
-        ExecutionContextProperty property = this.properties.get(key);
+        return getValue(this.properties.get(key), key);
+    }
+
+    /**
+     * @param <T> the type of the property value
+     * @param key the key under which is stored the property to retrieve
+     * @return the property matching the passed key
+     * @since 8.2M1
+     */
+    public <T> T getProperty(ExecutionContextKey<T> key)
+    {
+        return key.getType().cast(getValue(this.properties.get(key), key));
+    }
 
+    private Object getValue(ExecutionContextProperty property, Object key)
+    {
         if (property == null) {
             LOGGER.debug("Getting undefined property {} from execution context.", key);
             return null;
@@ -69,13 +95,34 @@ public DeclarationBuilder newProperty(String key)
         return new DeclarationBuilder(key);
     }
 
+    /**
+     * @param key the key of the property
+     * @return a builder object for performing the declaration, with the type of the key. The property will not be
+     *         declared until the declare method is called on the builder object.
+     * @since 8.2M1
+     */
+    public DeclarationBuilder newProperty(ExecutionContextKey<?> key)
+    {
+        return new DeclarationBuilder(key.getName()).type(key.getType());
+    }
+
     /**
      * @param key the key under which is stored the property to retrieve
      * @return {@code true} if there is a property declared for the given key.
      */
     public boolean hasProperty(String key)
     {
-        return this.properties.containsKey(key);
+        return this.properties.get(key) != null;
+    }
+
+    /**
+     * @param key the key under which is stored the property to retrieve
+     * @return {@code true} if there is a property declared for the given key.
+     * @since 8.2M1
+     */
+    public boolean hasProperty(ExecutionContextKey<?> key)
+    {
+        return this.properties.get(key) != null;
     }
 
     /**
@@ -85,8 +132,8 @@ public Map<String, Object> getProperties()
     {
         Map<String, Object> map = new HashMap<String, Object>();
 
-        for (Map.Entry<String, ExecutionContextProperty> entry : this.properties.entrySet()) {
-            map.put(entry.getKey(), entry.getValue().getValue());
+        for (ExecutionContextProperty property : this.properties.values()) {
+            map.put(property.getKey(), property.getValue());
         }
 
         return map;
@@ -106,23 +153,52 @@ public void removeProperty(String key)
         this.properties.remove(key);
     }
 
+    /**
+     * @param key remove the property whose key matches the passed key
+     * @since 8.2M1
+     */
+    public void removeProperty(ExecutionContextKey<?> key)
+    {
+        removeProperty(key.getName());
+    }
+
     /**
      * @param key the key under which to save the passed property value
      * @param value the value to set
      */
     public void setProperty(String key, Object value)
     {
-        ExecutionContextProperty property = this.properties.get(key);
+        setValue(this.properties.get(key), key, null, value);
+    }
 
-        if (property == null) {
+    /**
+     * @param <T> the type of the property value
+     * @param key the key under which to save the passed property value
+     * @param value the value to set
+     * @since 8.2M1
+     */
+    public <T> void setProperty(ExecutionContextKey<T> key, T value)
+    {
+        setValue(this.properties.get(key), key.getName(), key.getType(), value);
+    }
+
+    private void setValue(ExecutionContextProperty property, String key, Class<?> type, Object value)
+    {
+        ExecutionContextProperty currentProperty = property;
+
+        if (currentProperty == null) {
             LOGGER.debug("Implicit declaration of property {}.", key);
-            newProperty(key).declare();
-            property = this.properties.get(key);
-        } else if (property.isFinal()) {
+            newProperty(key).type(type).declare();
+            currentProperty = this.properties.get(key);
+        } else if (currentProperty.isFinal()) {
             throw new PropertyIsFinalException(key);
+        } else if (currentProperty.isShared()) {
+            // Copy on write: the property is also used by another execution context
+            currentProperty = currentProperty.clone();
+            this.properties.put(currentProperty);
         }
 
-        property.setValue(value);
+        currentProperty.setValue(value);
     }
 
     /**
@@ -144,11 +220,11 @@ public void setProperties(Map<String, Object> properties)
      */
     private void declareProperty(ExecutionContextProperty property)
     {
-        if (this.properties.containsKey(property.getKey())) {
+        if (this.properties.get(property.getKey()) != null) {
             throw new PropertyAlreadyExistsException(property.getKey());
         }
 
-        this.properties.put(property.getKey(), property);
+        this.properties.put(property);
     }
 
     /**
@@ -160,6 +236,10 @@ private void declareProperty(ExecutionContextProperty property)
      * All properties marked as 'inherited' will be copied into this context, unless the property already is declared in
      * this context.
      * <p>
+     * Since 8.2M1 the inherited properties are shared with the inherited execution context and only copied when they
+     * are modified (in one context or the other), except the properties whose value is cloned which are still copied
+     * during the inheritance.
+     * <p>
      * It is an error if this context contain a value that was declared as 'inherited' and 'final' in the inherited
      * execution context and an exception will be thrown.
      *
@@ -169,15 +249,31 @@ private void declareProperty(ExecutionContextProperty property)
      */
     public void inheritFrom(ExecutionContext executionContext)
     {
-        for (ExecutionContextProperty property : executionContext.properties.values()) {
-            if (property.isInherited()) {
-                if (this.properties.containsKey(property.getKey())) {
-                    checkIfInheritedPropertyMayBeIgnored(property);
-                } else {
-                    declareProperty(property.clone());
-                }
+        ExecutionContextProperties inheritedProperties = executionContext.properties.getInherited();
+
+        // Only the properties already declared in this context need to be checked, the others are shared with the
+        // inherited context and copied when modified
+        for (ExecutionContextProperty property : this.properties.values()) {
+            ExecutionContextProperty inheritedProperty = inheritedProperties.get(property.getKey());
+            if (inheritedProperty != null) {
+                checkIfInheritedPropertyMayBeIgnored(inheritedProperty);
             }
         }
+
+        this.properties.inherit(inheritedProperties);
+    }
+
+    /**
+     * Measure the computation of the values of the lazy properties declared from now on in this context (see
+     * {@link DeclarationBuilder#lazy(Provider)}). Used by the {@link ExecutionContextManager} while the
+     * {@link ExecutionContextInitializer}s run.
+     *
+     * @param statistics where to record the time spent computing the values, null to stop measuring
+     * @since 8.2M1
+     */
+    public void setLazyPropertyStatistics(ExecutionContextInitializerStatistics statistics)
+    {
+        this.lazyPropertyStatistics = statistics;
     }
 
     /**
@@ -211,6 +307,9 @@ private void checkIfInheritedPropertyMayBeIgnored(ExecutionContextProperty prope
         /** @see ExecutionContextProperty#value */
         private Object value;
 
+        /** @see ExecutionContextProperty#valueProvider */
+        private Provider<?> valueProvider;
+
         /** @see ExecutionContextProperty#cloneValue */
         private boolean cloneValue;
 
@@ -241,9 +340,16 @@ private DeclarationBuilder(String key)
          */
         public void declare()
         {
-            ExecutionContext.this.declareProperty(
-                new ExecutionContextProperty(this.key, this.value, this.cloneValue, this.isFinal, this.inherited,
-                    this.nonNull, this.type));
+            ExecutionContextProperty property;
+            if (this.valueProvider != null) {
+                property = new ExecutionContextProperty(this.key, this.valueProvider, this.cloneValue, this.isFinal,
+                    this.inherited, this.nonNull, this.type);
+            } else {
+                property = new ExecutionContextProperty(this.key, this.value, this.cloneValue, this.isFinal,
+                    this.inherited, this.nonNull, this.type);
+            }
+
+            ExecutionContext.this.declareProperty(property);
         }
 
         /**
@@ -253,6 +359,24 @@ public void declare()
         public DeclarationBuilder initial(Object value)
         {
             this.value = value;
+            this.valueProvider = null;
+            return this;
+        }
+
+        /**
+         * Compute the initial value the first time the property is requested instead of when it's declared, which
+         * avoids creating values which are never used. Meant for {@link ExecutionContextInitializer}s.
+         *
+         * @param valueProvider Compute the initial value.
+         * @return this declaration builder.
+         * @since 8.2M1
+         */
+        public DeclarationBuilder lazy(Provider<?> valueProvider)
+        {
+            ExecutionContextInitializerStatistics statistics = lazyPropertyStatistics;
+            this.valueProvider = statistics != null && valueProvider != null
+                ? new MeasuredProvider<>(this.key, valueProvider, statistics) : valueProvider;
+            this.value = null;
             return this;
         }
 
@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A well-known {@link ExecutionContext} property key, resolved once to a fixed slot so that accessing the property
+ * through the typed methods of {@link ExecutionContext} does not involve any hashing.
+ * <p>
+ * Keys are global and registered once (usually in a static field) with {@link #register(String, Class)}. The
+ * property is still accessible through the string based methods of {@link ExecutionContext} using the name of the
+ * key, at the cost of looking up the key by name before accessing the slot.
+ * <p>
+ * The registry lives as long as this class, i.e. usually as long as the JVM, and keys are never unregistered. A name is
+ * always associated with the same slot: registering it again, for example from a class reloaded in a new classloader,
+ * reuses the slot of the first registration, so the number of slots is bounded by the number of distinct names.
+ *
+ * @param <T> the type of the property value
+ * @version $Id$
+ * @since 8.2M1
+ */
+public final class ExecutionContextKey<T>
+{
+    private static final Map<String, ExecutionContextKey<?>> KEYS = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final Class<T> type;
+
+    private final int slot;
+
+    private ExecutionContextKey(String name, Class<T> type, int slot)
+    {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * Register a new key or return the already registered key with the same name.
+     * <p>
+     * The types are compared by name so that a key can be registered again with the same type loaded by another
+     * classloader, in which case the returned key has the new type and the slot of the existing key.
+     *
+     * @param <T> the type of the property value
+     * @param name the name of the property
+     * @param type the type of the property value
+     * @return the key
+     * @throws IllegalArgumentException if a key with the same name but a type with a different name is already
+     *             registered
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T> ExecutionContextKey<T> register(String name, Class<T> type)
+    {
+        ExecutionContextKey<?> key = KEYS.get(name);
+
+        if (key == null) {
+            key = new ExecutionContextKey<>(name, type, KEYS.size());
+            KEYS.put(name, key);
+        } else if (key.getType() != type) {
+            if (!key.getType().getName().equals(type.getName())) {
+                throw new IllegalArgumentException(String.format(
+                    "The execution context key [%s] is already registered with type [%s]", name, key.getType()));
+            }
+
+            // Same type from another classloader
+            key = new ExecutionContextKey<>(name, type, key.getSlot());
+            KEYS.put(name, key);
+        }
+
+        return (ExecutionContextKey<T>) key;
+    }
+
+    /**
+     * @param name the name of the property
+     * @return the registered key with the passed name, null if none is registered
+     */
+    public static ExecutionContextKey<?> get(String name)
+    {
+        return KEYS.get(name);
+    }
+
+    /**
+     * @return the number of registered keys
+     */
+    static int size()
+    {
+        return KEYS.size();
+    }
+
+    /**
+     * @return the name of the property
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return the type of the property value
+     */
+    public Class<T> getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * @return the index of the slot of the property in the execution contexts
+     */
+    int getSlot()
+    {
+        return this.slot;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.name;
+    }
+}
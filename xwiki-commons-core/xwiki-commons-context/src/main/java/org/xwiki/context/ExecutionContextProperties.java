@@ -0,0 +1,316 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xwiki.context.internal.ExecutionContextProperty;
+
+/**
+ * The properties of an {@link ExecutionContext}: the properties with a registered {@link ExecutionContextKey} are
+ * stored in an array indexed by the slot of the key and the others in a map.
+ * <p>
+ * The inherited properties are not copied: they are read from a frozen layer shared with the parent context (see
+ * {@link #getInherited()}) and the shared properties are only copied when they are modified, in the parent or in the
+ * child context (see {@link ExecutionContextProperty#isShared()}). The properties whose value is cloned are still copied
+ * when inheriting since their value can be modified without going through the context.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class ExecutionContextProperties
+{
+    private static final ExecutionContextProperty[] NO_SLOTS = new ExecutionContextProperty[0];
+
+    private static final ExecutionContextProperties EMPTY = new ExecutionContextProperties(true);
+
+    private ExecutionContextProperty[] slots = NO_SLOTS;
+
+    private final Map<String, ExecutionContextProperty> named = new HashMap<>();
+
+    /**
+     * True if these properties are a layer shared between contexts, which can't be modified anymore.
+     */
+    private final boolean frozen;
+
+    /**
+     * The properties of a frozen layer whose value must be cloned when inherited.
+     */
+    private final List<ExecutionContextProperty> clonedValueProperties = new ArrayList<>();
+
+    /**
+     * The frozen layer of the properties inherited from the parent context, null if none.
+     */
+    private ExecutionContextProperties inherited;
+
+    /**
+     * The names of the inherited properties removed from this context, null if none.
+     */
+    private Set<String> removed;
+
+    /**
+     * The frozen layer of the properties to inherit from this context, null if it needs to be recomputed.
+     */
+    private ExecutionContextProperties snapshot;
+
+    /**
+     * Create empty properties.
+     */
+    ExecutionContextProperties()
+    {
+        this(false);
+    }
+
+    private ExecutionContextProperties(boolean frozen)
+    {
+        this.frozen = frozen;
+    }
+
+    /**
+     * @param name the name of the property
+     * @return the property, null if none is declared with this name
+     */
+    ExecutionContextProperty get(String name)
+    {
+        return get(name, ExecutionContextKey.get(name));
+    }
+
+    /**
+     * @param key the key of the property
+     * @return the property, null if none is declared with this key
+     */
+    ExecutionContextProperty get(ExecutionContextKey<?> key)
+    {
+        return get(key.getName(), key);
+    }
+
+    private ExecutionContextProperty get(String name, ExecutionContextKey<?> key)
+    {
+        ExecutionContextProperty property = getLocal(name, key);
+
+        if (property == null && this.inherited != null && !isRemoved(name)) {
+            property = this.inherited.get(name, key);
+        }
+
+        return property;
+    }
+
+    private ExecutionContextProperty getLocal(String name, ExecutionContextKey<?> key)
+    {
+        if (key == null) {
+            return this.named.get(name);
+        }
+
+        int slot = key.getSlot();
+        ExecutionContextProperty property = slot < this.slots.length ? this.slots[slot] : null;
+
+        if (property == null && !this.named.isEmpty()) {
+            // The property might have been declared before the key was registered
+            if (this.frozen) {
+                // Shared with other contexts, leave it where it is
+                property = this.named.get(name);
+            } else {
+                property = this.named.remove(name);
+                if (property != null) {
+                    setSlot(slot, property);
+                }
+            }
+        }
+
+        return property;
+    }
+
+    private boolean isRemoved(String name)
+    {
+        return this.removed != null && this.removed.contains(name);
+    }
+
+    /**
+     * @param property the property to add or replace
+     */
+    void put(ExecutionContextProperty property)
+    {
+        ExecutionContextKey<?> key = ExecutionContextKey.get(property.getKey());
+
+        if (key != null) {
+            setSlot(key.getSlot(), property);
+        } else {
+            this.named.put(property.getKey(), property);
+        }
+
+        if (this.removed != null) {
+            this.removed.remove(property.getKey());
+        }
+
+        if (property.isInherited()) {
+            this.snapshot = null;
+        }
+    }
+
+    /**
+     * @param name the name of the property to remove
+     */
+    void remove(String name)
+    {
+        ExecutionContextKey<?> key = ExecutionContextKey.get(name);
+
+        ExecutionContextProperty property = getLocal(name, key);
+        if (property != null) {
+            if (key != null) {
+                this.slots[key.getSlot()] = null;
+            } else {
+                this.named.remove(name);
+            }
+        }
+
+        boolean inheritedProperty = this.inherited != null && this.inherited.get(name, key) != null;
+        if (inheritedProperty) {
+            // Hide the inherited property
+            if (this.removed == null) {
+                this.removed = new HashSet<>();
+            }
+            this.removed.add(name);
+        }
+
+        if (inheritedProperty || property != null && property.isInherited()) {
+            this.snapshot = null;
+        }
+    }
+
+    /**
+     * @return all the properties
+     */
+    Collection<ExecutionContextProperty> values()
+    {
+        List<ExecutionContextProperty> values = getLocalValues();
+
+        if (this.inherited != null) {
+            for (ExecutionContextProperty property : this.inherited.values()) {
+                String name = property.getKey();
+                ExecutionContextKey<?> key = ExecutionContextKey.get(name);
+                if (getLocal(name, key) == null && !isRemoved(name)) {
+                    values.add(property);
+                }
+            }
+        }
+
+        return values;
+    }
+
+    private List<ExecutionContextProperty> getLocalValues()
+    {
+        List<ExecutionContextProperty> values = new ArrayList<>(this.named.values());
+
+        for (ExecutionContextProperty property : this.slots) {
+            if (property != null) {
+                values.add(property);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Inherit the passed properties, unless already declared in this context.
+     *
+     * @param properties the frozen inherited properties of the parent context (see {@link #getInherited()})
+     */
+    void inherit(ExecutionContextProperties properties)
+    {
+        if (properties == EMPTY || properties == this.inherited) {
+            return;
+        }
+
+        if (this.inherited != null) {
+            // The properties already inherited take precedence, make them local (they are still shared)
+            for (ExecutionContextProperty property : this.inherited.values()) {
+                if (get(property.getKey()) == property) {
+                    put(property);
+                }
+            }
+        }
+
+        this.inherited = properties;
+        this.removed = null;
+        this.snapshot = null;
+
+        // The value might be modified without going through the context so it can't be shared
+        for (ExecutionContextProperty property : properties.clonedValueProperties) {
+            if (getLocal(property.getKey(), ExecutionContextKey.get(property.getKey())) == null) {
+                put(property.clone());
+            }
+        }
+    }
+
+    /**
+     * @return the frozen layer of the properties to inherit from this context
+     */
+    ExecutionContextProperties getInherited()
+    {
+        if (this.snapshot == null) {
+            this.snapshot = createSnapshot();
+        }
+
+        return this.snapshot;
+    }
+
+    private ExecutionContextProperties createSnapshot()
+    {
+        boolean localInherited = this.removed != null && !this.removed.isEmpty();
+        for (ExecutionContextProperty property : getLocalValues()) {
+            localInherited |= property.isInherited();
+        }
+
+        // Nothing to add to the inherited layer
+        if (!localInherited) {
+            return this.inherited != null ? this.inherited : EMPTY;
+        }
+
+        ExecutionContextProperties layer = new ExecutionContextProperties(true);
+        for (ExecutionContextProperty property : values()) {
+            if (property.isInherited()) {
+                property.markShared();
+                layer.put(property);
+                if (property.isCloneValue()) {
+                    layer.clonedValueProperties.add(property);
+                }
+            }
+        }
+
+        return layer;
+    }
+
+    private void setSlot(int slot, ExecutionContextProperty property)
+    {
+        if (slot >= this.slots.length) {
+            // Make room for all the keys registered so far
+            this.slots = Arrays.copyOf(this.slots, Math.max(slot + 1, ExecutionContextKey.size()));
+        }
+
+        this.slots[slot] = property;
+    }
+}
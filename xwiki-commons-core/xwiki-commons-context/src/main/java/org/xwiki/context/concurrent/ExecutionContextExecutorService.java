@@ -0,0 +1,148 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.concurrent;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.internal.FrameExecution;
+
+/**
+ * {@link ExecutorService} wrapper which executes each task in an execution context inheriting from the execution
+ * context current when the task was submitted.
+ * <p>
+ * Contrary to {@link ExecutionContextRunnable} the {@link org.xwiki.context.ExecutionContextInitializer}s are not
+ * executed: the task only gets the properties marked as inherited. They are shared with the submitting context and
+ * only copied when modified, except the properties whose value is cloned, which are copied in the submitting thread.
+ * Tasks submitted without a current execution context are executed as is.
+ * <p>
+ * The task context does not inherit anything from the context of the thread running the task when the execution is a
+ * {@link FrameExecution} or when that thread has no context. Otherwise (e.g. a task run by the submitting thread with a
+ * {@link org.xwiki.context.internal.DefaultExecution}) the task context is pushed on top of the context of the thread,
+ * from which it inherits.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class ExecutionContextExecutorService extends AbstractExecutorService
+{
+    private final ExecutorService executor;
+
+    private final Execution execution;
+
+    /**
+     * @param executor the executor to wrap
+     * @param execution used to get the submitting execution context and to set the execution context of the tasks
+     */
+    public ExecutionContextExecutorService(ExecutorService executor, Execution execution)
+    {
+        this.executor = executor;
+        this.execution = execution;
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        this.executor.execute(wrap(command));
+    }
+
+    private Runnable wrap(final Runnable command)
+    {
+        ExecutionContext current = this.execution.getContext();
+        if (current == null) {
+            return command;
+        }
+
+        // Inherit in the submitting thread, the execution context is not meant to be accessed from several threads
+        final ExecutionContext context = new ExecutionContext();
+        context.inheritFrom(current);
+
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ExecutionContextExecutorService.this.run(command, context);
+            }
+        };
+    }
+
+    private void run(Runnable command, ExecutionContext context)
+    {
+        if (this.execution instanceof FrameExecution) {
+            // Don't inherit anything from the context of the thread
+            FrameExecution frameExecution = (FrameExecution) this.execution;
+            FrameExecution.Frame previous = frameExecution.bind(context);
+            try {
+                command.run();
+            } finally {
+                frameExecution.restore(previous);
+            }
+        } else if (this.execution.getContext() == null) {
+            this.execution.setContext(context);
+            try {
+                command.run();
+            } finally {
+                this.execution.removeContext();
+            }
+        } else {
+            this.execution.pushContext(context);
+            try {
+                command.run();
+            } finally {
+                this.execution.popContext();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        this.executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        return this.executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return this.executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return this.executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return this.executor.awaitTermination(timeout, unit);
+    }
+}
@@ -25,22 +25,32 @@
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
 import org.xwiki.context.ExecutionContextInitializer;
 import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.management.JMXBeanRegistration;
 
 /**
  * Default implementation of {@link ExecutionContextManager}.
+ * <p>
+ * The time spent by each {@link ExecutionContextInitializer} and computing the lazy property values they declare can
+ * be measured by enabling {@link ExecutionContextInitializerStatistics} through JMX.
  *
  * @version $Id$
  */
 @Component
 @Singleton
-public class DefaultExecutionContextManager implements ExecutionContextManager
+public class DefaultExecutionContextManager implements ExecutionContextManager, Initializable
 {
+    private static final String STATISTICS_MBEAN_NAME = "type=Execution,domain=ExecutionContextInitializerStatistics";
+
     /**
      * Used to set the {@link ExecutionContext}.
      */
@@ -56,6 +66,34 @@ public class DefaultExecutionContextManager implements ExecutionContextManager
     @Inject
     private Provider<List<ExecutionContextInitializer>> initializerProvider;
 
+    /**
+     * Used to lookup the optional JMX registration component.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * The time spent by the initializers and computing the lazy property values.
+     */
+    private final ExecutionContextInitializerStatistics statistics = new ExecutionContextInitializerStatistics();
+
+    @Override
+    public void initialize()
+    {
+        // Management is optional
+        if (this.componentManager.hasComponent(JMXBeanRegistration.class)) {
+            try {
+                this.componentManager.<JMXBeanRegistration>getInstance(JMXBeanRegistration.class)
+                    .registerMBean(this.statistics, STATISTICS_MBEAN_NAME);
+            } catch (ComponentLookupException e) {
+                this.logger.debug("Failed to lookup the JMX registration component", e);
+            }
+        }
+    }
+
     @Override
     public ExecutionContext clone(ExecutionContext context) throws ExecutionContextException
     {
@@ -66,6 +104,8 @@ public ExecutionContext clone(ExecutionContext context) throws ExecutionContextE
         // but only do shallow clones.
         // Thus instead we recreate the Execution Context from scratch and reinitialize it by calling all the
         // Execution Context Initializers on it.
+        // Note that the inherited properties are not copied when pushing the context: they are shared with the
+        // current context and only copied when modified.
         try {
             this.execution.pushContext(clonedContext);
         } catch (RuntimeException e) {
@@ -111,8 +151,40 @@ public void initialize(ExecutionContext context) throws ExecutionContextExceptio
      */
     private void runInitializers(ExecutionContext context) throws ExecutionContextException
     {
-        for (ExecutionContextInitializer initializer : this.initializerProvider.get()) {
-            initializer.initialize(context);
+        boolean measure = this.statistics.isEnabled();
+
+        if (measure) {
+            // Also measure the lazy properties declared by the initializers, when their value is computed
+            context.setLazyPropertyStatistics(this.statistics);
+        }
+
+        try {
+            for (ExecutionContextInitializer initializer : this.initializerProvider.get()) {
+                if (measure) {
+                    long start = System.nanoTime();
+                    boolean failed = true;
+                    try {
+                        initializer.initialize(context);
+                        failed = false;
+                    } finally {
+                        this.statistics.record(initializer.getClass().getName(), System.nanoTime() - start, failed);
+                    }
+                } else {
+                    initializer.initialize(context);
+                }
+            }
+        } finally {
+            if (measure) {
+                context.setLazyPropertyStatistics(null);
+            }
         }
     }
+
+    /**
+     * @return the time spent by the initializers
+     */
+    ExecutionContextInitializerStatistics getStatistics()
+    {
+        return this.statistics;
+    }
 }
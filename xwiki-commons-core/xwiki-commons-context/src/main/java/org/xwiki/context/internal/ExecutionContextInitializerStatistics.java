@@ -0,0 +1,151 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.xwiki.management.InvocationStatistics;
+
+/**
+ * Measure the invocations of the {@link org.xwiki.context.ExecutionContextInitializer}s, by initializer class, and the
+ * computation of the lazy property values they declare, by property key.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class ExecutionContextInitializerStatistics implements ExecutionContextInitializerStatisticsMBean
+{
+    private static final String[] INITIALIZER = new String[] { "initializer" };
+
+    private static final String[] PROPERTY = new String[] { "property" };
+
+    private volatile boolean enabled;
+
+    private final ConcurrentMap<String, InvocationStatistics> initializers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, InvocationStatistics> properties = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param initializerName the name of the initializer which has been called
+     * @param nanos the time spent in the initializer in nanoseconds
+     * @param failed true if the initializer failed with an exception
+     */
+    public void record(String initializerName, long nanos, boolean failed)
+    {
+        InvocationStatistics.getOrCreate(this.initializers, initializerName).record(nanos, failed);
+    }
+
+    /**
+     * @param propertyKey the key of the lazy property whose value has been computed
+     * @param nanos the time spent computing the value in nanoseconds
+     * @param failed true if the computation failed with an exception
+     */
+    public void recordLazyProperty(String propertyKey, long nanos, boolean failed)
+    {
+        InvocationStatistics.getOrCreate(this.properties, propertyKey).record(nanos, failed);
+    }
+
+    /**
+     * @param initializerName the name of the initializer
+     * @return the statistics of the passed initializer, null if it was never measured
+     */
+    InvocationStatistics get(String initializerName)
+    {
+        return this.initializers.get(initializerName);
+    }
+
+    /**
+     * @param propertyKey the key of the lazy property
+     * @return the statistics of the passed property, null if it was never measured
+     */
+    InvocationStatistics getLazyProperty(String propertyKey)
+    {
+        return this.properties.get(propertyKey);
+    }
+
+    @Override
+    public void reset()
+    {
+        this.initializers.clear();
+        this.properties.clear();
+    }
+
+    @Override
+    public TabularData getStatistics()
+    {
+        try {
+            CompositeType rowType = InvocationStatistics.createRowType("initializerStatistics",
+                "The invocations of an execution context initializer", INITIALIZER,
+                new String[] { "The class of the initializer" });
+
+            return toTabularData(rowType, INITIALIZER, "The invocations of the execution context initializers",
+                this.initializers);
+        } catch (OpenDataException e) {
+            throw new RuntimeException("Failed to gather the execution context initializer statistics", e);
+        }
+    }
+
+    @Override
+    public TabularData getLazyPropertyStatistics()
+    {
+        try {
+            CompositeType rowType = InvocationStatistics.createRowType("lazyPropertyStatistics",
+                "The computations of a lazy execution context property value", PROPERTY,
+                new String[] { "The key of the property" });
+
+            return toTabularData(rowType, PROPERTY, "The computations of the lazy execution context property values",
+                this.properties);
+        } catch (OpenDataException e) {
+            throw new RuntimeException("Failed to gather the lazy execution context property statistics", e);
+        }
+    }
+
+    private TabularData toTabularData(CompositeType rowType, String[] index, String description,
+        Map<String, InvocationStatistics> statistics) throws OpenDataException
+    {
+        TabularData data = new TabularDataSupport(new TabularType("statistics", description, rowType, index));
+
+        for (Map.Entry<String, InvocationStatistics> entry : statistics.entrySet()) {
+            data.put(entry.getValue().toCompositeData(rowType, index, entry.getKey()));
+        }
+
+        return data;
+    }
+}
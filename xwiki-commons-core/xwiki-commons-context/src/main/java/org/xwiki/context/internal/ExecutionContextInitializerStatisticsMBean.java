@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.internal;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * Expose the time spent by each {@link org.xwiki.context.ExecutionContextInitializer} to initialize execution contexts
+ * through JMX.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public interface ExecutionContextInitializerStatisticsMBean
+{
+    /**
+     * @return true if the initializer invocations and the lazy property values computations are currently measured
+     */
+    boolean isEnabled();
+
+    /**
+     * @param enabled true to start measuring the initializer invocations and the lazy property values computations,
+     *            false to stop
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return for each initializer, the number of invocations, the number of invocations which failed with an
+     *         exception, the total time and the average, median, 95th percentile, 99th percentile and maximum
+     *         invocation time
+     */
+    TabularData getStatistics();
+
+    /**
+     * @return for each lazy property (see {@link org.xwiki.context.ExecutionContext.DeclarationBuilder#lazy}), the
+     *         same measures for the computations of its value, which happen outside of the initializers
+     */
+    TabularData getLazyPropertyStatistics();
+
+    /**
+     * Forget the measures collected so far.
+     */
+    void reset();
+}
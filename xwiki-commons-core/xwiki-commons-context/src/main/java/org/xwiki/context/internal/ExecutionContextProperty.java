@@ -22,6 +22,8 @@
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 
+import javax.inject.Provider;
+
 /**
  * Contains the property value and metadata that governs the maintenance of the property.
  *
@@ -38,6 +40,9 @@ public class ExecutionContextProperty implements Cloneable
     /** This is the actual property value. */
     private Object value;
 
+    /** Compute the value the first time it's requested, null if the value is already known. */
+    private volatile Provider<?> valueProvider;
+
     /**
      * Clone the value when this property is cloned.
      */
@@ -64,6 +69,9 @@ public class ExecutionContextProperty implements Cloneable
     /** @see #isClonedFrom(ExecutionContextProperty) */
     private WeakReference<ExecutionContextProperty> clonedFrom;
 
+    /** @see #isShared() */
+    private volatile boolean shared;
+
     /**
      * @param key The execution context key.
      * @param initialValue The initial value.
@@ -86,6 +94,31 @@ public ExecutionContextProperty(String key, Object initialValue, boolean cloneVa
         checkValue(initialValue);
     }
 
+    /**
+     * @param key The execution context key.
+     * @param valueProvider Compute the value the first time it's requested.
+     * @param cloneValue Indicate that the value should be cloned when the property is cloned.
+     * @param isFinal Indicate that the value may not be updated from the initial value.
+     * @param inherited Indicate that the property should be inherited when activating a new execution context.
+     * @param nonNull Indicate that the property value may not be {@literal null}.
+     * @param type Set a class which the value must be assignable to.
+     * @since 8.2M1
+     */
+    public ExecutionContextProperty(String key, Provider<?> valueProvider, boolean cloneValue, boolean isFinal,
+        boolean inherited, boolean nonNull, Class<?> type)
+    {
+        this.key = key;
+        this.valueProvider = valueProvider;
+        this.cloneValue = cloneValue;
+        this.isFinal = isFinal;
+        this.inherited = inherited;
+        this.nonNull = nonNull;
+        this.type = type;
+        if (valueProvider == null) {
+            checkValue(null);
+        }
+    }
+
     /**
      * Check that the value is compatible with the configure constraints.
      *
@@ -114,14 +147,30 @@ public void setValue(Object value)
     {
         checkValue(value);
         this.value = value;
+        this.valueProvider = null;
     }
 
     /** @return The object value. */
     public Object getValue()
     {
+        if (this.valueProvider != null) {
+            computeValue();
+        }
+
         return this.value;
     }
 
+    private synchronized void computeValue()
+    {
+        Provider<?> provider = this.valueProvider;
+        if (provider != null) {
+            Object computedValue = provider.get();
+            checkValue(computedValue);
+            this.value = computedValue;
+            this.valueProvider = null;
+        }
+    }
+
     /** @return The key of this property. */
     public String getKey()
     {
@@ -140,6 +189,35 @@ public boolean isInherited()
         return this.inherited;
     }
 
+    /**
+     * @return wether the value should be cloned when this property is cloned or not
+     * @since 8.2M1
+     */
+    public boolean isCloneValue()
+    {
+        return this.cloneValue;
+    }
+
+    /**
+     * @return wether this property is shared between several execution contexts, in which case it must be cloned
+     *         before being modified
+     * @since 8.2M1
+     */
+    public boolean isShared()
+    {
+        return this.shared;
+    }
+
+    /**
+     * Indicate that this property is shared between several execution contexts.
+     *
+     * @since 8.2M1
+     */
+    public void markShared()
+    {
+        this.shared = true;
+    }
+
     /**
      * @return the type of the value
      */
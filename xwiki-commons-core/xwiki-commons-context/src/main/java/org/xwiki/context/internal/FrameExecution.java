@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.internal;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+
+/**
+ * Alternative to {@link DefaultExecution} which keeps the context levels of each thread as immutable linked frames
+ * instead of a synchronized stack: pushing or popping a context level only replaces the current frame of the thread.
+ * <p>
+ * Meant for executions with many short lived threads (or tasks), see
+ * {@link org.xwiki.context.concurrent.ExecutionContextExecutorService} which uses {@link #bind(ExecutionContext)} and
+ * {@link #restore(Frame)} to run a task in a context of its own without inheriting anything from the context of the
+ * thread running it.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+@Component
+@Named("frame")
+@Singleton
+public class FrameExecution implements Execution
+{
+    /**
+     * A context level and the levels below it. Never modified.
+     *
+     * @version $Id$
+     */
+    public static final class Frame
+    {
+        private final ExecutionContext context;
+
+        private final Frame parent;
+
+        Frame(ExecutionContext context, Frame parent)
+        {
+            this.context = context;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * The current frame of each thread.
+     */
+    private final ThreadLocal<Frame> frame = new ThreadLocal<>();
+
+    @Override
+    public ExecutionContext getContext()
+    {
+        Frame current = this.frame.get();
+
+        return current != null ? current.context : null;
+    }
+
+    @Override
+    public void setContext(ExecutionContext context)
+    {
+        Frame current = this.frame.get();
+
+        if (current == null) {
+            this.frame.set(new Frame(context, null));
+        } else {
+            if (context != null && current.context != null) {
+                context.inheritFrom(current.context);
+            }
+            this.frame.set(new Frame(context, current.parent));
+        }
+    }
+
+    @Override
+    public void pushContext(ExecutionContext context)
+    {
+        Frame current = this.frame.get();
+
+        if (current != null && current.context != null) {
+            context.inheritFrom(current.context);
+        }
+
+        this.frame.set(new Frame(context, current));
+    }
+
+    @Override
+    public void popContext()
+    {
+        Frame current = this.frame.get();
+
+        if (current != null && current.parent != null) {
+            this.frame.set(current.parent);
+        } else {
+            // Don't keep anything in the thread once it does not have any context anymore
+            this.frame.remove();
+        }
+    }
+
+    @Override
+    public void removeContext()
+    {
+        this.frame.remove();
+    }
+
+    /**
+     * Replace all the context levels of the current thread with the passed context, without inheriting anything from
+     * the current context.
+     *
+     * @param context the context to use in the current thread
+     * @return the previous context levels of the current thread, to pass to {@link #restore(Frame)}
+     */
+    public Frame bind(ExecutionContext context)
+    {
+        Frame previous = this.frame.get();
+
+        this.frame.set(new Frame(context, null));
+
+        return previous;
+    }
+
+    /**
+     * @param previous the context levels returned by {@link #bind(ExecutionContext)}
+     */
+    public void restore(Frame previous)
+    {
+        if (previous != null) {
+            this.frame.set(previous);
+        } else {
+            this.frame.remove();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.internal;
+
+import javax.inject.Provider;
+
+/**
+ * Record the time spent computing the value of a lazy execution context property.
+ *
+ * @param <T> the type of the value
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class MeasuredProvider<T> implements Provider<T>
+{
+    private final String key;
+
+    private final Provider<T> provider;
+
+    private final ExecutionContextInitializerStatistics statistics;
+
+    /**
+     * @param key the name of the property
+     * @param provider the provider computing the value
+     * @param statistics where to record the time spent computing the value
+     */
+    public MeasuredProvider(String key, Provider<T> provider, ExecutionContextInitializerStatistics statistics)
+    {
+        this.key = key;
+        this.provider = provider;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public T get()
+    {
+        if (!this.statistics.isEnabled()) {
+            return this.provider.get();
+        }
+
+        // The lazy values are computed outside of the initializers which declared them
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T value = this.provider.get();
+            failed = false;
+
+            return value;
+        } finally {
+            this.statistics.recordLazyProperty(this.key, System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -20,7 +20,6 @@
 package org.xwiki.context;
 
 import java.lang.reflect.Field;
-import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -39,15 +38,13 @@
      * @param key The property key
      * @return the execution context property corresponding to the given key.
      */
-    @SuppressWarnings("unchecked")
     private ExecutionContextProperty fetch(ExecutionContext context, String key) throws Exception
     {
         Field propertiesField = ExecutionContext.class.getDeclaredField("properties");
 
         propertiesField.setAccessible(true);
 
-        Map<String, ExecutionContextProperty> properties =
-            (Map<String, ExecutionContextProperty>) propertiesField.get(context);
+        ExecutionContextProperties properties = (ExecutionContextProperties) propertiesField.get(context);
 
         return properties.get(key);
     }
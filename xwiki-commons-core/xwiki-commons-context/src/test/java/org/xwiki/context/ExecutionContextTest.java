@@ -21,13 +21,21 @@
 
 import static org.hamcrest.Matchers.hasEntry;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.inject.Provider;
+
 import org.junit.Test;
 
 /**
@@ -36,6 +44,41 @@
  */
 public class ExecutionContextTest
 {
+    /**
+     * A type loaded again by another classloader in {@link ExecutionContextTest#registerKeyWithReloadedType()}.
+     */
+    public static class ReloadedType
+    {
+    }
+
+    private static Class<?> reload(final Class<?> type) throws ClassNotFoundException
+    {
+        ClassLoader classLoader = new ClassLoader(type.getClassLoader())
+        {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+            {
+                if (!name.equals(type.getName())) {
+                    return super.loadClass(name, resolve);
+                }
+
+                try (InputStream stream = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    for (int count = stream.read(buffer); count >= 0; count = stream.read(buffer)) {
+                        bytes.write(buffer, 0, count);
+                    }
+
+                    return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        };
+
+        return classLoader.loadClass(type.getName());
+    }
+
     @Test
     public void inheritance()
     {
@@ -109,4 +152,201 @@ public void removeUnexistingProperty()
         ExecutionContext context = new ExecutionContext();
         context.removeProperty("doesnotexist");
     }
+
+    @Test
+    public void typedProperty()
+    {
+        ExecutionContextKey<String> key = ExecutionContextKey.register("typed", String.class);
+        assertSame(key, ExecutionContextKey.register("typed", String.class));
+        assertSame(key, ExecutionContextKey.get("typed"));
+
+        ExecutionContext context = new ExecutionContext();
+        assertFalse(context.hasProperty(key));
+
+        context.setProperty(key, "value");
+
+        assertEquals("value", context.getProperty(key));
+        assertEquals("value", context.getProperty("typed"));
+        assertThat(context.getProperties(), hasEntry("typed", (Object) "value"));
+
+        context.setProperty("typed", "other value");
+
+        assertEquals("other value", context.getProperty(key));
+
+        context.removeProperty(key);
+
+        assertFalse(context.hasProperty("typed"));
+        assertNull(context.getProperty(key));
+    }
+
+    @Test
+    public void propertyDeclaredBeforeKeyRegistration()
+    {
+        ExecutionContext context = new ExecutionContext();
+        context.setProperty("late", 42);
+
+        ExecutionContextKey<Integer> key = ExecutionContextKey.register("late", Integer.class);
+
+        assertEquals(Integer.valueOf(42), context.getProperty(key));
+        assertEquals(42, context.getProperty("late"));
+        assertEquals(1, context.getProperties().size());
+    }
+
+    @Test
+    public void inheritedPropertyDeclaredBeforeKeyRegistration()
+    {
+        ExecutionContext parent = new ExecutionContext();
+        parent.newProperty("lateinherited").inherited().initial("parent").declare();
+
+        ExecutionContext context = new ExecutionContext();
+        context.inheritFrom(parent);
+
+        ExecutionContextKey<String> key = ExecutionContextKey.register("lateinherited", String.class);
+
+        assertEquals("parent", context.getProperty(key));
+        assertEquals("parent", context.getProperty("lateinherited"));
+        assertEquals(1, context.getProperties().size());
+    }
+
+    @Test
+    public void registerKeyWithReloadedType() throws Exception
+    {
+        ExecutionContextKey<?> key = ExecutionContextKey.register("reloaded", ReloadedType.class);
+
+        Class<?> reloadedType = reload(ReloadedType.class);
+        assertNotSame(ReloadedType.class, reloadedType);
+
+        ExecutionContextKey<?> reloadedKey = ExecutionContextKey.register("reloaded", reloadedType);
+
+        assertSame(reloadedType, reloadedKey.getType());
+        assertEquals(key.getSlot(), reloadedKey.getSlot());
+        assertSame(reloadedKey, ExecutionContextKey.get("reloaded"));
+    }
+
+    @Test
+    public void typedInheritance()
+    {
+        ExecutionContextKey<String> key = ExecutionContextKey.register("typedinherited", String.class);
+
+        ExecutionContext parent = new ExecutionContext();
+        parent.newProperty(key).inherited().initial("test").declare();
+
+        ExecutionContext context = new ExecutionContext();
+        context.inheritFrom(parent);
+
+        assertEquals("test", context.getProperty(key));
+    }
+
+    @Test
+    public void copyOnWriteInheritance()
+    {
+        ExecutionContext parent = new ExecutionContext();
+        parent.newProperty("inherited").inherited().initial("parent").declare();
+        parent.newProperty("notinherited").initial("parent").declare();
+
+        ExecutionContext child = new ExecutionContext();
+        child.inheritFrom(parent);
+        ExecutionContext sibling = new ExecutionContext();
+        sibling.inheritFrom(parent);
+        ExecutionContext grandChild = new ExecutionContext();
+        grandChild.inheritFrom(child);
+
+        assertEquals("parent", grandChild.getProperty("inherited"));
+        assertFalse(grandChild.hasProperty("notinherited"));
+
+        // Modifications of the child are not visible in the parent
+        child.setProperty("inherited", "child");
+        assertEquals("child", child.getProperty("inherited"));
+        assertEquals("parent", parent.getProperty("inherited"));
+        assertEquals("parent", sibling.getProperty("inherited"));
+        assertEquals("parent", grandChild.getProperty("inherited"));
+
+        // Modifications of the parent are not visible in the children
+        parent.setProperty("inherited", "modified");
+        assertEquals("modified", parent.getProperty("inherited"));
+        assertEquals("parent", sibling.getProperty("inherited"));
+        assertEquals("child", child.getProperty("inherited"));
+
+        // Removing an inherited property only affects the current context
+        sibling.removeProperty("inherited");
+        assertFalse(sibling.hasProperty("inherited"));
+        assertTrue(sibling.getProperties().isEmpty());
+        assertEquals("modified", parent.getProperty("inherited"));
+
+        ExecutionContext other = new ExecutionContext();
+        other.inheritFrom(parent);
+        assertEquals("modified", other.getProperty("inherited"));
+        assertEquals(1, other.getProperties().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void inheritedClonedValue()
+    {
+        Map<String, String> value = new HashMap<>();
+
+        ExecutionContext parent = new ExecutionContext();
+        parent.newProperty("map").inherited().cloneValue().initial(value).declare();
+
+        ExecutionContext child = new ExecutionContext();
+        child.inheritFrom(parent);
+
+        // The value is cloned when inheriting, not when first accessed
+        value.put("parent", "value");
+
+        Map<String, String> childValue = (Map<String, String>) child.getProperty("map");
+        assertTrue(childValue != value);
+        assertFalse(childValue.containsKey("parent"));
+        childValue.put("key", "value");
+        assertSame(childValue, child.getProperty("map"));
+        assertFalse(value.containsKey("key"));
+    }
+
+    @Test
+    public void lazyProperty()
+    {
+        final int[] calls = new int[1];
+        Provider<String> provider = new Provider<String>()
+        {
+            @Override
+            public String get()
+            {
+                ++calls[0];
+
+                return "computed";
+            }
+        };
+
+        ExecutionContext context = new ExecutionContext();
+        context.newProperty("lazy").lazy(provider).declare();
+
+        assertTrue(context.hasProperty("lazy"));
+        assertEquals(0, calls[0]);
+
+        assertEquals("computed", context.getProperty("lazy"));
+        assertEquals("computed", context.getProperty("lazy"));
+        assertEquals(1, calls[0]);
+
+        context.newProperty("replaced").lazy(provider).declare();
+        context.setProperty("replaced", "value");
+        assertEquals("value", context.getProperty("replaced"));
+        assertEquals(1, calls[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerKeyWithDifferentType()
+    {
+        ExecutionContextKey.register("conflicting", String.class);
+        ExecutionContextKey.register("conflicting", Integer.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void typedPropertyWithWrongType()
+    {
+        ExecutionContextKey<String> key = ExecutionContextKey.register("wrongtype", String.class);
+
+        ExecutionContext context = new ExecutionContext();
+        context.newProperty(key).declare();
+        context.setProperty("wrongtype", 42);
+    }
 }
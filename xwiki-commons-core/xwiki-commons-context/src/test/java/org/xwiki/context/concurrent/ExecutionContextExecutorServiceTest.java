@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.internal.FrameExecution;
+
+/**
+ * Validate {@link ExecutionContextExecutorService}.
+ *
+ * @version $Id$
+ */
+public class ExecutionContextExecutorServiceTest
+{
+    private Execution execution = new FrameExecution();
+
+    private ExecutorService threadExecutor = Executors.newSingleThreadExecutor();
+
+    private ExecutorService executor;
+
+    private Callable<ExecutionContext> getContext = new Callable<ExecutionContext>()
+    {
+        @Override
+        public ExecutionContext call()
+        {
+            return execution.getContext();
+        }
+    };
+
+    @Before
+    public void setUp()
+    {
+        this.executor = new ExecutionContextExecutorService(this.threadExecutor, this.execution);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+        this.execution.removeContext();
+    }
+
+    @Test
+    public void propagateContext() throws Exception
+    {
+        ExecutionContext context = new ExecutionContext();
+        context.newProperty("inherited").inherited().initial("value").declare();
+        context.newProperty("local").initial("value").declare();
+        this.execution.setContext(context);
+
+        Callable<ExecutionContext> task = new Callable<ExecutionContext>()
+        {
+            @Override
+            public ExecutionContext call()
+            {
+                ExecutionContext taskContext = execution.getContext();
+                taskContext.setProperty("inherited", "modified");
+
+                return taskContext;
+            }
+        };
+
+        ExecutionContext taskContext = this.executor.submit(task).get();
+
+        Assert.assertNotSame(context, taskContext);
+        Assert.assertEquals("modified", taskContext.getProperty("inherited"));
+        Assert.assertFalse(taskContext.hasProperty("local"));
+        Assert.assertEquals("value", context.getProperty("inherited"));
+
+        // The context is removed from the executor thread once the task is done
+        Assert.assertNull(this.threadExecutor.submit(this.getContext).get());
+    }
+
+    @Test
+    public void doNotInheritFromTheThreadContext() throws Exception
+    {
+        // The thread running the tasks already has a context
+        final ExecutionContext threadContext = new ExecutionContext();
+        threadContext.newProperty("thread").inherited().initial("value").declare();
+        this.threadExecutor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                execution.setContext(threadContext);
+            }
+        }).get();
+
+        ExecutionContext context = new ExecutionContext();
+        context.newProperty("inherited").inherited().initial("value").declare();
+        this.execution.setContext(context);
+
+        ExecutionContext taskContext = this.executor.submit(this.getContext).get();
+
+        Assert.assertEquals("value", taskContext.getProperty("inherited"));
+        Assert.assertFalse(taskContext.hasProperty("thread"));
+
+        // The context of the thread is restored once the task is done
+        Assert.assertSame(threadContext, this.threadExecutor.submit(this.getContext).get());
+    }
+
+    @Test
+    public void withoutContext() throws Exception
+    {
+        Assert.assertNull(this.executor.submit(this.getContext).get());
+    }
+}
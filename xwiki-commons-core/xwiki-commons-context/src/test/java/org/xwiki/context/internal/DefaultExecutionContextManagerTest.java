@@ -87,4 +87,106 @@ public List<ExecutionContextInitializer> get()
         Assert.assertSame(xwikicontext, clonedContext.getProperty("property1"));
         Assert.assertNotSame(xwikicontext, clonedContext.getProperty("property2"));
     }
+
+    @Test
+    public void initializerStatistics() throws Exception
+    {
+        DefaultExecutionContextManager contextManager = new DefaultExecutionContextManager();
+        ReflectionUtils.setFieldValue(contextManager, "execution", new DefaultExecution());
+
+        final ExecutionContextInitializer initializer = new ExecutionContextInitializer()
+        {
+            @Override
+            public void initialize(ExecutionContext context) throws ExecutionContextException
+            {
+                context.setProperty("key", "value");
+            }
+        };
+        Provider<List<ExecutionContextInitializer>> provider = new Provider<List<ExecutionContextInitializer>>()
+        {
+            @Override
+            public List<ExecutionContextInitializer> get()
+            {
+                return Arrays.asList(initializer);
+            }
+        };
+        ReflectionUtils.setFieldValue(contextManager, "initializerProvider", provider);
+
+        ExecutionContextInitializerStatistics statistics = contextManager.getStatistics();
+
+        // Nothing is measured until enabled
+        contextManager.initialize(new ExecutionContext());
+        Assert.assertNull(statistics.get(initializer.getClass().getName()));
+
+        statistics.setEnabled(true);
+        contextManager.initialize(new ExecutionContext());
+        contextManager.initialize(new ExecutionContext());
+
+        Assert.assertEquals(2, statistics.get(initializer.getClass().getName()).getInvocations());
+        Assert.assertEquals(0, statistics.get(initializer.getClass().getName()).getErrors());
+        Assert.assertEquals(1, statistics.getStatistics().size());
+
+        statistics.reset();
+        Assert.assertTrue(statistics.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void lazyPropertyStatistics() throws Exception
+    {
+        DefaultExecutionContextManager contextManager = new DefaultExecutionContextManager();
+        ReflectionUtils.setFieldValue(contextManager, "execution", new DefaultExecution());
+
+        final ExecutionContextInitializer initializer = new ExecutionContextInitializer()
+        {
+            @Override
+            public void initialize(ExecutionContext context) throws ExecutionContextException
+            {
+                context.newProperty("lazy").lazy(new Provider<String>()
+                {
+                    @Override
+                    public String get()
+                    {
+                        return "value";
+                    }
+                }).declare();
+            }
+        };
+        Provider<List<ExecutionContextInitializer>> provider = new Provider<List<ExecutionContextInitializer>>()
+        {
+            @Override
+            public List<ExecutionContextInitializer> get()
+            {
+                return Arrays.asList(initializer);
+            }
+        };
+        ReflectionUtils.setFieldValue(contextManager, "initializerProvider", provider);
+
+        ExecutionContextInitializerStatistics statistics = contextManager.getStatistics();
+        statistics.setEnabled(true);
+
+        ExecutionContext context = new ExecutionContext();
+        contextManager.initialize(context);
+
+        // The value is only computed, and measured, when requested
+        Assert.assertNull(statistics.getLazyProperty("lazy"));
+        Assert.assertEquals("value", context.getProperty("lazy"));
+        Assert.assertEquals("value", context.getProperty("lazy"));
+        Assert.assertEquals(1, statistics.getLazyProperty("lazy").getInvocations());
+        Assert.assertEquals(1, statistics.getLazyPropertyStatistics().size());
+
+        // Only the lazy properties declared by the initializers are measured
+        context.newProperty("notmeasured").lazy(new Provider<String>()
+        {
+            @Override
+            public String get()
+            {
+                return "value";
+            }
+        }).declare();
+        Assert.assertEquals("value", context.getProperty("notmeasured"));
+        Assert.assertNull(statistics.getLazyProperty("notmeasured"));
+
+        statistics.reset();
+        Assert.assertTrue(statistics.getLazyPropertyStatistics().isEmpty());
+    }
 }
@@ -31,6 +31,7 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.extension.handler.ExtensionInitializer;
 import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ListenedEvents;
 import org.xwiki.observation.event.ApplicationStartedEvent;
 import org.xwiki.observation.event.Event;
 
@@ -43,6 +44,7 @@
 @Component
 @Singleton
 @Named("ExtensionApplicationStartedListener")
+@ListenedEvents(ApplicationStartedEvent.class)
 public class ExtensionApplicationStartedListener implements EventListener
 {
     /**
@@ -28,6 +28,7 @@
 import org.xwiki.extension.job.history.ReplayJobStatus;
 import org.xwiki.job.event.status.QuestionAskedEvent;
 import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ListenedEvents;
 import org.xwiki.observation.event.Event;
 
 /**
@@ -39,6 +40,7 @@
 @Component
 @Named(AnswerReplayer.NAME)
 @Singleton
+@ListenedEvents(QuestionAskedEvent.class)
 public class AnswerReplayer extends AbstractEventListener
 {
     /**
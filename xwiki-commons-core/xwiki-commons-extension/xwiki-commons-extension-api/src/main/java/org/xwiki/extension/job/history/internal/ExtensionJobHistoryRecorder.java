@@ -48,6 +48,7 @@
 import org.xwiki.job.event.status.QuestionAnsweredEvent;
 import org.xwiki.job.internal.AbstractJobStatus;
 import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ListenedEvents;
 import org.xwiki.observation.event.Event;
 
 /**
@@ -59,6 +60,7 @@
 @Component
 @Named(ExtensionJobHistoryRecorder.NAME)
 @Singleton
+@ListenedEvents({JobStartedEvent.class, QuestionAnsweredEvent.class, JobFinishedEvent.class})
 public class ExtensionJobHistoryRecorder extends AbstractEventListener
 {
     /**
@@ -35,7 +35,6 @@
 import org.xwiki.logging.event.LogEvent;
 import org.xwiki.logging.event.LoggerListener;
 import org.xwiki.observation.ObservationManager;
-import org.xwiki.observation.WrappedThreadEventListener;
 
 /**
  * Base implementation of {@link JobStatus}.
@@ -151,14 +150,14 @@ public AbstractJobStatus(R request, JobStatus parentJobStatus, ObservationManage
     public void startListening()
     {
         // Register progress listener
-        this.observationManager.addListener(new WrappedThreadEventListener(this.progress));
+        this.observationManager.addThreadListener(this.progress);
 
         // Isolate log for the job status
         this.logListener = new LoggerListener(LoggerListener.class.getName() + '_' + hashCode(), this.logs);
         if (isIsolated()) {
             this.loggerManager.pushLogListener(this.logListener);
         } else {
-            this.observationManager.addListener(new WrappedThreadEventListener(this.logListener));
+            this.observationManager.addThreadListener(this.logListener);
         }
     }
 
@@ -170,9 +169,9 @@ public void stopListening()
         if (isIsolated()) {
             this.loggerManager.popLogListener();
         } else {
-            this.observationManager.removeListener(this.logListener.getName());
+            this.observationManager.removeThreadListener(this.logListener.getName());
         }
-        this.observationManager.removeListener(this.progress.getName());
+        this.observationManager.removeThreadListener(this.progress.getName());
 
         // Make sure the progress is closed
         this.progress.getRootStep().finish();
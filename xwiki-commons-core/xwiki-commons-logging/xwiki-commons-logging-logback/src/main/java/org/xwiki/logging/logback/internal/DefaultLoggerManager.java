@@ -34,7 +34,6 @@
 import org.xwiki.logging.LoggerManager;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.ObservationManager;
-import org.xwiki.observation.WrappedThreadEventListener;
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -77,6 +76,11 @@ public class DefaultLoggerManager implements LoggerManager, Initializable
      */
     private ForbiddenThreadsFilter forbiddenThreads = new ForbiddenThreadsFilter();
 
+    /**
+     * The appender sending the log events, null if it's not registered.
+     */
+    private LogbackEventGenerator eventGenerator;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -91,6 +95,8 @@ public void initialize() throws InitializationException
 
                 if (!(appender instanceof LogbackEventGenerator)) {
                     appender.addFilter(this.forbiddenThreads);
+                } else {
+                    this.eventGenerator = (LogbackEventGenerator) appender;
                 }
             }
         } else {
@@ -110,11 +116,11 @@ public void pushLogListener(EventListener listener)
         }
 
         if (!listenerStack.isEmpty()) {
-            this.observation.removeListener(listenerStack.peek().getName());
+            this.observation.removeThreadListener(listenerStack.peek().getName());
         }
 
         if (listener != null) {
-            this.observation.addListener(new WrappedThreadEventListener(listener));
+            this.observation.addThreadListener(listener);
         }
         if (listenerStack.isEmpty()) {
             grabLog(Thread.currentThread());
@@ -131,14 +137,14 @@ public EventListener popLogListener()
         if (listenerStack != null && !listenerStack.isEmpty()) {
             listener = listenerStack.pop();
             if (listener != null) {
-                this.observation.removeListener(listener.getName());
+                this.observation.removeThreadListener(listener.getName());
             }
             if (listenerStack.isEmpty()) {
                 ungrabLog(Thread.currentThread());
             } else {
                 EventListener topListener = listenerStack.peek();
                 if (topListener != null) {
-                    this.observation.addListener(new WrappedThreadEventListener(topListener));
+                    this.observation.addThreadListener(topListener);
                 }
             }
         } else {
@@ -156,6 +162,11 @@ public EventListener popLogListener()
     private void grabLog(Thread thread)
     {
         this.forbiddenThreads.addThread(thread);
+
+        // The captured events must be sent from the logging thread
+        if (this.eventGenerator != null) {
+            this.eventGenerator.setCapturing(thread, true);
+        }
     }
 
     /**
@@ -166,6 +177,10 @@ private void grabLog(Thread thread)
     private void ungrabLog(Thread thread)
     {
         this.forbiddenThreads.removeThread(thread);
+
+        if (this.eventGenerator != null) {
+            this.eventGenerator.setCapturing(thread, false);
+        }
     }
 
     @Override
@@ -0,0 +1,288 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Hand the logging events over to a dedicated thread which sends them to the {@link LogbackEventGenerator} by batches.
+ * <p>
+ * The events are stored in a bounded lock-free ring: the logging threads only claim a slot and publish the event in
+ * it, the dispatching thread consumes the slots in order. The ring being a single FIFO consumed by a single thread,
+ * the events of a given thread are dispatched in the order they were logged. When the ring is full the logging threads
+ * wait for some room instead of dispatching themselves, which would break that order, but only for a limited time
+ * after which (or if the dispatching thread died) they fall back on dispatching their event synchronously.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class LogEventDispatcher implements Runnable
+{
+    private static final String THREAD_NAME = "XWiki Log Event Dispatcher";
+
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The maximum time the dispatching thread sleeps when there is nothing to dispatch.
+     */
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The maximum time a logging thread waits for some room in a full ring before dispatching its event itself.
+     */
+    private static final long MAX_OFFER_WAIT = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The time a logging thread sleeps between two checks of a full ring.
+     */
+    private static final long OFFER_PARK = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final LogbackEventGenerator generator;
+
+    private final AtomicReferenceArray<ILoggingEvent> ring;
+
+    private final int mask;
+
+    /**
+     * The sequence of the next slot to claim.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The sequence of the next slot to consume, only modified by the consumer.
+     */
+    private volatile long head;
+
+    /**
+     * The sequence up to which the events have been dispatched.
+     */
+    private volatile long dispatched;
+
+    /**
+     * Only one thread at a time consumes the ring: the dispatching thread or, once it's stopped, a logging thread.
+     */
+    private final Object consumerLock = new Object();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    private volatile boolean sleeping;
+
+    /**
+     * @param generator the generator to send the events to
+     * @param capacity the minimum number of events waiting to be dispatched (rounded up to a power of 2)
+     */
+    LogEventDispatcher(LogbackEventGenerator generator, int capacity)
+    {
+        this.generator = generator;
+
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+
+        this.thread = new Thread(this, THREAD_NAME);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start dispatching the events.
+     */
+    void start()
+    {
+        this.thread.start();
+    }
+
+    /**
+     * Stop the dispatching thread after it dispatched the events already queued.
+     */
+    void stop()
+    {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+
+        if (Thread.currentThread() != this.thread) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        drain();
+    }
+
+    /**
+     * @param event the event to dispatch asynchronously
+     * @return false if the event could not be queued and must be dispatched synchronously
+     */
+    boolean offer(ILoggingEvent event)
+    {
+        // Events logged while dispatching are dispatched right away, the dispatching thread can't wait for itself
+        if (!this.running || Thread.currentThread() == this.thread || !this.thread.isAlive()) {
+            return false;
+        }
+
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+
+        this.ring.lazySet((int) sequence & this.mask, event);
+
+        if (this.sleeping) {
+            LockSupport.unpark(this.thread);
+        }
+
+        if (!this.running) {
+            // The dispatching thread might have stopped before the event was published
+            drain();
+        }
+
+        return true;
+    }
+
+    /**
+     * Claim the next slot of the ring, waiting a limited time for some room when it's full.
+     *
+     * @return the sequence of the claimed slot or -1 if the ring stayed full or the dispatching thread stopped
+     */
+    private long claim()
+    {
+        long deadline = 0;
+        long sequence;
+        do {
+            sequence = this.tail.get();
+            while (sequence - this.head >= this.ring.length()) {
+                // Full: wait a bit for the dispatching thread to make some room
+                if (deadline == 0) {
+                    deadline = System.nanoTime() + MAX_OFFER_WAIT;
+                } else if (!this.running || !this.thread.isAlive() || System.nanoTime() - deadline >= 0) {
+                    return -1;
+                }
+                LockSupport.unpark(this.thread);
+                LockSupport.parkNanos(this, OFFER_PARK);
+                sequence = this.tail.get();
+            }
+        } while (!this.tail.compareAndSet(sequence, sequence + 1));
+
+        return sequence;
+    }
+
+    /**
+     * Wait until all the events queued so far have been dispatched.
+     */
+    void flush()
+    {
+        long target = this.tail.get();
+
+        while (this.dispatched < target) {
+            if (!this.running || !this.thread.isAlive()) {
+                drain();
+            } else {
+                LockSupport.unpark(this.thread);
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return the number of events waiting to be dispatched
+     */
+    long size()
+    {
+        return this.tail.get() - this.head;
+    }
+
+    @Override
+    public void run()
+    {
+        while (this.running) {
+            int count;
+            try {
+                count = drain();
+            } catch (Throwable e) {
+                // Don't let a failing listener kill the thread, the logging threads would wait for it forever
+                this.generator.addError("Failed to dispatch logging events", e);
+                count = 1;
+            }
+
+            if (count == 0) {
+                this.sleeping = true;
+                if (this.running && this.ring.get((int) this.head & this.mask) == null) {
+                    LockSupport.parkNanos(this, MAX_PARK);
+                }
+                this.sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Dispatch the published events.
+     *
+     * @return the number of dispatched events
+     */
+    private int drain()
+    {
+        int count = 0;
+
+        synchronized (this.consumerLock) {
+            List<ILoggingEvent> batch = new ArrayList<>();
+            while (poll(batch)) {
+                count += batch.size();
+
+                try {
+                    this.generator.dispatch(batch);
+                } finally {
+                    this.dispatched = this.head;
+                    batch.clear();
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private boolean poll(List<ILoggingEvent> batch)
+    {
+        long sequence = this.head;
+        while (batch.size() < BATCH_SIZE) {
+            int index = (int) sequence & this.mask;
+            ILoggingEvent event = this.ring.get(index);
+            if (event == null) {
+                // Nothing more published yet
+                break;
+            }
+
+            batch.add(event);
+            this.ring.lazySet(index, null);
+            this.head = ++sequence;
+        }
+
+        return !batch.isEmpty();
+    }
+}
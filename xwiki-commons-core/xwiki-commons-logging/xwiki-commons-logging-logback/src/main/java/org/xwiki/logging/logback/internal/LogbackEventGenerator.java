@@ -19,8 +19,12 @@
  */
 package org.xwiki.logging.logback.internal;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -37,6 +41,7 @@
 import org.xwiki.logging.LogLevel;
 import org.xwiki.logging.LogUtils;
 import org.xwiki.logging.event.LogEvent;
+import org.xwiki.management.JMXBeanRegistration;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.ObservationManager;
 import org.xwiki.observation.event.Event;
@@ -44,7 +49,7 @@
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.ThrowableProxy;
-import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 
 /**
  * Bridge converting log to Observation Events.
@@ -57,6 +62,18 @@
  * possibility that some logs will not be seen if some Event Listeners do logging in their initialization and it happens
  * that they're initialized before this component...).
  * </p>
+ * <p>
+ * By default the events are sent from the logging thread. They can be sent asynchronously instead (see
+ * {@link LogbackEventGeneratorMBean#setAsynchronous(boolean)}): the logging thread only queues the logback event and
+ * a dedicated thread converts the queued events and sends them by batches of consecutive events of the same logger,
+ * in the order they were logged. The events logged by a thread whose logs are captured (see
+ * {@link DefaultLoggerManager#pushLogListener(EventListener)}) are still sent synchronously since the capture listener
+ * only receives the events sent from that thread.
+ * </p>
+ * <p>
+ * The appender is not synchronized (it does not extend {@code AppenderBase}): a logging thread waiting for room in
+ * the queue must not hold a lock which the dispatching thread would need to log something itself.
+ * </p>
  *
  * @version $Id$
  * @since 3.2M1
@@ -64,9 +81,13 @@
 @Component
 @Named("LogbackEventGenerator")
 @Singleton
-public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implements EventListener, Initializable,
-    Disposable
+public class LogbackEventGenerator extends UnsynchronizedAppenderBase<ILoggingEvent>
+    implements EventListener, Initializable, Disposable, LogbackEventGeneratorMBean
 {
+    private static final String MBEAN_NAME = "type=Logging,domain=LogbackEventGenerator";
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
     /**
      * The logger to log.
      */
@@ -84,6 +105,26 @@ public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implement
      */
     private LogbackUtils utils = new LogbackUtils();
 
+    /**
+     * The threads whose logs are currently captured.
+     */
+    private final Set<Thread> capturingThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    /**
+     * Send the events asynchronously, null when they are sent synchronously.
+     */
+    private volatile LogEventDispatcher dispatcher;
+
+    /**
+     * Cached to not lookup the component for each event.
+     */
+    private volatile ObservationManager observationManager;
+
+    /**
+     * The maximum number of events waiting to be sent in asynchronous mode.
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
     @Override
     public String getName()
     {
@@ -112,6 +153,69 @@ public void initialize() throws InitializationException
             this.logger.warn("Could not find any Logback root logger."
                 + " The logging module won't be able to catch logs.");
         }
+
+        // Management is optional
+        if (this.componentManager.hasComponent(JMXBeanRegistration.class)) {
+            try {
+                this.componentManager.<JMXBeanRegistration>getInstance(JMXBeanRegistration.class).registerMBean(this,
+                    MBEAN_NAME);
+            } catch (ComponentLookupException e) {
+                this.logger.debug("Failed to lookup the JMX registration component", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isAsynchronous()
+    {
+        return this.dispatcher != null;
+    }
+
+    @Override
+    public synchronized void setAsynchronous(boolean asynchronous)
+    {
+        if (asynchronous && this.dispatcher == null) {
+            LogEventDispatcher newDispatcher = new LogEventDispatcher(this, this.queueCapacity);
+            newDispatcher.start();
+            this.dispatcher = newDispatcher;
+        } else if (!asynchronous && this.dispatcher != null) {
+            LogEventDispatcher currentDispatcher = this.dispatcher;
+            this.dispatcher = null;
+            currentDispatcher.stop();
+        }
+    }
+
+    /**
+     * @param queueCapacity the maximum number of events waiting to be sent, taken into account the next time the
+     *            asynchronous mode is enabled
+     */
+    void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public long getPendingEvents()
+    {
+        LogEventDispatcher currentDispatcher = this.dispatcher;
+
+        return currentDispatcher != null ? currentDispatcher.size() : 0;
+    }
+
+    /**
+     * Indicate that the logs of the passed thread are captured (or not anymore) by a thread listener, in which case
+     * its events are always sent synchronously.
+     *
+     * @param thread the thread
+     * @param capturing true if the logs of the thread are captured
+     */
+    void setCapturing(Thread thread, boolean capturing)
+    {
+        if (capturing) {
+            this.capturingThreads.add(thread);
+        } else {
+            this.capturingThreads.remove(thread);
+        }
     }
 
     @Override
@@ -122,16 +226,82 @@ public void onEvent(Event event, Object source, Object data)
     }
 
     /**
-     * @return the ObservationManager implementation
-     * @throws ComponentLookupException failed to get ObservationManager implementation
+     * @return the ObservationManager implementation, null if it could not be found
      */
-    private ObservationManager getObservationManager() throws ComponentLookupException
+    private ObservationManager getObservationManager()
     {
-        return this.componentManager.getInstance(ObservationManager.class);
+        if (this.observationManager == null) {
+            try {
+                this.observationManager = this.componentManager.getInstance(ObservationManager.class);
+            } catch (ComponentLookupException e) {
+                this.logger.error("Can't find any implementation of [{}]", ObservationManager.class.getName(), e);
+            }
+        }
+
+        return this.observationManager;
     }
 
     @Override
     protected void append(ILoggingEvent event)
+    {
+        LogEventDispatcher currentDispatcher = this.dispatcher;
+
+        if (currentDispatcher != null) {
+            if (!this.capturingThreads.isEmpty() && this.capturingThreads.contains(Thread.currentThread())) {
+                // Make sure the events previously logged by this thread are sent first
+                currentDispatcher.flush();
+            } else {
+                // The event is read later from another thread
+                event.prepareForDeferredProcessing();
+
+                if (currentDispatcher.offer(event)) {
+                    return;
+                }
+            }
+        }
+
+        LogEvent logEvent = toLogEvent(event);
+        if (logEvent != null) {
+            ObservationManager currentObservationManager = getObservationManager();
+            if (currentObservationManager != null) {
+                currentObservationManager.notify(logEvent, event.getLoggerName(), null);
+            }
+        }
+    }
+
+    /**
+     * Send queued events, by batches of consecutive events of the same logger.
+     *
+     * @param events the events to send, in the order they were logged
+     */
+    void dispatch(List<ILoggingEvent> events)
+    {
+        ObservationManager currentObservationManager = getObservationManager();
+        if (currentObservationManager == null) {
+            return;
+        }
+
+        List<LogEvent> batch = new ArrayList<>();
+        String batchLoggerName = null;
+        for (ILoggingEvent event : events) {
+            if (!batch.isEmpty() && !Objects.equals(event.getLoggerName(), batchLoggerName)) {
+                currentObservationManager.notifyBatch(batch, batchLoggerName, null);
+                batch = new ArrayList<>();
+            }
+
+            LogEvent logEvent = toLogEvent(event);
+            if (logEvent != null) {
+                batch.add(logEvent);
+                batchLoggerName = event.getLoggerName();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            currentObservationManager.notifyBatch(batch, batchLoggerName, null);
+        }
+    }
+
+    private LogEvent toLogEvent(ILoggingEvent event)
     {
         Throwable throwable = null;
         IThrowableProxy throwableProxy = event.getThrowableProxy();
@@ -142,15 +312,12 @@ protected void append(ILoggingEvent event)
         try {
             LogLevel logLevel = this.utils.toLogLevel(event.getLevel());
 
-            LogEvent logevent =
-                LogUtils.newLogEvent(event.getMarker(), logLevel, event.getMessage(), event.getArgumentArray(),
-                    throwable, event.getTimeStamp());
-
-            getObservationManager().notify(logevent, event.getLoggerName(), null);
+            return LogUtils.newLogEvent(event.getMarker(), logLevel, event.getMessage(), event.getArgumentArray(),
+                throwable, event.getTimeStamp());
         } catch (IllegalArgumentException e) {
             this.logger.debug("Unsupported log level [{}]", event.getLevel());
-        } catch (ComponentLookupException e) {
-            this.logger.error("Can't find any implementation of [{}]", ObservationManager.class.getName(), e);
+
+            return null;
         }
     }
 
@@ -165,6 +332,9 @@ protected ch.qos.logback.classic.Logger getRootLogger()
     @Override
     public void dispose() throws ComponentLifecycleException
     {
+        // Send the queued events
+        setAsynchronous(false);
+
         stop();
 
         // Unregister appender
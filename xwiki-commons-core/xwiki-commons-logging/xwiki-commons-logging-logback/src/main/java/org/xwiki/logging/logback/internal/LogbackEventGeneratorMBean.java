@@ -0,0 +1,45 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+/**
+ * Control through JMX how {@link LogbackEventGenerator} sends the log events.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public interface LogbackEventGeneratorMBean
+{
+    /**
+     * @return true if the log events are sent from a dedicated thread, false if they are sent from the logging thread
+     */
+    boolean isAsynchronous();
+
+    /**
+     * @param asynchronous true to send the log events from a dedicated thread, false to send them from the logging
+     *            thread
+     */
+    void setAsynchronous(boolean asynchronous);
+
+    /**
+     * @return the number of log events waiting to be sent
+     */
+    long getPendingEvents();
+}
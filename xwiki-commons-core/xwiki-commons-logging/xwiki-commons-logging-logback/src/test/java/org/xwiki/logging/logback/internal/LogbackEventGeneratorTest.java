@@ -20,11 +20,17 @@
 package org.xwiki.logging.logback.internal;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.logging.LogLevel;
@@ -38,6 +44,11 @@
 import org.xwiki.test.annotation.ComponentList;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -92,6 +103,179 @@ public void verifyThatLoggingGeneratesALogEvent()
         assertEquals("error message", this.logCapture.getMessage(0));
     }
 
+    @Test
+    public void asynchronousEvents() throws Exception
+    {
+        Event event = new LogEvent(null, LogLevel.INFO, "dummy", null, null);
+
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        EventListener listener = mock(EventListener.class);
+        when(listener.getName()).thenReturn("mylistener");
+        when(listener.getEvents()).thenReturn(Arrays.asList(event));
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                messages.add(((LogEvent) invocation.getArguments()[0]).getMessage());
+                threads.add(Thread.currentThread());
+
+                return null;
+            }
+        }).when(listener).onEvent(any(Event.class), any(), any());
+
+        this.observationManager.addListener(listener);
+
+        LogbackEventGenerator generator =
+            (LogbackEventGenerator) this.componentManager.getInstance(EventListener.class, "LogbackEventGenerator");
+        generator.setAsynchronous(true);
+        assertTrue(generator.isAsynchronous());
+
+        this.logger.error("message 1");
+        this.logger.error("message 2");
+        LoggerFactory.getLogger(LogbackEventGenerator.class).error("message 3");
+
+        // Wait for the events to be sent by the dispatching thread
+        for (int i = 0; i < 100 && messages.size() < 3; ++i) {
+            Thread.sleep(10);
+        }
+        generator.setAsynchronous(false);
+
+        assertEquals(Arrays.asList("message 1", "message 2", "message 3"), messages);
+        assertNotSame(Thread.currentThread(), threads.get(0));
+        assertEquals(0, generator.getPendingEvents());
+
+        // Captured threads are notified synchronously
+        generator.setAsynchronous(true);
+        generator.setCapturing(Thread.currentThread(), true);
+
+        this.logger.error("message 4");
+
+        assertEquals("message 4", messages.get(3));
+        assertSame(Thread.currentThread(), threads.get(3));
+
+        generator.setCapturing(Thread.currentThread(), false);
+        generator.setAsynchronous(false);
+    }
+
+    @Test
+    public void listenerLoggingWhileQueueIsFull() throws Exception
+    {
+        Event event = new LogEvent(null, LogLevel.INFO, "dummy", null, null);
+
+        final CountDownLatch firstReceived = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        EventListener listener = mock(EventListener.class);
+        when(listener.getName()).thenReturn("mylistener");
+        when(listener.getEvents()).thenReturn(Arrays.asList(event));
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException
+            {
+                String message = ((LogEvent) invocation.getArguments()[0]).getMessage();
+                messages.add(message);
+
+                if (message.equals("first")) {
+                    firstReceived.countDown();
+                    release.await();
+
+                    // Log from the dispatching thread while a logging thread waits for room in the queue
+                    logger.error("nested");
+                }
+
+                return null;
+            }
+        }).when(listener).onEvent(any(Event.class), any(), any());
+
+        this.observationManager.addListener(listener);
+
+        final LogbackEventGenerator generator =
+            (LogbackEventGenerator) this.componentManager.getInstance(EventListener.class, "LogbackEventGenerator");
+        generator.setQueueCapacity(2);
+        generator.setAsynchronous(true);
+
+        this.logger.error("first");
+        assertTrue(firstReceived.await(10, TimeUnit.SECONDS));
+
+        // Fill the queue and wait for some room
+        Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                logger.error("second");
+                logger.error("third");
+                logger.error("fourth");
+            }
+        };
+        producer.start();
+        for (int i = 0; i < 1000 && generator.getPendingEvents() < 2; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, generator.getPendingEvents());
+
+        release.countDown();
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+
+        generator.setAsynchronous(false);
+
+        assertEquals(Arrays.asList("first", "nested", "second", "third", "fourth"), messages);
+    }
+
+    @Test
+    public void listenerFailingWithError() throws Exception
+    {
+        Event event = new LogEvent(null, LogLevel.INFO, "dummy", null, null);
+
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        EventListener listener = mock(EventListener.class);
+        when(listener.getName()).thenReturn("mylistener");
+        when(listener.getEvents()).thenReturn(Arrays.asList(event));
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                String message = ((LogEvent) invocation.getArguments()[0]).getMessage();
+                messages.add(message);
+
+                if (message.equals("failing")) {
+                    throw new AssertionError("failing listener");
+                }
+
+                return null;
+            }
+        }).when(listener).onEvent(any(Event.class), any(), any());
+
+        this.observationManager.addListener(listener);
+
+        LogbackEventGenerator generator =
+            (LogbackEventGenerator) this.componentManager.getInstance(EventListener.class, "LogbackEventGenerator");
+        generator.setQueueCapacity(2);
+        generator.setAsynchronous(true);
+
+        this.logger.error("failing");
+        for (int i = 0; i < 100 && messages.isEmpty(); ++i) {
+            Thread.sleep(10);
+        }
+
+        // The dispatching thread survived the error and the logging threads don't wait for it forever
+        for (int i = 0; i < 10; ++i) {
+            this.logger.error("message " + i);
+        }
+        for (int i = 0; i < 100 && messages.size() < 11; ++i) {
+            Thread.sleep(10);
+        }
+        generator.setAsynchronous(false);
+
+        assertEquals(11, messages.size());
+        assertEquals("message 9", messages.get(10));
+    }
+
     @Test
     public void initializeWhenNoLogback() throws Exception
     {
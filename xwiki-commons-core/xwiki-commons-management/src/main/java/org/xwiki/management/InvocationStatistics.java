@@ -0,0 +1,216 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.management;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+/**
+ * The invocations of a measured operation (an event listener, an execution context initializer, etc.), meant to be
+ * exposed as a row of a JMX {@link javax.management.openmbean.TabularData}.
+ * <p>
+ * The invocation times are recorded in a histogram of power of 2 nanoseconds buckets so that recording is lock-free
+ * and the percentiles are precise up to a factor of 2.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class InvocationStatistics
+{
+    private static final String[] COLUMNS = new String[] { "invocations", "errors", "totalTimeMs", "averageTimeUs",
+        "medianTimeUs", "p95TimeUs", "p99TimeUs", "maxTimeUs" };
+
+    private static final String[] DESCRIPTIONS = new String[] { "The number of invocations",
+        "The number of invocations which failed", "The total time in milliseconds",
+        "The average time in microseconds", "The median time in microseconds",
+        "The 95th percentile time in microseconds", "The 99th percentile time in microseconds",
+        "The maximum time in microseconds" };
+
+    private static final double MEDIAN = 0.5;
+
+    private static final double P95 = 0.95;
+
+    private static final double P99 = 0.99;
+
+    private final LongAdder invocations = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder totalTime = new LongAdder();
+
+    private final AtomicLong maxTime = new AtomicLong();
+
+    /**
+     * The number of invocations which took less than 2^i nanoseconds (and at least 2^(i-1)).
+     */
+    private final AtomicLongArray histogram = new AtomicLongArray(Long.SIZE + 1);
+
+    /**
+     * @param statistics the statistics indexed by measured operation
+     * @param key the measured operation
+     * @param <K> the type of the key identifying the measured operations
+     * @return the statistics of the passed operation, created if needed
+     */
+    public static <K> InvocationStatistics getOrCreate(ConcurrentMap<K, InvocationStatistics> statistics, K key)
+    {
+        InvocationStatistics keyStatistics = statistics.get(key);
+        if (keyStatistics == null) {
+            statistics.putIfAbsent(key, new InvocationStatistics());
+            keyStatistics = statistics.get(key);
+        }
+
+        return keyStatistics;
+    }
+
+    /**
+     * @param typeName the name of the row type
+     * @param description the description of the row type
+     * @param keys the names of the columns identifying the measured operation, all of type {@link String}
+     * @param keyDescriptions the descriptions of the key columns
+     * @return the type of the rows containing the passed key columns followed by the statistics of the operation
+     * @throws OpenDataException when failing to create the type
+     */
+    public static CompositeType createRowType(String typeName, String description, String[] keys,
+        String[] keyDescriptions) throws OpenDataException
+    {
+        OpenType<?>[] types = new OpenType<?>[keys.length + COLUMNS.length];
+        Arrays.fill(types, 0, keys.length, SimpleType.STRING);
+        Arrays.fill(types, keys.length, types.length, SimpleType.LONG);
+
+        return new CompositeType(typeName, description, concat(keys, COLUMNS, String[].class),
+            concat(keyDescriptions, DESCRIPTIONS, String[].class), types);
+    }
+
+    private static <T> T[] concat(T[] first, Object[] second, Class<? extends T[]> type)
+    {
+        T[] result = Arrays.copyOf(first, first.length + second.length, type);
+        System.arraycopy(second, 0, result, first.length, second.length);
+
+        return result;
+    }
+
+    /**
+     * @param nanos the time spent in the operation, in nanoseconds
+     * @param failed true if the operation failed with an exception
+     */
+    public void record(long nanos, boolean failed)
+    {
+        this.invocations.increment();
+        if (failed) {
+            this.errors.increment();
+        }
+        this.totalTime.add(nanos);
+        this.histogram.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+
+        long max = this.maxTime.get();
+        while (nanos > max && !this.maxTime.compareAndSet(max, nanos)) {
+            max = this.maxTime.get();
+        }
+    }
+
+    /**
+     * @return the number of invocations
+     */
+    public long getInvocations()
+    {
+        return this.invocations.sum();
+    }
+
+    /**
+     * @return the number of invocations which failed with an exception
+     */
+    public long getErrors()
+    {
+        return this.errors.sum();
+    }
+
+    /**
+     * @return the total time spent in the operation, in nanoseconds
+     */
+    public long getTotalTime()
+    {
+        return this.totalTime.sum();
+    }
+
+    /**
+     * @return the longest time spent in the operation, in nanoseconds
+     */
+    public long getMaxTime()
+    {
+        return this.maxTime.get();
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 1
+     * @return the maximum time in nanoseconds of the given percentage of the invocations (rounded up to the next power
+     *         of 2)
+     */
+    public long getPercentile(double percentile)
+    {
+        long count = 0;
+        for (int i = 0; i < this.histogram.length(); ++i) {
+            count += this.histogram.get(i);
+        }
+
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < this.histogram.length(); ++i) {
+            seen += this.histogram.get(i);
+            if (seen >= rank && seen > 0) {
+                return i < Long.SIZE - 1 ? (1L << i) - 1 : Long.MAX_VALUE;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * @param rowType the type created with {@link #createRowType(String, String, String[], String[])}
+     * @param keys the names of the key columns, as passed to {@link #createRowType(String, String, String[], String[])}
+     * @param keyValues the values of the key columns
+     * @return the row containing the passed keys followed by these statistics
+     * @throws OpenDataException when failing to create the row
+     */
+    public CompositeData toCompositeData(CompositeType rowType, String[] keys, String... keyValues)
+        throws OpenDataException
+    {
+        long count = getInvocations();
+        long total = getTotalTime();
+
+        Object[] values = new Object[] { count, getErrors(), TimeUnit.NANOSECONDS.toMillis(total),
+            TimeUnit.NANOSECONDS.toMicros(count > 0 ? total / count : 0),
+            TimeUnit.NANOSECONDS.toMicros(getPercentile(MEDIAN)), TimeUnit.NANOSECONDS.toMicros(getPercentile(P95)),
+            TimeUnit.NANOSECONDS.toMicros(getPercentile(P99)), TimeUnit.NANOSECONDS.toMicros(getMaxTime()) };
+
+        return new CompositeDataSupport(rowType, concat(keys, COLUMNS, String[].class),
+            concat(keyValues, values, Object[].class));
+    }
+}
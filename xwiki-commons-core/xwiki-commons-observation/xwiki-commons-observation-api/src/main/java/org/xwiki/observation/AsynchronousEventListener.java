@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+/**
+ * An {@link EventListener} receiving the events asynchronously: events are queued when they are sent and the listener
+ * is notified from another thread, so that a slow listener does not slow down the code sending the events.
+ * <p>
+ * Each listener has its own bounded queue and receives the events in the order they were sent, one at a time. Note
+ * that the events are often modified or not relevant anymore once the code which sent them moves on, and that the
+ * notification does not happen in the context (execution context, thread locals, etc.) of the sender.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public interface AsynchronousEventListener extends EventListener
+{
+    /**
+     * What to do with an event sent when the queue of the listener is full.
+     *
+     * @version $Id$
+     */
+    enum OverflowPolicy
+    {
+        /**
+         * Wait until there is room in the queue, for a limited time after which the event is forgotten (so that two
+         * listeners sending events to each other can't wait for each other forever).
+         */
+        BLOCK,
+
+        /**
+         * Forget the event.
+         */
+        DROP,
+
+        /**
+         * Forget the event if an equal event with the same source and data is already waiting in the queue, wait until
+         * there is room in the queue otherwise (like {@link #BLOCK}).
+         */
+        COALESCE
+    }
+
+    /**
+     * The default maximum number of events waiting to be sent to the listener.
+     */
+    int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * @return the maximum number of events waiting to be sent to the listener
+     */
+    default int getQueueCapacity()
+    {
+        return DEFAULT_QUEUE_CAPACITY;
+    }
+
+    /**
+     * @return what to do with an event sent when the queue of the listener is full
+     */
+    default OverflowPolicy getOverflowPolicy()
+    {
+        return OverflowPolicy.BLOCK;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+import java.util.List;
+
+import org.xwiki.observation.event.Event;
+
+/**
+ * An {@link EventListener} receiving all the matching events of a batch (see
+ * {@link ObservationManager#notifyBatch(List, Object, Object)}) in a single call instead of one call per event.
+ * <p>
+ * The events sent one at a time with {@link ObservationManager#notify(Event, Object, Object)} are still received
+ * through {@link #onEvent(Event, Object, Object)}.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public interface BatchEventListener extends EventListener
+{
+    /**
+     * The {@link ObservationManager} calls this method once the events of a batch have been sent to the other
+     * listeners, with the events of the batch matching the events for which this listener is registered.
+     *
+     * @param events the matching events of the batch, in the order they were sent
+     * @param source the source of the events
+     * @param data some additional and optional data shared by the events
+     */
+    void onEvents(List<Event> events, Object source, Object data);
+}
@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import org.xwiki.observation.event.Event;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Declare the types of the events an {@link EventListener} component can listen to, so that the component is only
+ * instantiated (along with its dependencies) the first time one of these events is sent instead of when the
+ * {@link ObservationManager} is initialized.
+ * <p>
+ * The declared types must cover all the events returned by {@link EventListener#getEvents()} (events which are not
+ * instances of one of the declared types will never be sent to the listener). Until it's instantiated the listener is
+ * registered under its component role hint, which should thus be the same as its name.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface ListenedEvents
+{
+    /**
+     * @return the types of the events the listener can listen to (the events extending or implementing them are
+     *         included)
+     */
+    Class<? extends Event>[] value();
+}
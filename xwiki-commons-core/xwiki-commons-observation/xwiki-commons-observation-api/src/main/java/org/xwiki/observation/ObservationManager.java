@@ -19,6 +19,10 @@
  */
 package org.xwiki.observation;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.observation.event.Event;
 
@@ -46,6 +50,32 @@
      */
     void removeListener(String listenerName);
 
+    /**
+     * Add a listener receiving only the events sent from the current thread. Unlike a
+     * {@link WrappedThreadEventListener} registered with {@link #addListener(EventListener)}, it's not seen by the
+     * other threads at all.
+     * <p>
+     * The listener must be removed with {@link #removeThreadListener(String)} from the same thread.
+     *
+     * @param eventListener the listener to register for the current thread
+     * @since 8.2M1
+     */
+    default void addThreadListener(EventListener eventListener)
+    {
+        addListener(new WrappedThreadEventListener(eventListener));
+    }
+
+    /**
+     * Remove a listener added with {@link #addThreadListener(EventListener)} from the current thread.
+     *
+     * @param listenerName the name of the listener to remove (must match {@link EventListener#getName()}
+     * @since 8.2M1
+     */
+    default void removeThreadListener(String listenerName)
+    {
+        removeListener(listenerName);
+    }
+
     /**
      * Adds an Event to an already registered listener.
      *
@@ -88,4 +118,57 @@
      * @see #notify(org.xwiki.observation.event.Event, Object, Object)
      */
     void notify(Event event, Object source);
+
+    /**
+     * Send several events sharing the same source and data, for example the events produced by a bulk operation.
+     * Standard listeners receive the events one at a time, in order, like with
+     * {@link #notify(Event, Object, Object)}, while {@link BatchEventListener}s receive all their matching events in a
+     * single call.
+     *
+     * @param events the events to pass to the registered listeners
+     * @param source the source of the events (or <code>null</code>)
+     * @param data the additional data related to the events (or <code>null</code>)
+     * @since 8.2M1
+     */
+    default void notifyBatch(List<? extends Event> events, Object source, Object data)
+    {
+        notifyBatch(events, source, data, false);
+    }
+
+    /**
+     * Same as {@link #notifyBatch(List, Object, Object)} with the possibility to coalesce the batch first: an event
+     * equal to an event already in the batch is not sent.
+     *
+     * @param events the events to pass to the registered listeners
+     * @param source the source of the events (or <code>null</code>)
+     * @param data the additional data related to the events (or <code>null</code>)
+     * @param coalesce true if only the first of several equal events should be sent
+     * @since 8.2M1
+     */
+    default void notifyBatch(List<? extends Event> events, Object source, Object data, boolean coalesce)
+    {
+        for (Event event : coalesce ? new ArrayList<>(new LinkedHashSet<>(events)) : events) {
+            notify(event, source, data);
+        }
+    }
+
+    /**
+     * Same as {@link #notifyBatch(List, Object, Object)} with distinct additional data for each event, for example the
+     * descriptor of each registered component. Standard listeners receive each event with its own data while
+     * {@link BatchEventListener}s receive the list of the data of their matching events. It's not an overload of
+     * {@link #notifyBatch(List, Object, Object)} so that a list shared by all the events can't be mistaken for the data
+     * of each event.
+     *
+     * @param events the events to pass to the registered listeners
+     * @param source the source of the events (or <code>null</code>)
+     * @param eventsData the additional data related to each event, in the same order as the events (or
+     *            <code>null</code>)
+     * @since 8.2M1
+     */
+    default void notifyBatchWithEventsData(List<? extends Event> events, Object source, List<?> eventsData)
+    {
+        for (int i = 0; i < events.size(); ++i) {
+            notify(events.get(i), source, eventsData != null ? eventsData.get(i) : null);
+        }
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.event;
+
+/**
+ * Special event matcher used by a listener which need to listen to all the events of a given type, including the
+ * events extending or implementing it. It makes possible to listen to abstract events or event interfaces.
+ * <p>
+ * The {@link org.xwiki.observation.ObservationManager} is expected to directly route the matching events to the
+ * listener instead of asking all the listeners registered to {@link AllEvent}.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public final class InstanceOfEvent implements Event
+{
+    private final Class<?> type;
+
+    /**
+     * @param type the type of the events to match (the events extending or implementing it are matched too)
+     */
+    public InstanceOfEvent(Class<?> type)
+    {
+        this.type = type;
+    }
+
+    /**
+     * @return the type of the events to match (the events extending or implementing it are matched too)
+     */
+    public Class<?> getType()
+    {
+        return this.type;
+    }
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return this.type.isInstance(otherEvent);
+    }
+
+    @Override
+    public boolean equals(Object object)
+    {
+        return object instanceof InstanceOfEvent && ((InstanceOfEvent) object).type == this.type;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.type.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "instanceof " + this.type.getName();
+    }
+}
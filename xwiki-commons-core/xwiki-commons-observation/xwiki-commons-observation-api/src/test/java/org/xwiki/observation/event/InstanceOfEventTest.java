@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.event;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link InstanceOfEvent}.
+ *
+ * @version $Id$
+ */
+public class InstanceOfEventTest
+{
+    @Test
+    public void matches()
+    {
+        Assert.assertTrue(new InstanceOfEvent(Event.class).matches(new ApplicationStartedEvent()));
+        Assert.assertTrue(new InstanceOfEvent(Event.class).matches(new ApplicationStoppedEvent()));
+        Assert.assertTrue(
+            new InstanceOfEvent(ApplicationStartedEvent.class).matches(new ApplicationStartedEvent()));
+        Assert.assertFalse(
+            new InstanceOfEvent(ApplicationStartedEvent.class).matches(new ApplicationStoppedEvent()));
+        Assert.assertFalse(new InstanceOfEvent(Event.class).matches(null));
+    }
+
+    @Test
+    public void equalsAndHashCode()
+    {
+        Assert.assertEquals(new InstanceOfEvent(Event.class), new InstanceOfEvent(Event.class));
+        Assert.assertEquals(new InstanceOfEvent(Event.class).hashCode(), new InstanceOfEvent(Event.class).hashCode());
+        Assert.assertNotEquals(new InstanceOfEvent(Event.class), new InstanceOfEvent(ApplicationStartedEvent.class));
+    }
+}
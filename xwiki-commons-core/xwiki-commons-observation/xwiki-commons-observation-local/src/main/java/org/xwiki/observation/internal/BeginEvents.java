@@ -0,0 +1,125 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xwiki.observation.event.BeginEvent;
+
+/**
+ * The {@link BeginEvent}s currently in progress in an execution context, indexed by event class.
+ * <p>
+ * Not thread safe: an execution context is only used by one thread at a time.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class BeginEvents
+{
+    /**
+     * The events in progress, the most recent one being the first.
+     */
+    private final Deque<BeginEvent> events = new ArrayDeque<>();
+
+    /**
+     * The events in progress for each event class, the most recent one being the first.
+     */
+    private final Map<Class<?>, Deque<BeginEvent>> eventsByClass = new HashMap<>();
+
+    /**
+     * @param event the event which just started
+     */
+    void push(BeginEvent event)
+    {
+        this.events.push(event);
+
+        Deque<BeginEvent> classEvents = this.eventsByClass.get(event.getClass());
+        if (classEvents == null) {
+            classEvents = new ArrayDeque<>();
+            this.eventsByClass.put(event.getClass(), classEvents);
+        }
+        classEvents.push(event);
+    }
+
+    /**
+     * Remove the most recent event.
+     *
+     * @return the removed event or null if there was no event in progress
+     */
+    BeginEvent pop()
+    {
+        BeginEvent event = this.events.poll();
+
+        if (event != null) {
+            Deque<BeginEvent> classEvents = this.eventsByClass.get(event.getClass());
+            classEvents.pop();
+            if (classEvents.isEmpty()) {
+                this.eventsByClass.remove(event.getClass());
+            }
+        }
+
+        return event;
+    }
+
+    /**
+     * @param event the event to match
+     * @return true if one of the events in progress is matched by the passed event
+     */
+    boolean isIn(BeginEvent event)
+    {
+        if (this.events.isEmpty()) {
+            return false;
+        }
+
+        // Most of the time the event in progress is of the same class
+        Class<?> eventClass = event.getClass();
+        if (matches(event, this.eventsByClass.get(eventClass))) {
+            return true;
+        }
+
+        // A standard filterable event can't match an event which is not an instance of its class
+        boolean sameHierarchy = EventRoute.isFilteredByName(event);
+
+        for (Map.Entry<Class<?>, Deque<BeginEvent>> entry : this.eventsByClass.entrySet()) {
+            if (entry.getKey() != eventClass && (!sameHierarchy || eventClass.isAssignableFrom(entry.getKey()))
+                && matches(event, entry.getValue())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean matches(BeginEvent event, Deque<BeginEvent> candidates)
+    {
+        if (candidates != null) {
+            for (BeginEvent candidate : candidates) {
+                if (event.matches(candidate)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
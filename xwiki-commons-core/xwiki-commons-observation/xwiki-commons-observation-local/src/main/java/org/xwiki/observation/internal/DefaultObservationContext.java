@@ -19,14 +19,13 @@
  */
 package org.xwiki.observation.internal;
 
-import java.util.Stack;
-
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextKey;
 import org.xwiki.observation.ObservationContext;
 import org.xwiki.observation.event.BeginEvent;
 
@@ -41,9 +40,10 @@
 public class DefaultObservationContext implements ObservationContext
 {
     /**
-     * The name of the property storing current events.
+     * The key of the property storing current events.
      */
-    static final String KEY_EVENTS = "observation.currentevents";
+    static final ExecutionContextKey<BeginEvents> KEY_EVENTS =
+        ExecutionContextKey.register("observation.currentevents", BeginEvents.class);
 
     /**
      * The execution.
@@ -54,13 +54,13 @@ public class DefaultObservationContext implements ObservationContext
     /**
      * @return the events stacked in the execution context
      */
-    private Stack<BeginEvent> getCurrentEvents()
+    private BeginEvents getCurrentEvents()
     {
-        Stack<BeginEvent> events = null;
+        BeginEvents events = null;
 
         ExecutionContext context = this.execution.getContext();
         if (context != null) {
-            events = (Stack<BeginEvent>) context.getProperty(KEY_EVENTS);
+            events = context.getProperty(KEY_EVENTS);
         }
 
         return events;
@@ -69,15 +69,8 @@ private Stack<BeginEvent> getCurrentEvents()
     @Override
     public boolean isIn(BeginEvent event)
     {
-        Stack<BeginEvent> events = getCurrentEvents();
+        BeginEvents events = getCurrentEvents();
 
-        if (events != null) {
-            for (BeginEvent currentEvent : events) {
-                if (event.matches(currentEvent)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return events != null && events.isIn(event);
     }
 }
@@ -20,7 +20,9 @@
 package org.xwiki.observation.internal;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,39 +33,103 @@
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.descriptor.ComponentDescriptor;
-import org.xwiki.component.event.ComponentDescriptorAddedEvent;
 import org.xwiki.component.event.ComponentDescriptorEvent;
-import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.management.JMXBeanRegistration;
+import org.xwiki.observation.AsynchronousEventListener;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.ObservationManager;
 import org.xwiki.observation.event.AllEvent;
 import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.InstanceOfEvent;
 
 /**
  * Default implementation of the {@link ObservationManager}.
  * <p>
- * This component use synchronized for concurrent protection instead of having
- * {@link java.util.concurrent.ConcurrentHashMap} everywhere because it's more efficient since most of methods access to
- * several maps and generally do enumerations.
+ * The listeners to notify for each event class are stored in immutable arrays which are replaced (under
+ * synchronization) each time listeners are added or removed, so that {@link #notify(Event, Object, Object)} only has
+ * to go through an array without any locking or allocation.
+ * <p>
+ * Listeners registered to an {@link InstanceOfEvent} are routed the events of the matching types directly: the
+ * listeners to notify for a given event class are computed the first time such an event is sent and cached until
+ * listeners change.
+ * <p>
+ * The listeners registered to filterable events are indexed on the filters of these events (see {@link EventRoute}) so
+ * that sending an event with a given name only goes through the listeners which may match that name.
+ * <p>
+ * The events sent to an {@link AsynchronousEventListener} are queued and sent from a shared pool of threads (see
+ * {@link EventListenerQueue}).
+ * <p>
+ * The listeners registered for a given thread (see {@link #addThreadListener(EventListener)}) are stored in a
+ * {@link ThreadListeners} which is only looked at when at least one thread has listeners.
+ * <p>
+ * In a batch of events (see {@link #notifyBatch(List, Object, Object, boolean)}) the listeners are looked for once
+ * per event class and the {@link BatchEventListener}s receive their matching events in a single call, once the batch
+ * has been sent to the other listeners.
+ * <p>
+ * The time spent by each listener can be measured by enabling {@link EventListenerStatistics} through JMX and the
+ * sent events can be recorded by enabling the {@link EventJournal}.
+ * <p>
+ * The listener components declaring the events they listen to (see {@link org.xwiki.observation.ListenedEvents}) are
+ * only instantiated the first time one of these events is sent (see {@link DeferredEventListener}).
  *
  * @version $Id$
  */
 @Component
 @Singleton
-public class DefaultObservationManager implements ObservationManager
+public class DefaultObservationManager implements ObservationManager, Disposable
 {
+    private static final String STATISTICS_MBEAN_NAME = "type=Observation,domain=EventListenerStatistics";
+
+    private static final String JOURNAL_MBEAN_NAME = "type=Observation,domain=EventJournal";
+
     /**
      * @see #getListenersByEvent()
      */
-    private volatile Map<Class<? extends Event>, Map<String, RegisteredListener>> listenersByEvent;
+    private volatile Map<Class<?>, RegisteredListener[]> listenersByEvent;
+
+    /**
+     * The listeners registered to {@link InstanceOfEvent} indexed by {@link InstanceOfEvent#getType()}.
+     */
+    private volatile Map<Class<?>, RegisteredListener[]> listenersByType;
+
+    /**
+     * The listeners to notify for each event class. Replaced each time listeners change.
+     */
+    private volatile Map<Class<?>, EventRoute> routes = new ConcurrentHashMap<>();
 
     /**
      * @see #getListenersByName()
      */
     private volatile Map<String, EventListener> listenersByName;
 
+    /**
+     * The listeners registered for a given thread with {@link #addThreadListener(EventListener)}.
+     */
+    private final ThreadListeners threadListeners = new ThreadListeners();
+
+    /**
+     * The queues of the registered {@link AsynchronousEventListener}s. Lazily initialized.
+     */
+    private EventListenerQueues queues;
+
+    /**
+     * Keep the listener components registered. Lazily initialized.
+     */
+    private EventListenerComponents components;
+
+    /**
+     * The time spent by the listeners to handle events.
+     */
+    private final EventListenerStatistics statistics = new EventListenerStatistics();
+
+    /**
+     * The events sent, when enabled through JMX.
+     */
+    private final EventJournal journal = new EventJournal();
+
     /**
      * Used to find all components implementing {@link EventListener} to register them automatically.
      */
@@ -76,56 +142,11 @@ public class DefaultObservationManager implements ObservationManager
     @Inject
     private Logger logger;
 
-    /**
-     * Helper class to store the list of events of a given type associated with a given listener. We need this for
-     * performance reasons and also in order to be able to add events after a listener has been registered.
-     */
-    private static class RegisteredListener
-    {
-        /**
-         * Events of a given type associated with a given listener.
-         */
-        private List<Event> events = new ArrayList<>();
-
-        /**
-         * Listener associated with the events.
-         */
-        private EventListener listener;
-
-        /**
-         * @param listener the listener associated with the events.
-         * @param event the first event to associate with the passed listener. More events are added by calling
-         *            {@link #addEvent(Event)}
-         */
-        RegisteredListener(EventListener listener, Event event)
-        {
-            addEvent(event);
-
-            this.listener = listener;
-        }
-
-        /**
-         * @param event the event to add
-         */
-        void addEvent(Event event)
-        {
-            this.events.add(event);
-        }
-
-        /**
-         * @param event the event to remove
-         */
-        void removeEvent(Event event)
-        {
-            this.events.remove(event);
-        }
-    }
-
     /**
      * @return the registered listeners indexed on Event classes so that it's fast to find all the listeners registered
      *         for a given event, so that {@link #notify} calls execute fast and in a fixed amount a time.
      */
-    private Map<Class<? extends Event>, Map<String, RegisteredListener>> getListenersByEvent()
+    private Map<Class<?>, RegisteredListener[]> getListenersByEvent()
     {
         if (this.listenersByEvent == null) {
             initializeListeners();
@@ -138,7 +159,7 @@ private Map<Class<? extends Event>, Map<String, RegisteredListener>> getListener
      * @return the registered listeners index by listener name. It makes it fast to perform operations on already
      *         registered listeners.
      */
-    private Map<String, EventListener> getListenersByName()
+    Map<String, EventListener> getListenersByName()
     {
         if (this.listenersByName == null) {
             initializeListeners();
@@ -149,31 +170,59 @@ private Map<String, EventListener> getListenersByName()
 
     /**
      * Lazily initialized to allow @Inject {@link ObservationManager} in a listener.
-     *
-     * @todo Should we allow event inheritance ?
      */
     private synchronized void initializeListeners()
     {
         if (this.listenersByName == null) {
             this.listenersByEvent = new ConcurrentHashMap<>();
+            this.listenersByType = new ConcurrentHashMap<>();
             this.listenersByName = new ConcurrentHashMap<>();
+            this.queues = new EventListenerQueues(this.logger);
+            this.components = new EventListenerComponents(this, this.logger);
+
+            JMXBeanRegistration jmxRegistration = getJMXBeanRegistration();
+            if (jmxRegistration != null) {
+                jmxRegistration.registerMBean(this.statistics, STATISTICS_MBEAN_NAME);
+                jmxRegistration.registerMBean(this.journal, JOURNAL_MBEAN_NAME);
+            }
 
             // Can be null in unit tests
             if (this.componentManager != null) {
-                try {
-                    for (EventListener listener : this.componentManager
-                        .<EventListener>getInstanceList(EventListener.class)) {
-                        addListener(listener);
-                    }
-                } catch (ComponentLookupException e) {
-                    this.logger.error("Failed to lookup listeners", e);
-                }
+                this.components.addListeners(this.componentManager);
             }
         }
     }
 
+    /**
+     * Replace a deferred listener by the listener component it stands for.
+     *
+     * @param deferredListener the deferred listener
+     * @param listener the instantiated listener component
+     * @return the listener to send the events received by the deferred listener to, null if the deferred listener is
+     *         not registered anymore
+     */
+    synchronized EventListener replaceListener(EventListener deferredListener, EventListener listener)
+    {
+        if (getListenersByName().get(deferredListener.getName()) != deferredListener) {
+            return null;
+        }
+
+        // Register the new listener first when possible so that no event is missed in the meantime
+        if (listener.getName().equals(deferredListener.getName())) {
+            removeListener(deferredListener.getName());
+            addListener(listener);
+        } else {
+            addListener(listener);
+            removeListener(deferredListener.getName());
+        }
+
+        EventListener queue = this.queues.get(listener.getName());
+
+        return queue != null ? queue : listener;
+    }
+
     @Override
-    public void addListener(EventListener eventListener)
+    public synchronized void addListener(EventListener eventListener)
     {
         Map<String, EventListener> listeners = getListenersByName();
 
@@ -193,86 +242,296 @@ public void addListener(EventListener eventListener)
         // Register the listener by name. If already registered, override it.
         listeners.put(eventListener.getName(), eventListener);
 
+        // Events sent to asynchronous listeners go through a queue
+        EventListener target = eventListener;
+        if (eventListener instanceof AsynchronousEventListener) {
+            target = this.queues.add((AsynchronousEventListener) eventListener, getJMXBeanRegistration());
+        }
+
         // For each event defined for this listener, add it to the Event Map.
         for (Event event : eventListener.getEvents()) {
-            // Check if this is a new Event type not already registered
-            Map<String, RegisteredListener> eventListeners = this.listenersByEvent.get(event.getClass());
-            if (eventListeners == null) {
-                // No listener registered for this event yet. Create a map to store listeners for this event.
-                eventListeners = new ConcurrentHashMap<String, RegisteredListener>();
-                this.listenersByEvent.put(event.getClass(), eventListeners);
-                // There is no RegisteredListener yet, create one
-                eventListeners.put(eventListener.getName(), new RegisteredListener(eventListener, event));
-            } else {
-                // Add an event to existing RegisteredListener object
-                RegisteredListener registeredListener = eventListeners.get(eventListener.getName());
-                if (registeredListener == null) {
-                    eventListeners.put(eventListener.getName(), new RegisteredListener(eventListener, event));
-                } else {
-                    registeredListener.addEvent(event);
-                }
+            addEvent(eventListener.getName(), target, event);
+        }
+    }
+
+    /**
+     * @return the component used to expose the state of the listener queues, null if there is none
+     */
+    private JMXBeanRegistration getJMXBeanRegistration()
+    {
+        // Management is optional
+        if (this.componentManager != null && this.componentManager.hasComponent(JMXBeanRegistration.class)) {
+            try {
+                return this.componentManager.getInstance(JMXBeanRegistration.class);
+            } catch (ComponentLookupException e) {
+                this.logger.debug("Failed to lookup the JMX registration component", e);
             }
         }
+
+        return null;
     }
 
     @Override
-    public void removeListener(String listenerName)
+    public synchronized void removeListener(String listenerName)
     {
         getListenersByName().remove(listenerName);
-        for (Map.Entry<Class<? extends Event>, Map<String, RegisteredListener>> entry : this.listenersByEvent
-            .entrySet()) {
-            entry.getValue().remove(listenerName);
-            if (entry.getValue().isEmpty()) {
-                this.listenersByEvent.remove(entry.getKey());
-            }
+        if (this.queues.contains(listenerName)) {
+            this.queues.remove(listenerName, getJMXBeanRegistration());
+        }
+        this.statistics.remove(listenerName);
+        for (Class<?> eventClass : this.listenersByEvent.keySet()) {
+            setRegisteredListener(this.listenersByEvent, eventClass, listenerName, null);
+        }
+        for (Class<?> type : this.listenersByType.keySet()) {
+            setRegisteredListener(this.listenersByType, type, listenerName, null);
         }
     }
 
+    @Override
+    public void addThreadListener(EventListener eventListener)
+    {
+        // Make sure the standard listeners are initialized too (some of them are expected to produce the events)
+        getListenersByName();
+
+        this.threadListeners.add(new RegisteredListener(eventListener.getName(), eventListener,
+            eventListener.getEvents().toArray(new Event[0])));
+    }
+
+    @Override
+    public void removeThreadListener(String listenerName)
+    {
+        this.threadListeners.remove(listenerName);
+    }
+
     @Override
     public void addEvent(String listenerName, Event event)
     {
-        Map<String, RegisteredListener> listeners = getListenersByEvent().get(event.getClass());
-        if (listeners == null) {
-            listeners = new ConcurrentHashMap<>();
-            this.listenersByEvent.put(event.getClass(), listeners);
+        // Make sure a deferred listener is instantiated before taking the lock
+        EventListener listener = getListener(listenerName);
+
+        synchronized (this) {
+            EventListener queue = this.queues.get(listenerName);
+            addEvent(listenerName, queue != null ? queue : listener, event);
         }
-        RegisteredListener listener = listeners.get(listenerName);
-        if (listener != null) {
-            listener.addEvent(event);
+    }
+
+    private void addEvent(String listenerName, EventListener listener, Event event)
+    {
+        Map<Class<?>, RegisteredListener[]> listeners = getListeners(event);
+        Class<?> key = getKey(event);
+
+        RegisteredListener registeredListener = getRegisteredListener(listeners, key, listenerName);
+        if (registeredListener != null) {
+            // Add an event to existing RegisteredListener object
+            setRegisteredListener(listeners, key, listenerName, registeredListener.addEvent(event));
         } else {
-            listeners.put(listenerName, new RegisteredListener(this.getListener(listenerName), event));
+            setRegisteredListener(listeners, key, listenerName, new RegisteredListener(listenerName, listener, event));
         }
     }
 
     @Override
-    public void removeEvent(String listenerName, Event event)
+    public synchronized void removeEvent(String listenerName, Event event)
     {
-        Map<String, RegisteredListener> listeners = getListenersByEvent().get(event.getClass());
-        RegisteredListener listener = listeners.get(listenerName);
-        if (listener != null) {
-            listener.removeEvent(event);
+        Map<Class<?>, RegisteredListener[]> listeners = getListeners(event);
+        Class<?> key = getKey(event);
+
+        RegisteredListener registeredListener = getRegisteredListener(listeners, key, listenerName);
+        if (registeredListener != null) {
+            RegisteredListener newRegisteredListener = registeredListener.removeEvent(event);
+            setRegisteredListener(listeners, key, listenerName,
+                newRegisteredListener.getEvents().length > 0 ? newRegisteredListener : null);
+        }
+    }
+
+    /**
+     * @return the map where the listeners registered to the passed event are stored
+     */
+    private Map<Class<?>, RegisteredListener[]> getListeners(Event event)
+    {
+        getListenersByEvent();
+
+        return event instanceof InstanceOfEvent ? this.listenersByType : this.listenersByEvent;
+    }
+
+    /**
+     * @return the key under which the listeners registered to the passed event are stored
+     */
+    private Class<?> getKey(Event event)
+    {
+        return event instanceof InstanceOfEvent ? ((InstanceOfEvent) event).getType() : event.getClass();
+    }
+
+    private RegisteredListener getRegisteredListener(Map<Class<?>, RegisteredListener[]> listenersByKey,
+        Class<?> key, String listenerName)
+    {
+        RegisteredListener[] listeners = listenersByKey.get(key);
+        int index = RegisteredListener.indexOf(listeners, listenerName);
+
+        return index >= 0 ? listeners[index] : null;
+    }
+
+    /**
+     * Replace the array of listeners registered for the passed key by a copy containing the passed registered
+     * listener. Must be called while holding the lock on this observation manager.
+     *
+     * @param listenersByKey the map where to store the listeners
+     * @param key the class of the events or the type of {@link InstanceOfEvent}
+     * @param listenerName the name of the listener
+     * @param registeredListener the new registered listener or null to remove the listener
+     */
+    private void setRegisteredListener(Map<Class<?>, RegisteredListener[]> listenersByKey, Class<?> key,
+        String listenerName, RegisteredListener registeredListener)
+    {
+        RegisteredListener[] listeners = listenersByKey.get(key);
+        RegisteredListener[] newListeners = RegisteredListener.set(listeners, listenerName, registeredListener);
+        if (newListeners == listeners) {
+            // Nothing to remove
+            return;
+        }
+
+        if (newListeners.length > 0) {
+            listenersByKey.put(key, newListeners);
+        } else {
+            listenersByKey.remove(key);
+        }
+
+        // Forget the cached routes (only once the listeners are updated)
+        this.routes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param eventClass the class of the event to send
+     * @return the listeners to notify for the passed event class (not including the listeners registered to
+     *         {@link AllEvent})
+     */
+    private EventRoute getRoute(Class<?> eventClass)
+    {
+        // Get the cached routes before the listeners to not cache a route computed from outdated listeners (it's a
+        // ConcurrentHashMap so putIfAbsent is atomic)
+        Map<Class<?>, EventRoute> currentRoutes = this.routes;
+
+        EventRoute route = currentRoutes.get(eventClass);
+        if (route == null) {
+            route = computeRoute(eventClass);
+            currentRoutes.putIfAbsent(eventClass, route);
+        }
+
+        return route;
+    }
+
+    private EventRoute computeRoute(Class<?> eventClass)
+    {
+        Map<Class<?>, RegisteredListener[]> eventListeners = getListenersByEvent();
+        if (this.listenersByType.isEmpty()) {
+            RegisteredListener[] listeners = eventListeners.get(eventClass);
+
+            return listeners != null ? new EventRoute(listeners) : EventRoute.EMPTY;
+        }
+
+        // Merge the events of a listener registered several times so that it's notified only once
+        Map<String, RegisteredListener> route = new LinkedHashMap<>();
+
+        addRoute(route, eventListeners.get(eventClass));
+        for (Map.Entry<Class<?>, RegisteredListener[]> entry : this.listenersByType.entrySet()) {
+            if (entry.getKey().isAssignableFrom(eventClass)) {
+                addRoute(route, entry.getValue());
+            }
+        }
+
+        return new EventRoute(route.values().toArray(new RegisteredListener[route.size()]));
+    }
+
+    private void addRoute(Map<String, RegisteredListener> route, RegisteredListener[] listeners)
+    {
+        if (listeners != null) {
+            for (RegisteredListener listener : listeners) {
+                RegisteredListener existingListener = route.get(listener.getName());
+                route.put(listener.getName(),
+                    existingListener != null ? existingListener.addEvents(listener.getEvents()) : listener);
+            }
         }
     }
 
     @Override
     public EventListener getListener(String listenerName)
     {
-        return getListenersByName().get(listenerName);
+        EventListener listener = getListenersByName().get(listenerName);
+
+        return DeferredEventListener.getListener(listener);
     }
 
     @Override
     public void notify(Event event, Object source, Object data)
     {
-        // Find all listeners for this event
-        Map<String, RegisteredListener> regListeners = getListenersByEvent().get(event.getClass());
-        if (regListeners != null) {
-            notify(regListeners.values(), event, source, data);
+        notify(getRoute(event.getClass()), event, source, data, null);
+    }
+
+    @Override
+    public void notifyBatch(List<? extends Event> events, Object source, Object data, boolean coalesce)
+    {
+        List<? extends Event> batchEvents = coalesce ? new ArrayList<>(new LinkedHashSet<>(events)) : events;
+
+        notifyBatch(batchEvents, source, data, new EventBatch(false), null);
+    }
+
+    @Override
+    public void notifyBatchWithEventsData(List<? extends Event> events, Object source, List<?> eventsData)
+    {
+        notifyBatch(events, source, null, new EventBatch(eventsData != null), eventsData);
+    }
+
+    /**
+     * @param events the events to pass to the registered listeners
+     * @param source the source of the events (or <code>null</code>)
+     * @param data the additional data shared by the events (or <code>null</code>)
+     * @param batch where to collect the events for the {@link BatchEventListener}s
+     * @param eventsData the additional data related to each event, null if the events share the same data
+     */
+    private void notifyBatch(List<? extends Event> events, Object source, Object data, EventBatch batch,
+        List<?> eventsData)
+    {
+        // Only look for the listeners once per event class
+        Map<Class<?>, EventRoute> batchRoutes = new HashMap<>();
+        for (int i = 0; i < events.size(); ++i) {
+            Event event = events.get(i);
+            EventRoute route = batchRoutes.get(event.getClass());
+            if (route == null) {
+                route = getRoute(event.getClass());
+                batchRoutes.put(event.getClass(), route);
+            }
+
+            notify(route, event, source, eventsData != null ? eventsData.get(i) : data, batch);
         }
 
+        batch.send(source, data, this.statistics, this.logger);
+    }
+
+    /**
+     * @param route the listeners registered for the class of the event
+     * @param event the event to pass to the registered listeners
+     * @param source the source of the event (or <code>null</code>)
+     * @param data the additional data related to the event (or <code>null</code>)
+     * @param batch where to collect the event for the {@link BatchEventListener}s, null if the event is not part of a
+     *            batch
+     */
+    private void notify(EventRoute route, Event event, Object source, Object data, EventBatch batch)
+    {
+        boolean journaled = this.journal.isEnabled();
+        long start = journaled ? System.nanoTime() : 0;
+
+        // Find all listeners for this event
+        notify(route.getCandidates(event), event, source, data, batch);
+
         // Find listener listening all events
-        Map<String, RegisteredListener> allEventRegListeners = this.listenersByEvent.get(AllEvent.class);
+        RegisteredListener[] allEventRegListeners = this.listenersByEvent.get(AllEvent.class);
         if (allEventRegListeners != null) {
-            notify(allEventRegListeners.values(), event, source, data);
+            notify(allEventRegListeners, event, source, data, batch);
+        }
+
+        // Find the listeners of the current thread
+        RegisteredListener[] currentThreadListeners = this.threadListeners.get();
+        if (currentThreadListeners != null) {
+            notify(currentThreadListeners, event, source, data, batch);
         }
 
         // We want this Observation Manager to be able to handle new Event Listener components being added or removed
@@ -280,9 +539,13 @@ public void notify(Event event, Object source, Object data)
         // circular dependencies issues and in order to be more performant we simply handle ComponentDescriptorEvents
         // here to add/remove Event Listeners.
         if (event instanceof ComponentDescriptorEvent) {
-            onComponentEvent((ComponentDescriptorEvent) event, (ComponentManager) source,
+            this.components.onComponentEvent((ComponentDescriptorEvent) event, (ComponentManager) source,
                 (ComponentDescriptor<EventListener>) data);
         }
+
+        if (journaled) {
+            this.journal.record(event, source, start, System.nanoTime() - start);
+        }
     }
 
     /**
@@ -293,19 +556,17 @@ public void notify(Event event, Object source, Object data)
      * @param event the event to pass to the registered listeners
      * @param source the source of the event (or <code>null</code>)
      * @param data the additional data related to the event (or <code>null</code>)
+     * @param batch where to collect the event for the {@link BatchEventListener}s, null if the event is not part of a
+     *            batch
      */
-    private void notify(Collection<RegisteredListener> listeners, Event event, Object source, Object data)
+    private void notify(RegisteredListener[] listeners, Event event, Object source, Object data, EventBatch batch)
     {
         for (RegisteredListener listener : listeners) {
             // Verify that one of the events matches and send the first matching event
-            for (Event listenerEvent : listener.events) {
+            for (Event listenerEvent : listener.getEvents()) {
                 if (listenerEvent.matches(event)) {
-                    try {
-                        listener.listener.onEvent(event, source, data);
-                    } catch (Exception e) {
-                        // protect from bad listeners
-                        this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] { event,
-                            listener.listener, e });
+                    if (batch == null || !batch.add(listener, event, data)) {
+                        onEvent(listener, event, source, data);
                     }
 
                     // Only send the first matching event since the listener should only be called once per event.
@@ -315,81 +576,39 @@ private void notify(Collection<RegisteredListener> listeners, Event event, Objec
         }
     }
 
-    @Override
-    public void notify(Event event, Object source)
-    {
-        notify(event, source, null);
-    }
-
-    /**
-     * A Component has been modified (added or removed) and we update our cache of Event Listeners if that Component is
-     * an Event Listener.
-     *
-     * @param componentEvent the event about the Component being added or removed
-     * @param componentManager the {@link ComponentManager} where the descriptor is registered
-     * @param descriptor the descriptor of the modified component
-     */
-    private void onComponentEvent(ComponentDescriptorEvent componentEvent, ComponentManager componentManager,
-        ComponentDescriptor<EventListener> descriptor)
+    private void onEvent(RegisteredListener listener, Event event, Object source, Object data)
     {
-        if (componentEvent.getRoleType() == EventListener.class) {
-            if (componentEvent instanceof ComponentDescriptorAddedEvent) {
-                onEventListenerComponentAdded((ComponentDescriptorAddedEvent) componentEvent, componentManager,
-                    descriptor);
-            } else if (componentEvent instanceof ComponentDescriptorRemovedEvent) {
-                onEventListenerComponentRemoved((ComponentDescriptorRemovedEvent) componentEvent, componentManager,
-                    descriptor);
-            } else {
-                this.logger.warn("Ignoring unknown Component event [{}]", componentEvent.getClass().getName());
-            }
-        }
-    }
+        boolean measured = this.statistics.isEnabled();
+        long start = measured ? System.nanoTime() : 0;
+        boolean failed = false;
 
-    /**
-     * An Event Listener Component has been dynamically registered in the system, add it to our cache.
-     *
-     * @param event event object containing the new component descriptor
-     * @param componentManager the {@link ComponentManager} where the descriptor is registered
-     * @param descriptor the component descriptor removed from component manager
-     */
-    private void onEventListenerComponentAdded(ComponentDescriptorAddedEvent event, ComponentManager componentManager,
-        ComponentDescriptor<EventListener> descriptor)
-    {
         try {
-            EventListener eventListener = componentManager.getInstance(EventListener.class, event.getRoleHint());
+            listener.getListener().onEvent(event, source, data);
+        } catch (Exception e) {
+            failed = true;
 
-            if (getListener(eventListener.getName()) != eventListener) {
-                addListener(eventListener);
-            } else {
-                this.logger.warn("An Event Listener named [{}] already exists, ignoring the [{}] component",
-                    eventListener.getName(), descriptor.getImplementation().getName());
-            }
-        } catch (ComponentLookupException e) {
-            this.logger.error("Failed to lookup the Event Listener [{}] corresponding to the Component registration "
-                + "event for [{}]. Ignoring the event", new Object[] { event.getRoleHint(),
-                    descriptor.getImplementation().getName(), e });
+            // protect from bad listeners
+            this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] { event,
+                listener.getListener(), e });
+        }
+
+        if (measured) {
+            this.statistics.record(listener.getName(), event.getClass(), System.nanoTime() - start, failed);
         }
     }
 
-    /**
-     * An Event Listener Component has been dynamically unregistered in the system, remove it from our cache.
-     *
-     * @param event the event object containing the removed component descriptor
-     * @param componentManager the {@link ComponentManager} where the descriptor is registered
-     * @param descriptor the component descriptor removed from the component manager
-     */
-    private void onEventListenerComponentRemoved(ComponentDescriptorRemovedEvent event,
-        ComponentManager componentManager, ComponentDescriptor<?> descriptor)
+    @Override
+    public void notify(Event event, Object source)
     {
-        EventListener removedEventListener = null;
-        for (EventListener eventListener : getListenersByName().values()) {
-            if (eventListener.getClass() == descriptor.getImplementation()) {
-                removedEventListener = eventListener;
-            }
-        }
+        notify(event, source, null);
+    }
 
-        if (removedEventListener != null) {
-            removeListener(removedEventListener.getName());
+    @Override
+    public synchronized void dispose()
+    {
+        if (this.queues != null) {
+            // Don't wait for the events still queued
+            this.queues.dispose();
         }
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ListenedEvents;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.InstanceOfEvent;
+
+/**
+ * Stand for an {@link EventListener} component annotated with {@link ListenedEvents} until one of the declared events
+ * is sent. The component is then instantiated, replaces this listener in the {@link DefaultObservationManager} and
+ * receives the event.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class DeferredEventListener implements EventListener
+{
+    private final ComponentDescriptor<EventListener> descriptor;
+
+    private final ComponentManager componentManager;
+
+    private final DefaultObservationManager observationManager;
+
+    private final Logger logger;
+
+    private final List<Event> events;
+
+    private volatile EventListener listener;
+
+    /**
+     * Where to send the events received before the replacement was effective.
+     */
+    private volatile EventListener target;
+
+    private boolean failed;
+
+    private DeferredEventListener(ComponentDescriptor<EventListener> descriptor, ComponentManager componentManager,
+        DefaultObservationManager observationManager, Logger logger, List<Event> events)
+    {
+        this.descriptor = descriptor;
+        this.componentManager = componentManager;
+        this.observationManager = observationManager;
+        this.logger = logger;
+        this.events = events;
+    }
+
+    /**
+     * @param descriptor the descriptor of the listener component
+     * @param componentManager the component manager where the descriptor is registered
+     * @param observationManager the observation manager where the listener is registered
+     * @param logger the logger to use to report instantiation failures
+     * @return the deferred listener or null if the component does not declare the events it listens to
+     */
+    static DeferredEventListener create(ComponentDescriptor<EventListener> descriptor,
+        ComponentManager componentManager, DefaultObservationManager observationManager, Logger logger)
+    {
+        ListenedEvents listenedEvents = descriptor.getImplementation().getAnnotation(ListenedEvents.class);
+        if (listenedEvents == null) {
+            return null;
+        }
+
+        List<Event> events = new ArrayList<>(listenedEvents.value().length);
+        for (Class<? extends Event> eventType : listenedEvents.value()) {
+            events.add(new InstanceOfEvent(eventType));
+        }
+
+        return new DeferredEventListener(descriptor, componentManager, observationManager, logger, events);
+    }
+
+    /**
+     * @return the descriptor of the listener component
+     */
+    ComponentDescriptor<EventListener> getDescriptor()
+    {
+        return this.descriptor;
+    }
+
+    /**
+     * @param listener a registered listener
+     * @return the listener component the passed listener stands for if it's a deferred listener (instantiating it if
+     *         needed), the passed listener otherwise
+     */
+    static EventListener getListener(EventListener listener)
+    {
+        return listener instanceof DeferredEventListener ? ((DeferredEventListener) listener).getListener() : listener;
+    }
+
+    /**
+     * Instantiate the listener component and replace this deferred listener with it, if not already done.
+     *
+     * @return the listener component or null if it could not be instantiated
+     */
+    EventListener getListener()
+    {
+        EventListener instance = this.listener;
+
+        if (instance == null) {
+            synchronized (this) {
+                if (this.listener == null && !this.failed) {
+                    instantiate();
+                }
+
+                instance = this.listener;
+            }
+        }
+
+        return instance;
+    }
+
+    private void instantiate()
+    {
+        try {
+            EventListener instance =
+                this.componentManager.getInstance(EventListener.class, this.descriptor.getRoleHint());
+
+            this.target = this.observationManager.replaceListener(this, instance);
+            this.listener = instance;
+        } catch (ComponentLookupException e) {
+            this.failed = true;
+
+            this.logger.error("Failed to lookup listener [{}]", this.descriptor.getRoleHint(), e);
+
+            // Don't try again for each event
+            this.observationManager.removeListener(getName());
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.descriptor.getRoleHint();
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return this.events;
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        EventListener instance = getListener();
+
+        if (instance != null && this.target != null) {
+            // The declared types are broader than the events of the listener
+            for (Event listenerEvent : instance.getEvents()) {
+                if (listenerEvent.matches(event)) {
+                    this.target.onEvent(event, source, data);
+
+                    break;
+                }
+            }
+        }
+    }
+}
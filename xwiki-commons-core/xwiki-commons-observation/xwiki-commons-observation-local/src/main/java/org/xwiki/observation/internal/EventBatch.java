@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.xwiki.observation.BatchEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Collect the events of a batch to send to each {@link BatchEventListener}.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class EventBatch
+{
+    private final Map<BatchEventListener, List<Event>> events = new LinkedHashMap<>();
+
+    /**
+     * The data of the events collected for each listener, null when the events of the batch share the same data.
+     */
+    private final Map<BatchEventListener, List<Object>> eventsData;
+
+    /**
+     * @param eventData true if each event of the batch has its own data, false if the events share the same data
+     */
+    EventBatch(boolean eventData)
+    {
+        this.eventsData = eventData ? new LinkedHashMap<BatchEventListener, List<Object>>() : null;
+    }
+
+    /**
+     * @param listener the listener matching the event
+     * @param event the event of the batch
+     * @param data the additional data related to the event
+     * @return true if the event has been added to the batch of the listener, false if the listener does not support
+     *         batches and should receive the event right away
+     */
+    boolean add(RegisteredListener listener, Event event, Object data)
+    {
+        if (listener.getListener() instanceof BatchEventListener) {
+            BatchEventListener batchListener = (BatchEventListener) listener.getListener();
+
+            List<Event> listenerEvents = this.events.get(batchListener);
+            if (listenerEvents == null) {
+                listenerEvents = new ArrayList<>();
+                this.events.put(batchListener, listenerEvents);
+            }
+            listenerEvents.add(event);
+
+            if (this.eventsData != null) {
+                List<Object> listenerData = this.eventsData.get(batchListener);
+                if (listenerData == null) {
+                    listenerData = new ArrayList<>();
+                    this.eventsData.put(batchListener, listenerData);
+                }
+                listenerData.add(data);
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Send the collected events to each listener, in the order the listeners first matched an event.
+     *
+     * @param source the source of the events
+     * @param data the additional data shared by the events, ignored when each event has its own data (the listeners
+     *            then receive the list of the data of their events)
+     * @param statistics where to record the time spent by the listeners
+     * @param logger the logger to use to log the listener failures
+     */
+    void send(Object source, Object data, EventListenerStatistics statistics, Logger logger)
+    {
+        for (Map.Entry<BatchEventListener, List<Event>> entry : this.events.entrySet()) {
+            Object listenerData = this.eventsData != null ? this.eventsData.get(entry.getKey()) : data;
+
+            send(entry.getKey(), entry.getValue(), source, listenerData, statistics, logger);
+        }
+    }
+
+    private void send(BatchEventListener listener, List<Event> listenerEvents, Object source, Object data,
+        EventListenerStatistics statistics, Logger logger)
+    {
+        boolean measured = statistics.isEnabled();
+        long start = measured ? System.nanoTime() : 0;
+        boolean failed = false;
+
+        try {
+            listener.onEvents(listenerEvents, source, data);
+        } catch (Exception e) {
+            failed = true;
+
+            // protect from bad listeners
+            logger.error("Failed to send a batch of [{}] events to listener [{}]", new Object[] {
+                listenerEvents.size(), listener, e });
+        }
+
+        if (measured) {
+            // Batches are accounted to the class of their first event
+            statistics.record(listener.getName(), listenerEvents.get(0).getClass(), System.nanoTime() - start,
+                failed);
+        }
+    }
+}
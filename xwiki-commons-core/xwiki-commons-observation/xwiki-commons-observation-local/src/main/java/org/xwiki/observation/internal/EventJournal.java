@@ -0,0 +1,378 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.FilterableEvent;
+
+/**
+ * Record the events sent through the {@link DefaultObservationManager}, their source type and the time spent notifying
+ * the listeners, so that real traffic can be analyzed offline and replayed (see {@link EventJournalReplayer}).
+ * <p>
+ * The events are recorded in a bounded ring of fixed size records allocated outside of the heap, the oldest events
+ * being overwritten. The event and source classes on one side and the filter names on the other are stored once in two
+ * bounded dictionaries, so that many distinct filters can't prevent new types from being recorded. Recording is
+ * lock-free so an event recorded while the journal is saved might be incomplete.
+ * <p>
+ * An event is recorded once its listeners have been notified, so the events sent by the listeners are recorded before
+ * it: {@link #read(InputStream)} orders the events by the time they were sent.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class EventJournal implements EventJournalMBean
+{
+    /**
+     * The default maximum number of events kept in the journal.
+     */
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    /**
+     * The maximum number of distinct names kept in each dictionary of the journal.
+     */
+    static final int MAX_NAMES = 10000;
+
+    private static final int MAGIC = 0x58454A4C;
+
+    private static final int VERSION = 2;
+
+    /**
+     * The identifier of a missing name.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The identifier of a name which could not be added to the dictionary.
+     */
+    private static final int OVERFLOW = -2;
+
+    private static final int DURATION_OFFSET = Long.BYTES;
+
+    private static final int EVENT_OFFSET = DURATION_OFFSET + Long.BYTES;
+
+    private static final int FILTER_OFFSET = EVENT_OFFSET + Integer.BYTES;
+
+    private static final int SOURCE_OFFSET = FILTER_OFFSET + Integer.BYTES;
+
+    private static final int THREAD_OFFSET = SOURCE_OFFSET + Integer.BYTES;
+
+    private static final int RECORD_SIZE = THREAD_OFFSET + Integer.BYTES;
+
+    /**
+     * A bounded list of names, each name being identified by its index.
+     *
+     * @version $Id$
+     */
+    private static final class Dictionary
+    {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        int getId(String name)
+        {
+            if (name == null) {
+                return NONE;
+            }
+
+            Integer id = this.ids.get(name);
+
+            return id != null ? id : addName(name);
+        }
+
+        private synchronized int addName(String name)
+        {
+            Integer id = this.ids.get(name);
+            if (id == null) {
+                if (this.names.size() >= MAX_NAMES) {
+                    return OVERFLOW;
+                }
+
+                id = this.names.size();
+                this.names.add(name);
+                this.ids.put(name, id);
+            }
+
+            return id;
+        }
+
+        synchronized void write(DataOutputStream out) throws IOException
+        {
+            out.writeInt(this.names.size());
+            for (String name : this.names) {
+                out.writeUTF(name);
+            }
+        }
+
+        static String[] read(DataInputStream in) throws IOException
+        {
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; ++i) {
+                names[i] = in.readUTF();
+            }
+
+            return names;
+        }
+    }
+
+    /**
+     * The recorded events and the names they refer to.
+     *
+     * @version $Id$
+     */
+    private static final class Ring
+    {
+        private final ByteBuffer buffer;
+
+        private final int capacity;
+
+        private final AtomicLong sequence = new AtomicLong();
+
+        private final long origin = System.nanoTime();
+
+        /**
+         * The event and source classes.
+         */
+        private final Dictionary types = new Dictionary();
+
+        private final Dictionary filters = new Dictionary();
+
+        Ring(int capacity)
+        {
+            this.capacity = capacity;
+            this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        }
+
+        void add(long start, long duration, String event, String filter, String source, int thread)
+        {
+            int position = (int) (this.sequence.getAndIncrement() % this.capacity) * RECORD_SIZE;
+
+            // Absolute operations don't touch the shared position of the buffer
+            this.buffer.putLong(position, start - this.origin);
+            this.buffer.putLong(position + DURATION_OFFSET, duration);
+            this.buffer.putInt(position + EVENT_OFFSET, this.types.getId(event));
+            this.buffer.putInt(position + FILTER_OFFSET, this.filters.getId(filter));
+            this.buffer.putInt(position + SOURCE_OFFSET, this.types.getId(source));
+            this.buffer.putInt(position + THREAD_OFFSET, thread);
+        }
+
+        int size()
+        {
+            return (int) Math.min(this.sequence.get(), this.capacity);
+        }
+
+        int write(DataOutputStream out) throws IOException
+        {
+            this.types.write(out);
+            this.filters.write(out);
+
+            long end = this.sequence.get();
+            int size = (int) Math.min(end, this.capacity);
+            out.writeInt(size);
+            for (long i = end - size; i < end; ++i) {
+                int position = (int) (i % this.capacity) * RECORD_SIZE;
+                out.writeLong(this.buffer.getLong(position));
+                out.writeLong(this.buffer.getLong(position + DURATION_OFFSET));
+                out.writeInt(this.buffer.getInt(position + EVENT_OFFSET));
+                out.writeInt(this.buffer.getInt(position + FILTER_OFFSET));
+                out.writeInt(this.buffer.getInt(position + SOURCE_OFFSET));
+                out.writeInt(this.buffer.getInt(position + THREAD_OFFSET));
+            }
+
+            return size;
+        }
+    }
+
+    private volatile boolean enabled;
+
+    private volatile int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * Lazily allocated the first time the journal is enabled.
+     */
+    private volatile Ring ring;
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    @Override
+    public synchronized void setEnabled(boolean enabled)
+    {
+        if (enabled && this.ring == null) {
+            this.ring = new Ring(this.capacity);
+        }
+
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    @Override
+    public synchronized void setCapacity(int capacity)
+    {
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE / RECORD_SIZE) {
+            throw new IllegalArgumentException("Invalid journal capacity: " + capacity);
+        }
+
+        this.capacity = capacity;
+
+        clear();
+    }
+
+    @Override
+    public int getSize()
+    {
+        Ring currentRing = this.ring;
+
+        return currentRing != null ? currentRing.size() : 0;
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        this.ring = this.enabled ? new Ring(this.capacity) : null;
+    }
+
+    /**
+     * @param event the sent event
+     * @param source the source of the event
+     * @param start the time when the event was sent, as returned by {@link System#nanoTime()}
+     * @param duration the time spent notifying the listeners, in nanoseconds
+     */
+    void record(Event event, Object source, long start, long duration)
+    {
+        Ring currentRing = this.ring;
+
+        if (currentRing != null) {
+            String filter = null;
+            if (event instanceof FilterableEvent && ((FilterableEvent) event).getEventFilter() != null) {
+                filter = ((FilterableEvent) event).getEventFilter().getFilter();
+            }
+
+            currentRing.add(start, duration, event.getClass().getName(), filter,
+                source != null ? source.getClass().getName() : null, (int) Thread.currentThread().getId());
+        }
+    }
+
+    @Override
+    public int save(String path) throws IOException
+    {
+        try (OutputStream stream = new FileOutputStream(path)) {
+            return write(stream);
+        }
+    }
+
+    /**
+     * @param stream the stream where to write the events currently in the journal
+     * @return the number of written events
+     * @throws IOException when failing to write the journal
+     */
+    public int write(OutputStream stream) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        Ring currentRing = this.ring;
+        int size;
+        if (currentRing != null) {
+            size = currentRing.write(out);
+        } else {
+            // No type, no filter and no event
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            size = 0;
+        }
+
+        out.flush();
+
+        return size;
+    }
+
+    /**
+     * @param stream a journal written by {@link #write(OutputStream)}
+     * @return the events of the journal, ordered by the time they were sent
+     * @throws IOException when failing to read the journal
+     */
+    public static List<EventJournalEntry> read(InputStream stream) throws IOException
+    {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unsupported event journal format");
+        }
+
+        String[] types = Dictionary.read(in);
+        String[] filters = Dictionary.read(in);
+
+        int size = in.readInt();
+        List<EventJournalEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            long time = in.readLong();
+            long duration = in.readLong();
+            String event = getName(types, in.readInt());
+            String filter = getName(filters, in.readInt());
+            String source = getName(types, in.readInt());
+            entries.add(new EventJournalEntry(time, duration, event, filter, source, in.readInt()));
+        }
+
+        // Events are recorded when their listeners return, after the events sent by these listeners
+        Collections.sort(entries, new Comparator<EventJournalEntry>()
+        {
+            @Override
+            public int compare(EventJournalEntry entry1, EventJournalEntry entry2)
+            {
+                return Long.compare(entry1.getTime(), entry2.getTime());
+            }
+        });
+
+        return entries;
+    }
+
+    private static String getName(String[] names, int id)
+    {
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+}
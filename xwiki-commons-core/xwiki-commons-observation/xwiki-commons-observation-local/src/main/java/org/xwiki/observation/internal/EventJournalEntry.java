@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+/**
+ * An event recorded in an {@link EventJournal}.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public final class EventJournalEntry
+{
+    private final long time;
+
+    private final long duration;
+
+    private final String eventType;
+
+    private final String filter;
+
+    private final String sourceType;
+
+    private final int thread;
+
+    /**
+     * @param time the time when the event was sent, in nanoseconds since the journal was started
+     * @param duration the time spent notifying the listeners, in nanoseconds
+     * @param eventType the class name of the event
+     * @param filter the filter name of the event, null if it's not a filterable event
+     * @param sourceType the class name of the source of the event, null if there was no source
+     * @param thread the identifier of the thread which sent the event
+     */
+    public EventJournalEntry(long time, long duration, String eventType, String filter, String sourceType, int thread)
+    {
+        this.time = time;
+        this.duration = duration;
+        this.eventType = eventType;
+        this.filter = filter;
+        this.sourceType = sourceType;
+        this.thread = thread;
+    }
+
+    /**
+     * @return the time when the event was sent, in nanoseconds since the journal was started
+     */
+    public long getTime()
+    {
+        return this.time;
+    }
+
+    /**
+     * @return the time spent notifying the listeners, in nanoseconds
+     */
+    public long getDuration()
+    {
+        return this.duration;
+    }
+
+    /**
+     * @return the class name of the event, null if it could not be recorded
+     */
+    public String getEventType()
+    {
+        return this.eventType;
+    }
+
+    /**
+     * @return the filter name of the event, null if it's not a filterable event or if it could not be recorded
+     */
+    public String getFilter()
+    {
+        return this.filter;
+    }
+
+    /**
+     * @return the class name of the source of the event, null if there was no source or if it could not be recorded
+     */
+    public String getSourceType()
+    {
+        return this.sourceType;
+    }
+
+    /**
+     * @return the identifier of the thread which sent the event
+     */
+    public int getThread()
+    {
+        return this.thread;
+    }
+}
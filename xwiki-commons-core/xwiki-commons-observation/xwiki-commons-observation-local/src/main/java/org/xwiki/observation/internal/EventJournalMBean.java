@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.io.IOException;
+
+/**
+ * Control the {@link EventJournal} through JMX.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public interface EventJournalMBean
+{
+    /**
+     * @return true if the sent events are currently recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * @param enabled true to start recording the sent events, false to stop
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return the maximum number of events kept in the journal, the oldest events being overwritten
+     */
+    int getCapacity();
+
+    /**
+     * Change the maximum number of events kept in the journal. The events recorded so far are forgotten.
+     *
+     * @param capacity the maximum number of events kept in the journal
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * @return the number of events currently in the journal
+     */
+    int getSize();
+
+    /**
+     * Forget the events recorded so far.
+     */
+    void clear();
+
+    /**
+     * Save the events currently in the journal so that they can be replayed with {@link EventJournalReplayer}.
+     *
+     * @param path the path of the file where to save the journal
+     * @return the number of saved events
+     * @throws IOException when failing to write the file
+     */
+    int save(String path) throws IOException;
+}
@@ -0,0 +1,111 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Send the events recorded in an {@link EventJournal} to an {@link ObservationManager}, for example to profile
+ * listeners against real traffic.
+ * <p>
+ * The events are recreated with their public constructor taking the filter name (for filterable events) or their
+ * public default constructor. The events which can't be recreated are skipped. Since only the type of the sources is
+ * recorded, the events are sent without source and data.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class EventJournalReplayer
+{
+    private final ObservationManager observationManager;
+
+    private final ClassLoader classLoader;
+
+    /**
+     * @param observationManager the observation manager where to send the events
+     * @param classLoader the class loader to use to load the event classes
+     */
+    public EventJournalReplayer(ObservationManager observationManager, ClassLoader classLoader)
+    {
+        this.observationManager = observationManager;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @param stream a journal written by {@link EventJournal#write(java.io.OutputStream)}
+     * @param realTime true to wait between the events as long as when they were recorded, false to send them as fast
+     *            as possible
+     * @return the number of events sent
+     * @throws IOException when failing to read the journal
+     * @throws InterruptedException when interrupted while waiting between two events
+     */
+    public int replay(InputStream stream, boolean realTime) throws IOException, InterruptedException
+    {
+        List<EventJournalEntry> entries = EventJournal.read(stream);
+
+        int sent = 0;
+        long start = System.nanoTime();
+        long origin = entries.isEmpty() ? 0 : entries.get(0).getTime();
+        for (EventJournalEntry entry : entries) {
+            Event event = createEvent(entry);
+
+            if (event != null) {
+                if (realTime) {
+                    TimeUnit.NANOSECONDS.sleep(entry.getTime() - origin - (System.nanoTime() - start));
+                }
+
+                this.observationManager.notify(event, null, null);
+
+                ++sent;
+            }
+        }
+
+        return sent;
+    }
+
+    /**
+     * @param entry a recorded event
+     * @return a new event corresponding to the recorded event, null if it can't be recreated
+     */
+    public Event createEvent(EventJournalEntry entry)
+    {
+        if (entry.getEventType() != null) {
+            try {
+                Class<?> eventClass = Class.forName(entry.getEventType(), false, this.classLoader);
+
+                if (Event.class.isAssignableFrom(eventClass)) {
+                    return (Event) (entry.getFilter() != null
+                        ? eventClass.getConstructor(String.class).newInstance(entry.getFilter())
+                        : eventClass.getConstructor().newInstance());
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Skip the event
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.lang.reflect.Type;
+
+import org.slf4j.Logger;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.observation.EventListener;
+
+/**
+ * Register the {@link EventListener} components in a {@link DefaultObservationManager} and keep them in sync with the
+ * component registrations.
+ * <p>
+ * The components declaring the events they listen to (see {@link org.xwiki.observation.ListenedEvents}) are
+ * registered as {@link DeferredEventListener}s so that they are only instantiated when needed.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class EventListenerComponents
+{
+    private final DefaultObservationManager observationManager;
+
+    private final Logger logger;
+
+    /**
+     * @param observationManager the observation manager where to register the listeners
+     * @param logger the logger to log
+     */
+    EventListenerComponents(DefaultObservationManager observationManager, Logger logger)
+    {
+        this.observationManager = observationManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Register all the listener components.
+     *
+     * @param componentManager the component manager where to find the listener components
+     */
+    void addListeners(ComponentManager componentManager)
+    {
+        for (ComponentDescriptor<EventListener> descriptor : componentManager
+            .<EventListener>getComponentDescriptorList((Type) EventListener.class)) {
+            addListener(descriptor, componentManager);
+        }
+    }
+
+    /**
+     * Register the listener component corresponding to the passed descriptor, without instantiating it if it
+     * declares the events it listens to.
+     *
+     * @param descriptor the descriptor of the listener component
+     * @param componentManager the component manager where the descriptor is registered
+     */
+    private void addListener(ComponentDescriptor<EventListener> descriptor, ComponentManager componentManager)
+    {
+        EventListener listener =
+            DeferredEventListener.create(descriptor, componentManager, this.observationManager, this.logger);
+
+        if (listener == null) {
+            try {
+                listener = componentManager.getInstance(EventListener.class, descriptor.getRoleHint());
+            } catch (ComponentLookupException e) {
+                this.logger.error("Failed to lookup listener [{}]", descriptor.getRoleHint(), e);
+
+                return;
+            }
+        }
+
+        this.observationManager.addListener(listener);
+    }
+
+    /**
+     * A Component has been modified (added or removed) and we update our cache of Event Listeners if that Component is
+     * an Event Listener.
+     *
+     * @param componentEvent the event about the Component being added or removed
+     * @param componentManager the {@link ComponentManager} where the descriptor is registered
+     * @param descriptor the descriptor of the modified component
+     */
+    void onComponentEvent(ComponentDescriptorEvent componentEvent, ComponentManager componentManager,
+        ComponentDescriptor<EventListener> descriptor)
+    {
+        if (componentEvent.getRoleType() == EventListener.class) {
+            if (componentEvent instanceof ComponentDescriptorAddedEvent) {
+                onEventListenerComponentAdded((ComponentDescriptorAddedEvent) componentEvent, componentManager,
+                    descriptor);
+            } else if (componentEvent instanceof ComponentDescriptorRemovedEvent) {
+                onEventListenerComponentRemoved(descriptor);
+            } else {
+                this.logger.warn("Ignoring unknown Component event [{}]", componentEvent.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * An Event Listener Component has been dynamically registered in the system, add it to our cache.
+     *
+     * @param event event object containing the new component descriptor
+     * @param componentManager the {@link ComponentManager} where the descriptor is registered
+     * @param descriptor the component descriptor removed from component manager
+     */
+    private void onEventListenerComponentAdded(ComponentDescriptorAddedEvent event, ComponentManager componentManager,
+        ComponentDescriptor<EventListener> descriptor)
+    {
+        DeferredEventListener deferredListener =
+            DeferredEventListener.create(descriptor, componentManager, this.observationManager, this.logger);
+        if (deferredListener != null) {
+            // The listener might have been registered already while initializing the listeners
+            EventListener existingListener =
+                this.observationManager.getListenersByName().get(deferredListener.getName());
+            if (existingListener == null || getImplementation(existingListener) != descriptor.getImplementation()) {
+                this.observationManager.addListener(deferredListener);
+            }
+
+            return;
+        }
+
+        try {
+            EventListener eventListener = componentManager.getInstance(EventListener.class, event.getRoleHint());
+
+            if (this.observationManager.getListener(eventListener.getName()) != eventListener) {
+                this.observationManager.addListener(eventListener);
+            } else {
+                this.logger.warn("An Event Listener named [{}] already exists, ignoring the [{}] component",
+                    eventListener.getName(), descriptor.getImplementation().getName());
+            }
+        } catch (ComponentLookupException e) {
+            this.logger.error("Failed to lookup the Event Listener [{}] corresponding to the Component registration "
+                + "event for [{}]. Ignoring the event", new Object[] { event.getRoleHint(),
+                    descriptor.getImplementation().getName(), e });
+        }
+    }
+
+    /**
+     * An Event Listener Component has been dynamically unregistered in the system, remove it from our cache.
+     *
+     * @param descriptor the component descriptor removed from the component manager
+     */
+    private void onEventListenerComponentRemoved(ComponentDescriptor<?> descriptor)
+    {
+        EventListener removedEventListener = null;
+        for (EventListener eventListener : this.observationManager.getListenersByName().values()) {
+            if (getImplementation(eventListener) == descriptor.getImplementation()) {
+                removedEventListener = eventListener;
+            }
+        }
+
+        if (removedEventListener != null) {
+            this.observationManager.removeListener(removedEventListener.getName());
+        }
+    }
+
+    /**
+     * @param eventListener a registered listener
+     * @return the class of the listener component, without instantiating it
+     */
+    private Class<?> getImplementation(EventListener eventListener)
+    {
+        return eventListener instanceof DeferredEventListener
+            ? ((DeferredEventListener) eventListener).getDescriptor().getImplementation() : eventListener.getClass();
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.observation.AsynchronousEventListener;
+import org.xwiki.observation.AsynchronousEventListener.OverflowPolicy;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Queue the events sent to an {@link AsynchronousEventListener} and send them to the listener from a thread of the
+ * passed executor, one at a time and in the order they were received.
+ * <p>
+ * When the queue is full and the listener asks to block, the sender waits for some room only for a limited time (see
+ * {@link #DEFAULT_BLOCK_TIMEOUT}) after which the event is dropped: otherwise two listeners sending events to each other
+ * would wait for each other forever once both queues are full.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class EventListenerQueue implements EventListener, EventListenerQueueMBean, Runnable
+{
+    /**
+     * An event waiting to be sent.
+     *
+     * @version $Id$
+     */
+    private static final class QueuedEvent
+    {
+        private final Event event;
+
+        private final Object source;
+
+        private final Object data;
+
+        private final long time = System.nanoTime();
+
+        QueuedEvent(Event event, Object source, Object data)
+        {
+            this.event = event;
+            this.source = source;
+            this.data = data;
+        }
+
+        boolean isSame(QueuedEvent other)
+        {
+            return Objects.equals(this.event, other.event) && Objects.equals(this.source, other.source)
+                && Objects.equals(this.data, other.data);
+        }
+    }
+
+    /**
+     * The default maximum time in milliseconds to wait for some room in a full queue.
+     */
+    public static final long DEFAULT_BLOCK_TIMEOUT = 10000;
+
+    private final AsynchronousEventListener listener;
+
+    private final BlockingQueue<QueuedEvent> queue;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Executor executor;
+
+    private final Logger logger;
+
+    /**
+     * True when the queue is being (or is about to be) consumed by a thread of the executor.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * The thread currently consuming the queue.
+     */
+    private volatile Thread consumer;
+
+    private volatile long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+
+    /**
+     * True once the queue does not accept events anymore.
+     */
+    private volatile boolean disposed;
+
+    private final AtomicLong processedEvents = new AtomicLong();
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private final AtomicLong coalescedEvents = new AtomicLong();
+
+    /**
+     * @param listener the listener to send the events to
+     * @param executor the executor to use to send the events
+     * @param logger the logger to use to log errors
+     */
+    public EventListenerQueue(AsynchronousEventListener listener, Executor executor, Logger logger)
+    {
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, listener.getQueueCapacity()));
+        this.overflowPolicy =
+            listener.getOverflowPolicy() != null ? listener.getOverflowPolicy() : OverflowPolicy.BLOCK;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    /**
+     * @return the listener to send the events to
+     */
+    public AsynchronousEventListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * @return a new executor suited to send events to asynchronous listeners
+     */
+    public static ExecutorService newExecutor()
+    {
+        BasicThreadFactory threadFactory = new BasicThreadFactory.Builder()
+            .namingPattern("XWiki asynchronous event listener %d").daemon(true).build();
+
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * @param blockTimeout the maximum time in milliseconds to wait for some room in a full queue
+     */
+    void setBlockTimeout(long blockTimeout)
+    {
+        this.blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Stop accepting events and forget the events still queued.
+     */
+    public void dispose()
+    {
+        this.disposed = true;
+
+        this.droppedEvents.addAndGet(this.queue.size());
+        this.queue.clear();
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.listener.getName();
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return this.listener.getEvents();
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (this.disposed) {
+            this.droppedEvents.incrementAndGet();
+
+            return;
+        }
+
+        QueuedEvent queuedEvent = new QueuedEvent(event, source, data);
+
+        if (this.queue.offer(queuedEvent) || overflow(queuedEvent)) {
+            schedule();
+        }
+    }
+
+    /**
+     * @return true if the event has been queued
+     */
+    private boolean overflow(QueuedEvent queuedEvent)
+    {
+        if (this.consumer == Thread.currentThread()) {
+            // Waiting for the queue to be consumed from the thread consuming it would never end
+            this.logger.warn("The queue of listener [{}] is full, ignoring event [{}] sent by the listener itself",
+                getName(), queuedEvent.event);
+            this.droppedEvents.incrementAndGet();
+
+            return false;
+        }
+
+        if (this.overflowPolicy == OverflowPolicy.DROP) {
+            this.droppedEvents.incrementAndGet();
+
+            return false;
+        }
+
+        if (this.overflowPolicy == OverflowPolicy.COALESCE && isQueued(queuedEvent)) {
+            this.coalescedEvents.incrementAndGet();
+
+            return false;
+        }
+
+        boolean queued;
+        try {
+            queued = this.queue.offer(queuedEvent, this.blockTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            queued = false;
+        }
+
+        if (queued && this.disposed && this.queue.remove(queuedEvent)) {
+            // The room was made by disposing the queue
+            queued = false;
+        }
+
+        if (!queued) {
+            this.logger.warn("The queue of listener [{}] stayed full for more than [{}] ms, ignoring event [{}]",
+                getName(), this.blockTimeout, queuedEvent.event);
+            this.droppedEvents.incrementAndGet();
+        }
+
+        return queued;
+    }
+
+    private boolean isQueued(QueuedEvent queuedEvent)
+    {
+        for (QueuedEvent waitingEvent : this.queue) {
+            if (waitingEvent.isSame(queuedEvent)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void schedule()
+    {
+        if (!this.disposed && this.scheduled.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                this.scheduled.set(false);
+
+                this.logger.warn("Failed to send events to listener [{}]: {}", getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Send the waiting events to the listener.
+     */
+    @Override
+    public void run()
+    {
+        this.consumer = Thread.currentThread();
+
+        try {
+            for (QueuedEvent queuedEvent = this.queue.poll(); queuedEvent != null; queuedEvent = this.queue.poll()) {
+                send(queuedEvent);
+            }
+        } finally {
+            this.consumer = null;
+            this.scheduled.set(false);
+        }
+
+        // An event might have been queued after the last poll but before the queue was marked as not scheduled
+        if (!this.queue.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void send(QueuedEvent queuedEvent)
+    {
+        try {
+            this.listener.onEvent(queuedEvent.event, queuedEvent.source, queuedEvent.data);
+        } catch (Exception e) {
+            // protect from bad listeners
+            this.logger.error("Failed to send event [{}] to listener [{}]", queuedEvent.event, this.listener, e);
+        }
+
+        this.processedEvents.incrementAndGet();
+    }
+
+    @Override
+    public int getSize()
+    {
+        return this.queue.size();
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return this.queue.size() + this.queue.remainingCapacity();
+    }
+
+    @Override
+    public long getLag()
+    {
+        QueuedEvent oldestEvent = this.queue.peek();
+
+        return oldestEvent != null ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldestEvent.time) : 0;
+    }
+
+    @Override
+    public long getProcessedEvents()
+    {
+        return this.processedEvents.get();
+    }
+
+    @Override
+    public long getDroppedEvents()
+    {
+        return this.droppedEvents.get();
+    }
+
+    @Override
+    public long getCoalescedEvents()
+    {
+        return this.coalescedEvents.get();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+/**
+ * Expose the state of the queue of an {@link org.xwiki.observation.AsynchronousEventListener} through JMX.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public interface EventListenerQueueMBean
+{
+    /**
+     * @return the number of events waiting to be sent to the listener
+     */
+    int getSize();
+
+    /**
+     * @return the maximum number of events waiting to be sent to the listener
+     */
+    int getCapacity();
+
+    /**
+     * @return the time in milliseconds since the oldest event waiting to be sent to the listener has been queued, 0 if
+     *         no event is waiting
+     */
+    long getLag();
+
+    /**
+     * @return the number of events sent to the listener
+     */
+    long getProcessedEvents();
+
+    /**
+     * @return the number of events which were not sent to the listener because its queue was full
+     */
+    long getDroppedEvents();
+
+    /**
+     * @return the number of events which were not sent to the listener because an equal event was already waiting
+     */
+    long getCoalescedEvents();
+}
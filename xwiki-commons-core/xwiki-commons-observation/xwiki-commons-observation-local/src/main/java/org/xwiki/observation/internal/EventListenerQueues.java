@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.xwiki.management.JMXBeanRegistration;
+import org.xwiki.observation.AsynchronousEventListener;
+
+/**
+ * The queues of the registered {@link AsynchronousEventListener}s, sharing the same pool of threads.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class EventListenerQueues
+{
+    private final Logger logger;
+
+    /**
+     * The queues indexed by listener name.
+     */
+    private final Map<String, EventListenerQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * The threads used to send events to {@link AsynchronousEventListener}s. Lazily initialized.
+     */
+    private ExecutorService executor;
+
+    /**
+     * @param logger the logger to use to log errors
+     */
+    EventListenerQueues(Logger logger)
+    {
+        this.logger = logger;
+    }
+
+    /**
+     * @param eventListener the listener to create a queue for
+     * @param jmxRegistration used to expose the state of the queue, null if there is none
+     * @return the new queue
+     */
+    synchronized EventListenerQueue add(AsynchronousEventListener eventListener, JMXBeanRegistration jmxRegistration)
+    {
+        if (this.executor == null) {
+            this.executor = EventListenerQueue.newExecutor();
+        }
+
+        EventListenerQueue queue = new EventListenerQueue(eventListener, this.executor, this.logger);
+        this.queues.put(eventListener.getName(), queue);
+
+        if (jmxRegistration != null) {
+            jmxRegistration.registerMBean(queue, getMBeanName(eventListener.getName()));
+        }
+
+        return queue;
+    }
+
+    /**
+     * @param listenerName the name of the listener
+     * @return the queue of the listener, null if it's not an {@link AsynchronousEventListener}
+     */
+    EventListenerQueue get(String listenerName)
+    {
+        return this.queues.get(listenerName);
+    }
+
+    /**
+     * @param listenerName the name of the listener whose queue should be forgotten (the events already queued are
+     *            still sent)
+     * @param jmxRegistration used to expose the state of the queue, null if there is none
+     * @return true if the listener had a queue
+     */
+    boolean remove(String listenerName, JMXBeanRegistration jmxRegistration)
+    {
+        if (this.queues.remove(listenerName) != null) {
+            if (jmxRegistration != null) {
+                jmxRegistration.unregisterMBean(getMBeanName(listenerName));
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param listenerName the name of the listener
+     * @return true if the listener has a queue
+     */
+    boolean contains(String listenerName)
+    {
+        return this.queues.containsKey(listenerName);
+    }
+
+    private String getMBeanName(String listenerName)
+    {
+        return "type=Observation,domain=AsynchronousEventListeners,name=" + ObjectName.quote(listenerName);
+    }
+
+    /**
+     * Stop the threads sending the events, without waiting for the events still queued. The events sent afterwards are
+     * dropped.
+     */
+    synchronized void dispose()
+    {
+        // Reject the new events and make room for the senders waiting for some
+        for (EventListenerQueue queue : this.queues.values()) {
+            queue.dispose();
+        }
+
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+}
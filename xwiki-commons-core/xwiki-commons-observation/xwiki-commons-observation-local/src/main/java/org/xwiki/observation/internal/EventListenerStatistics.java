@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.xwiki.management.InvocationStatistics;
+
+/**
+ * Measure the invocations of the event listeners, by listener and event class. Nothing is measured until the
+ * statistics are enabled.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class EventListenerStatistics implements EventListenerStatisticsMBean
+{
+    private static final String[] INDEX = new String[] { "listener", "event" };
+
+    private volatile boolean enabled;
+
+    private final ConcurrentMap<String, ConcurrentMap<Class<?>, InvocationStatistics>> statistics =
+        new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param listenerName the name of the listener which has been called
+     * @param eventClass the class of the event sent to the listener
+     * @param nanos the time spent in the listener in nanoseconds
+     * @param failed true if the listener failed with an exception
+     */
+    public void record(String listenerName, Class<?> eventClass, long nanos, boolean failed)
+    {
+        ConcurrentMap<Class<?>, InvocationStatistics> listenerStatistics = this.statistics.get(listenerName);
+        if (listenerStatistics == null) {
+            this.statistics.putIfAbsent(listenerName, new ConcurrentHashMap<Class<?>, InvocationStatistics>());
+            listenerStatistics = this.statistics.get(listenerName);
+        }
+
+        InvocationStatistics.getOrCreate(listenerStatistics, eventClass).record(nanos, failed);
+    }
+
+    /**
+     * @param listenerName the name of the listener
+     * @param eventClass the class of the event
+     * @return the statistics of the passed listener for the passed event class, null if it was never measured
+     */
+    InvocationStatistics get(String listenerName, Class<?> eventClass)
+    {
+        Map<Class<?>, InvocationStatistics> listenerStatistics = this.statistics.get(listenerName);
+
+        return listenerStatistics != null ? listenerStatistics.get(eventClass) : null;
+    }
+
+    /**
+     * @param listenerName the name of the listener to forget
+     */
+    public void remove(String listenerName)
+    {
+        this.statistics.remove(listenerName);
+    }
+
+    @Override
+    public void reset()
+    {
+        this.statistics.clear();
+    }
+
+    @Override
+    public TabularData getStatistics()
+    {
+        try {
+            CompositeType rowType = InvocationStatistics.createRowType("listenerStatistics",
+                "The invocations of a listener for an event class", INDEX,
+                new String[] { "The name of the listener", "The class of the event" });
+            TabularData data = new TabularDataSupport(
+                new TabularType("statistics", "The invocations of the listeners by event class", rowType, INDEX));
+
+            for (Map.Entry<String, ConcurrentMap<Class<?>, InvocationStatistics>> listenerEntry : this.statistics
+                .entrySet()) {
+                for (Map.Entry<Class<?>, InvocationStatistics> eventEntry : listenerEntry.getValue().entrySet()) {
+                    data.put(eventEntry.getValue().toCompositeData(rowType, INDEX, listenerEntry.getKey(),
+                        eventEntry.getKey().getName()));
+                }
+            }
+
+            return data;
+        } catch (OpenDataException e) {
+            throw new RuntimeException("Failed to gather the event listener statistics", e);
+        }
+    }
+}
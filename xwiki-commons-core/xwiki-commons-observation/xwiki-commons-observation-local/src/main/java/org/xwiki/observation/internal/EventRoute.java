@@ -0,0 +1,309 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.xwiki.observation.event.AbstractFilterableEvent;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.filter.AlwaysMatchingEventFilter;
+import org.xwiki.observation.event.filter.EventFilter;
+import org.xwiki.observation.event.filter.FixedNameEventFilter;
+import org.xwiki.observation.event.filter.RegexEventFilter;
+
+/**
+ * The listeners to notify for a given event class, indexed on the filters of the events they are registered to.
+ * <p>
+ * A listener registered only to {@link AbstractFilterableEvent}s with a {@link FixedNameEventFilter} can only match an
+ * event with the same filter name so it's indexed by name. A listener registered to {@link RegexEventFilter}s can only
+ * match an event whose filter name matches one of the regular expressions so all the regular expressions are combined
+ * into a single one used to skip all those listeners at once. The other listeners are always candidates.
+ * <p>
+ * The candidates still have to be matched against the event. Instances are immutable.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class EventRoute
+{
+    /**
+     * A route without any listener.
+     */
+    static final EventRoute EMPTY = new EventRoute(new RegisteredListener[0]);
+
+    /**
+     * Regular expressions which can't be safely combined with others: back references and named groups (which
+     * depend on the group numbering), quotes and flags (which may extend beyond the expression).
+     */
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\([1-9]|k<|Q)|\\(\\?([idmsuxU-]+[:)]|<[a-zA-Z])");
+
+    private static final String MATCHES = "matches";
+
+    /**
+     * Indicate for each {@link AbstractFilterableEvent} class if the standard matching is not overwritten.
+     */
+    private static final ClassValue<Boolean> STANDARD_MATCHING = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            try {
+                return type.getMethod(MATCHES, Object.class).getDeclaringClass() == AbstractFilterableEvent.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private final RegisteredListener[] listeners;
+
+    /**
+     * The positions of the listeners which are always candidates.
+     */
+    private final int[] unfilteredPositions;
+
+    /**
+     * The listeners which are always candidates.
+     */
+    private final RegisteredListener[] unfiltered;
+
+    /**
+     * The positions of the listeners candidate for each filter name (including the unfiltered ones).
+     */
+    private final Map<String, int[]> namedPositions = new HashMap<>();
+
+    /**
+     * The listeners candidate for each filter name (including the unfiltered ones).
+     */
+    private final Map<String, RegisteredListener[]> named = new HashMap<>();
+
+    /**
+     * The positions of the listeners registered to a {@link RegexEventFilter}.
+     */
+    private final int[] regexPositions;
+
+    /**
+     * Matches all the filter names matched by the regular expressions of the listeners registered to a
+     * {@link RegexEventFilter}, null if they should always be candidates.
+     */
+    private final Pattern regexPrefilter;
+
+    /**
+     * @param listeners the listeners to notify for the event class, in notification order
+     */
+    EventRoute(RegisteredListener[] listeners)
+    {
+        this.listeners = listeners;
+
+        List<Integer> unfilteredList = new ArrayList<>();
+        Map<String, List<Integer>> namedLists = new HashMap<>();
+        List<Integer> regexList = new ArrayList<>();
+        Set<String> regexes = new LinkedHashSet<>();
+        boolean combinable = true;
+
+        for (int position = 0; position < listeners.length; ++position) {
+            Set<String> names = new LinkedHashSet<>();
+            Set<String> listenerRegexes = new LinkedHashSet<>();
+            if (!getFilters(listeners[position], names, listenerRegexes)) {
+                unfilteredList.add(position);
+            } else {
+                for (String name : names) {
+                    List<Integer> namedList = namedLists.get(name);
+                    if (namedList == null) {
+                        namedList = new ArrayList<>();
+                        namedLists.put(name, namedList);
+                    }
+                    namedList.add(position);
+                }
+                if (!listenerRegexes.isEmpty()) {
+                    regexList.add(position);
+                    regexes.addAll(listenerRegexes);
+                }
+            }
+        }
+
+        this.unfilteredPositions = toArray(unfilteredList);
+        this.unfiltered = getListeners(this.unfilteredPositions);
+        for (Map.Entry<String, List<Integer>> entry : namedLists.entrySet()) {
+            int[] positions = merge(this.unfilteredPositions, toArray(entry.getValue()));
+            this.namedPositions.put(entry.getKey(), positions);
+            this.named.put(entry.getKey(), getListeners(positions));
+        }
+        this.regexPositions = toArray(regexList);
+        this.regexPrefilter = compile(regexes);
+    }
+
+    /**
+     * @param listener the registered listener
+     * @param names the names of the {@link FixedNameEventFilter}s of the listener
+     * @param regexes the regular expressions of the {@link RegexEventFilter}s of the listener
+     * @return false if one of the events of the listener is not filtered by name
+     */
+    private boolean getFilters(RegisteredListener listener, Set<String> names, Set<String> regexes)
+    {
+        for (Event event : listener.getEvents()) {
+            if (!isFilteredByName(event)) {
+                return false;
+            }
+
+            EventFilter filter = ((AbstractFilterableEvent) event).getEventFilter();
+            if (filter.getClass() == FixedNameEventFilter.class && filter.getFilter() != null) {
+                names.add(filter.getFilter());
+            } else if (filter.getClass() == RegexEventFilter.class) {
+                regexes.add(filter.getFilter());
+            } else {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param event an event
+     * @return true if the event can only match an event of the same class (or a subclass) with a compatible filter
+     *         name
+     */
+    static boolean isFilteredByName(Event event)
+    {
+        return event instanceof AbstractFilterableEvent && STANDARD_MATCHING.get(event.getClass());
+    }
+
+    private Pattern compile(Set<String> regexes)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String regex : regexes) {
+            if (NOT_COMBINABLE.matcher(regex).find()) {
+                return null;
+            }
+
+            if (builder.length() > 0) {
+                builder.append('|');
+            }
+            builder.append("(?:").append(regex).append(')');
+        }
+
+        try {
+            return builder.length() > 0 ? Pattern.compile(builder.toString()) : null;
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return all the listeners of the route, in notification order
+     */
+    RegisteredListener[] getListeners()
+    {
+        return this.listeners;
+    }
+
+    /**
+     * @param event the event to send
+     * @return the listeners which may match the passed event, in notification order
+     */
+    RegisteredListener[] getCandidates(Event event)
+    {
+        if (this.unfiltered.length == this.listeners.length) {
+            return this.listeners;
+        }
+
+        if (!(event instanceof AbstractFilterableEvent)) {
+            return this.unfiltered;
+        }
+
+        EventFilter filter = ((AbstractFilterableEvent) event).getEventFilter();
+        if (filter == null || filter.getFilter() == null) {
+            return this.unfiltered;
+        }
+        if (filter.getClass() != FixedNameEventFilter.class && filter.getClass() != AlwaysMatchingEventFilter.class) {
+            // An event matches itself whatever its filter
+            return this.listeners;
+        }
+
+        return getCandidates(filter.getFilter());
+    }
+
+    private RegisteredListener[] getCandidates(String name)
+    {
+        int[] positions = this.namedPositions.get(name);
+        if (this.regexPositions.length > 0
+            && (this.regexPrefilter == null || this.regexPrefilter.matcher(name).matches())) {
+            return getListeners(merge(positions != null ? positions : this.unfilteredPositions,
+                this.regexPositions));
+        }
+
+        return positions != null ? this.named.get(name) : this.unfiltered;
+    }
+
+    private RegisteredListener[] getListeners(int[] positions)
+    {
+        RegisteredListener[] result = new RegisteredListener[positions.length];
+        for (int i = 0; i < positions.length; ++i) {
+            result[i] = this.listeners[positions[i]];
+        }
+
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = list.get(i);
+        }
+
+        return array;
+    }
+
+    /**
+     * @return the sorted union of the passed sorted positions
+     */
+    private static int[] merge(int[] positions1, int[] positions2)
+    {
+        int[] result = new int[positions1.length + positions2.length];
+
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < positions1.length || j < positions2.length) {
+            int position;
+            if (j == positions2.length || (i < positions1.length && positions1[i] <= positions2[j])) {
+                position = positions1[i++];
+            } else {
+                position = positions2[j++];
+            }
+
+            if (size == 0 || result[size - 1] != position) {
+                result[size++] = position;
+            }
+        }
+
+        return size < result.length ? Arrays.copyOf(result, size) : result;
+    }
+}
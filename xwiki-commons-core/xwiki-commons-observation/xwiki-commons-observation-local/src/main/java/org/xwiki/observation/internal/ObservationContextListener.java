@@ -19,8 +19,6 @@
  */
 package org.xwiki.observation.internal;
 
-import java.util.Stack;
-
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -30,13 +28,14 @@
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.observation.AbstractEventListener;
-import org.xwiki.observation.event.AllEvent;
+import org.xwiki.observation.ListenedEvents;
 import org.xwiki.observation.event.BeginEvent;
 import org.xwiki.observation.event.EndEvent;
 import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.InstanceOfEvent;
 
 /**
- * Listen to all events and stack {@link BeginEvent}.
+ * Listen to {@link BeginEvent} and {@link EndEvent} events and stack {@link BeginEvent}.
  *
  * @version $Id$
  * @since 3.2M1
@@ -44,6 +43,7 @@
 @Component
 @Singleton
 @Named("ObservationContextListener")
+@ListenedEvents({BeginEvent.class, EndEvent.class})
 public class ObservationContextListener extends AbstractEventListener
 {
     /**
@@ -63,19 +63,20 @@ public class ObservationContextListener extends AbstractEventListener
      */
     public ObservationContextListener()
     {
-        super("ObservationContextListener", AllEvent.ALLEVENT);
+        super("ObservationContextListener", new InstanceOfEvent(BeginEvent.class),
+            new InstanceOfEvent(EndEvent.class));
     }
 
     /**
      * @return the events stacked in the execution context
      */
-    private Stack<BeginEvent> getCurrentEvents()
+    private BeginEvents getCurrentEvents()
     {
-        Stack<BeginEvent> events = null;
+        BeginEvents events = null;
 
         ExecutionContext context = this.execution.getContext();
         if (context != null) {
-            events = (Stack<BeginEvent>) context.getProperty(DefaultObservationContext.KEY_EVENTS);
+            events = context.getProperty(DefaultObservationContext.KEY_EVENTS);
         }
 
         return events;
@@ -88,10 +89,10 @@ private void pushCurrentEvent(BeginEvent event)
     {
         ExecutionContext context = this.execution.getContext();
         if (context != null) {
-            Stack<BeginEvent> events = (Stack<BeginEvent>) context.getProperty(DefaultObservationContext.KEY_EVENTS);
+            BeginEvents events = context.getProperty(DefaultObservationContext.KEY_EVENTS);
 
             if (events == null) {
-                events = new Stack<BeginEvent>();
+                events = new BeginEvents();
                 context.setProperty(DefaultObservationContext.KEY_EVENTS, events);
             }
 
@@ -107,11 +108,9 @@ public void onEvent(Event event, Object source, Object data)
         if (event instanceof BeginEvent) {
             pushCurrentEvent((BeginEvent) event);
         } else if (event instanceof EndEvent) {
-            Stack<BeginEvent> events = getCurrentEvents();
+            BeginEvents events = getCurrentEvents();
 
-            if (events != null && !events.isEmpty()) {
-                events.pop();
-            } else {
+            if (events == null || events.pop() == null) {
                 this.logger.error("Can't find any begin event corresponding to [{}]", event);
             }
         }
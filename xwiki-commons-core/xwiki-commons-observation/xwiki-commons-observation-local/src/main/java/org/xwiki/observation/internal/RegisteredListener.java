@@ -0,0 +1,161 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Helper class to store the list of events of a given type associated with a given listener. We need this for
+ * performance reasons and also in order to be able to add events after a listener has been registered.
+ * <p>
+ * Instances are immutable so that they can be shared with the threads sending events.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class RegisteredListener
+{
+    /**
+     * The name under which the listener is registered.
+     */
+    private final String name;
+
+    /**
+     * Events of a given type associated with a given listener.
+     */
+    private final Event[] events;
+
+    /**
+     * Listener associated with the events.
+     */
+    private final EventListener listener;
+
+    /**
+     * @param name the name under which the listener is registered
+     * @param listener the listener associated with the events
+     * @param events the events to associate with the passed listener
+     */
+    RegisteredListener(String name, EventListener listener, Event... events)
+    {
+        this.name = name;
+        this.listener = listener;
+        this.events = events;
+    }
+
+    /**
+     * @return the name under which the listener is registered
+     */
+    String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return the events associated with the listener
+     */
+    Event[] getEvents()
+    {
+        return this.events;
+    }
+
+    /**
+     * @return the listener associated with the events
+     */
+    EventListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * @param event the event to add
+     * @return a copy of this registered listener with the passed event
+     */
+    RegisteredListener addEvent(Event event)
+    {
+        return new RegisteredListener(this.name, this.listener, ArrayUtils.add(this.events, event));
+    }
+
+    /**
+     * @param event the event to remove
+     * @return a copy of this registered listener without the passed event
+     */
+    RegisteredListener removeEvent(Event event)
+    {
+        return new RegisteredListener(this.name, this.listener, ArrayUtils.removeElement(this.events, event));
+    }
+
+    /**
+     * @param otherEvents the events to add
+     * @return a copy of this registered listener with the passed events
+     */
+    RegisteredListener addEvents(Event[] otherEvents)
+    {
+        return new RegisteredListener(this.name, this.listener, ArrayUtils.addAll(this.events, otherEvents));
+    }
+
+    /**
+     * @param listeners the registered listeners, can be null
+     * @param listenerName the name of the listener to find
+     * @return the index of the listener with the passed name, -1 if there is none
+     */
+    static int indexOf(RegisteredListener[] listeners, String listenerName)
+    {
+        if (listeners != null) {
+            for (int i = 0; i < listeners.length; ++i) {
+                if (listeners[i].name.equals(listenerName)) {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param listeners the registered listeners, can be null
+     * @param listenerName the name of the listener to replace
+     * @param registeredListener the new registered listener or null to remove the listener
+     * @return a copy of the passed listeners where the listener with the passed name is replaced (or added or
+     *         removed), the passed listeners if there is nothing to remove
+     */
+    static RegisteredListener[] set(RegisteredListener[] listeners, String listenerName,
+        RegisteredListener registeredListener)
+    {
+        int index = indexOf(listeners, listenerName);
+
+        if (index >= 0) {
+            if (registeredListener != null) {
+                RegisteredListener[] newListeners = listeners.clone();
+                newListeners[index] = registeredListener;
+
+                return newListeners;
+            } else {
+                return ArrayUtils.remove(listeners, index);
+            }
+        } else if (registeredListener != null) {
+            return listeners != null ? ArrayUtils.add(listeners, registeredListener)
+                : new RegisteredListener[] { registeredListener };
+        }
+
+        return listeners;
+    }
+}
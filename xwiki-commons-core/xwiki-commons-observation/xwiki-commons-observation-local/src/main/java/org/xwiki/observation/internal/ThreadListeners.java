@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The listeners receiving only the events sent from the thread which registered them.
+ * <p>
+ * The listeners of a thread are stored in an array which is replaced each time a listener is added or removed so that
+ * the listeners can be modified while being notified.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+final class ThreadListeners
+{
+    private final ThreadLocal<RegisteredListener[]> listeners = new ThreadLocal<>();
+
+    /**
+     * The number of threads having listeners, to not even look at the current thread listeners when there is none.
+     */
+    private final AtomicInteger threads = new AtomicInteger();
+
+    /**
+     * @param registeredListener the listener to add to the current thread, replacing any listener with the same name
+     */
+    void add(RegisteredListener registeredListener)
+    {
+        set(registeredListener.getName(), registeredListener);
+    }
+
+    /**
+     * @param listenerName the name of the listener to remove from the current thread
+     */
+    void remove(String listenerName)
+    {
+        set(listenerName, null);
+    }
+
+    private void set(String listenerName, RegisteredListener registeredListener)
+    {
+        RegisteredListener[] currentListeners = this.listeners.get();
+        RegisteredListener[] newListeners = RegisteredListener.set(currentListeners, listenerName, registeredListener);
+
+        if (newListeners != currentListeners) {
+            if (newListeners.length > 0) {
+                this.listeners.set(newListeners);
+            } else {
+                // Don't keep anything in the thread once it does not have listeners anymore
+                this.listeners.remove();
+            }
+
+            if (currentListeners == null) {
+                this.threads.incrementAndGet();
+            } else if (newListeners.length == 0) {
+                this.threads.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the listeners of the current thread, null if there is none
+     */
+    RegisteredListener[] get()
+    {
+        return this.threads.get() > 0 ? this.listeners.get() : null;
+    }
+}
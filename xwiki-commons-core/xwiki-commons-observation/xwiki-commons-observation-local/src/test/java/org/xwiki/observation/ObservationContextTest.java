@@ -24,6 +24,7 @@
 import org.junit.Test;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
+import org.xwiki.observation.event.AbstractFilterableEvent;
 import org.xwiki.observation.event.BeginEvent;
 import org.xwiki.observation.event.EndEvent;
 import org.xwiki.observation.event.Event;
@@ -43,6 +44,26 @@
  */
 public class ObservationContextTest
 {
+    public static class FilterableBeginEvent extends AbstractFilterableEvent implements BeginEvent
+    {
+        public FilterableBeginEvent()
+        {
+        }
+
+        public FilterableBeginEvent(String name)
+        {
+            super(name);
+        }
+    }
+
+    public static class ChildBeginEvent extends FilterableBeginEvent
+    {
+        public ChildBeginEvent(String name)
+        {
+            super(name);
+        }
+    }
+
     @Rule
     public final MockitoComponentMockingRule<ObservationContext> mocker =
         new MockitoComponentMockingRule<ObservationContext>(DefaultObservationContext.class);
@@ -97,4 +118,33 @@ public void test() throws Exception
         Assert.assertFalse(this.mocker.getComponentUnderTest().isIn(beginEvent1));
         Assert.assertFalse(this.mocker.getComponentUnderTest().isIn(beginEvent2));
     }
+
+    @Test
+    public void testFilterableEvents() throws Exception
+    {
+        this.mocker.registerComponent(ObservationContextListener.class);
+        this.mocker.registerComponent(DefaultObservationManager.class);
+
+        ObservationManager manager = this.mocker.getInstance(ObservationManager.class);
+        Execution execution = this.mocker.getInstance(Execution.class);
+
+        when(execution.getContext()).thenReturn(new ExecutionContext());
+
+        ObservationContext observationContext = this.mocker.getComponentUnderTest();
+
+        manager.notify(new FilterableBeginEvent("parent"), null);
+        manager.notify(new ChildBeginEvent("child"), null);
+
+        Assert.assertTrue(observationContext.isIn(new FilterableBeginEvent()));
+        Assert.assertTrue(observationContext.isIn(new FilterableBeginEvent("parent")));
+        Assert.assertTrue(observationContext.isIn(new FilterableBeginEvent("child")));
+        Assert.assertTrue(observationContext.isIn(new ChildBeginEvent("child")));
+        Assert.assertFalse(observationContext.isIn(new ChildBeginEvent("parent")));
+        Assert.assertFalse(observationContext.isIn(new FilterableBeginEvent("other")));
+
+        manager.notify(mock(EndEvent.class), null);
+
+        Assert.assertFalse(observationContext.isIn(new FilterableBeginEvent("child")));
+        Assert.assertTrue(observationContext.isIn(new FilterableBeginEvent("parent")));
+    }
 }
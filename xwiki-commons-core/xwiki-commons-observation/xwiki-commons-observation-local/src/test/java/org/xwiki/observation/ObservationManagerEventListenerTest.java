@@ -19,7 +19,10 @@
  */
 package org.xwiki.observation;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -28,6 +31,8 @@
 import org.xwiki.component.descriptor.DefaultComponentDescriptor;
 import org.xwiki.component.internal.StackingComponentEventManager;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.observation.event.ActionExecutionEvent;
+import org.xwiki.observation.event.ApplicationStartedEvent;
 import org.xwiki.observation.event.Event;
 import org.xwiki.observation.internal.DefaultObservationManager;
 import org.xwiki.observation.test.TestEventListener;
@@ -43,6 +48,27 @@
  */
 public class ObservationManagerEventListenerTest
 {
+    @ListenedEvents(ActionExecutionEvent.class)
+    public static class DeferredListener extends AbstractEventListener
+    {
+        public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+        public final List<Event> events = new ArrayList<>();
+
+        public DeferredListener()
+        {
+            super("deferred", new ActionExecutionEvent("view"));
+
+            INSTANCES.incrementAndGet();
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            this.events.add(event);
+        }
+    }
+
     @Rule
     public final MockitoComponentMockingRule<ObservationManager> mocker =
         new MockitoComponentMockingRule<ObservationManager>(DefaultObservationManager.class);
@@ -100,4 +126,33 @@ public void testInjectObservationManagerInAListener() throws ComponentLookupExce
 
         Assert.assertNotNull(listener);
     }
+
+    @Test
+    public void testDeferredListenerComponent() throws Exception
+    {
+        DeferredListener.INSTANCES.set(0);
+
+        DefaultComponentDescriptor<EventListener> descriptor = new DefaultComponentDescriptor<EventListener>();
+        descriptor.setImplementation(DeferredListener.class);
+        descriptor.setRoleType(EventListener.class);
+        descriptor.setRoleHint("deferred");
+        this.mocker.registerComponent(descriptor);
+
+        this.manager.notify(new ApplicationStartedEvent(), null);
+
+        Assert.assertEquals(0, DeferredListener.INSTANCES.get());
+
+        this.manager.notify(new ActionExecutionEvent("edit"), null);
+
+        Assert.assertEquals(1, DeferredListener.INSTANCES.get());
+
+        DeferredListener listener = (DeferredListener) this.manager.getListener("deferred");
+        Assert.assertTrue(listener.events.isEmpty());
+
+        ActionExecutionEvent event = new ActionExecutionEvent("view");
+        this.manager.notify(event, null);
+
+        Assert.assertEquals(Arrays.asList(event), listener.events);
+        Assert.assertEquals(1, DeferredListener.INSTANCES.get());
+    }
 }
@@ -19,24 +19,49 @@
  */
 package org.xwiki.observation;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.openmbean.CompositeData;
 
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.management.JMXBeanRegistration;
+import org.xwiki.observation.event.AbstractFilterableEvent;
 import org.xwiki.observation.event.ActionExecutionEvent;
 import org.xwiki.observation.event.AllEvent;
+import org.xwiki.observation.event.ApplicationStartedEvent;
+import org.xwiki.observation.event.ApplicationStoppedEvent;
 import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.InstanceOfEvent;
+import org.xwiki.observation.event.filter.EventFilter;
+import org.xwiki.observation.event.filter.RegexEventFilter;
 import org.xwiki.observation.internal.DefaultObservationManager;
+import org.xwiki.observation.internal.EventListenerStatisticsMBean;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -49,6 +74,23 @@
  */
 public class ObservationManagerTest
 {
+    public static class DocumentEvent extends AbstractFilterableEvent
+    {
+        public DocumentEvent()
+        {
+        }
+
+        public DocumentEvent(String name)
+        {
+            super(name);
+        }
+
+        public DocumentEvent(EventFilter filter)
+        {
+            super(filter);
+        }
+    }
+
     @Rule
     public final MockitoComponentMockingRule<ObservationManager> mocker =
         new MockitoComponentMockingRule<ObservationManager>(DefaultObservationManager.class);
@@ -188,6 +230,36 @@ public void testRegisterListenerForAllEvents() throws ComponentLookupException
         verify(listener).onEvent(event, "some source", "some data");
     }
 
+    /** Verify that we can register a listener to receive all the events of a given type. */
+    @Test
+    public void testRegisterListenerForEventType() throws ComponentLookupException
+    {
+        final EventListener listener = mock(EventListener.class);
+        final Event startedEvent = new ApplicationStartedEvent();
+        final Event stoppedEvent = new ApplicationStoppedEvent();
+
+        when(listener.getName()).thenReturn("mylistener");
+        // Registering to both the event and its type should not lead to several notifications
+        when(listener.getEvents()).thenReturn(
+            Arrays.asList(new InstanceOfEvent(ApplicationStartedEvent.class), new ApplicationStartedEvent()));
+
+        ObservationManager observationManager = this.mocker.getComponentUnderTest();
+        observationManager.addListener(listener);
+        observationManager.notify(startedEvent, "some source", "some data");
+        observationManager.notify(stoppedEvent, "some source", "some data");
+        verify(listener).onEvent(startedEvent, "some source", "some data");
+        verify(listener, never()).onEvent(same(stoppedEvent), any(), any());
+
+        // Make sure the routes are updated
+        observationManager.addEvent("mylistener", new InstanceOfEvent(Event.class));
+        observationManager.notify(stoppedEvent, "some source", "some data");
+        verify(listener).onEvent(stoppedEvent, "some source", "some data");
+
+        observationManager.removeListener("mylistener");
+        observationManager.notify(startedEvent, "some source", "some data");
+        verify(listener).onEvent(startedEvent, "some source", "some data");
+    }
+
     /** Verify that a warning is logged is we try to register a listener with the same name. */
     @Test
     public void testRegisterSameListenerSeveralTimes() throws ComponentLookupException
@@ -235,4 +307,266 @@ public void testRegisterListenerForTwoEventsOfSameType() throws ComponentLookupE
         verify(listener).onEvent(eventMatcher1, "some source", "some data");
         verify(listener).onEvent(eventMatcher2, "some source", "some data");
     }
+
+    /** Verify that listeners can be modified while events are being sent. */
+    @Test
+    public void testNotifyWhileModifyingListeners() throws Exception
+    {
+        final EventListener listener = mock(EventListener.class);
+        @SuppressWarnings("deprecation")
+        final Event event = new ActionExecutionEvent("action");
+        @SuppressWarnings("deprecation")
+        final Event otherEvent = new ActionExecutionEvent("other");
+
+        when(listener.getName()).thenReturn("mylistener");
+        when(listener.getEvents()).thenReturn(Arrays.asList(event));
+
+        final ObservationManager observationManager = this.mocker.getComponentUnderTest();
+        observationManager.addListener(listener);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> future = executor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                while (!done.get()) {
+                    observationManager.addEvent("mylistener", otherEvent);
+                    observationManager.removeEvent("mylistener", otherEvent);
+                }
+            }
+        });
+
+        try {
+            for (int i = 0; i < 10000; ++i) {
+                observationManager.notify(event, null);
+            }
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+
+        future.get();
+        verify(listener, Mockito.times(10000)).onEvent(event, null, null);
+    }
+
+    /** Verify that asynchronous listeners are notified from another thread. */
+    @Test
+    public void testNotifyAsynchronousListener() throws Exception
+    {
+        final AsynchronousEventListener listener = mock(AsynchronousEventListener.class);
+        final Event event = new ApplicationStartedEvent();
+
+        when(listener.getName()).thenReturn("mylistener");
+        when(listener.getEvents()).thenReturn(Arrays.asList(event));
+        when(listener.getQueueCapacity()).thenReturn(10);
+
+        final Thread testThread = Thread.currentThread();
+        final CountDownLatch received = new CountDownLatch(1);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                if (Thread.currentThread() != testThread) {
+                    received.countDown();
+                }
+
+                return null;
+            }
+        }).when(listener).onEvent(event, "some source", "some data");
+
+        ObservationManager observationManager = this.mocker.getComponentUnderTest();
+        observationManager.addListener(listener);
+        Assert.assertSame(listener, observationManager.getListener("mylistener"));
+        observationManager.notify(event, "some source", "some data");
+
+        Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNotifyListenersFilteredByName() throws ComponentLookupException
+    {
+        ObservationManager observationManager = this.mocker.getComponentUnderTest();
+
+        List<String> notified = new ArrayList<>();
+        observationManager.addListener(createListener("all", notified, new DocumentEvent()));
+        for (int i = 0; i < 1000; ++i) {
+            observationManager.addListener(createListener("name" + i, notified, new DocumentEvent("document" + i)));
+        }
+        observationManager.addListener(
+            createListener("regex", notified, new DocumentEvent(new RegexEventFilter("document1[0-9]"))));
+        observationManager.addListener(createListener("both", notified, new DocumentEvent("other"),
+            new DocumentEvent(new RegexEventFilter("document2"))));
+
+        observationManager.notify(new DocumentEvent("document12"), null);
+        Assert.assertEquals(Arrays.asList("all", "name12", "regex"), notified);
+
+        notified.clear();
+        observationManager.notify(new DocumentEvent("document2"), null);
+        Assert.assertEquals(Arrays.asList("all", "name2", "both"), notified);
+
+        notified.clear();
+        observationManager.notify(new DocumentEvent("other"), null);
+        Assert.assertEquals(Arrays.asList("all", "both"), notified);
+
+        notified.clear();
+        observationManager.removeListener("name2");
+        observationManager.notify(new DocumentEvent("document2"), null);
+        Assert.assertEquals(Arrays.asList("all", "both"), notified);
+
+        notified.clear();
+        observationManager.notify(new ApplicationStartedEvent(), null);
+        Assert.assertEquals(Collections.emptyList(), notified);
+    }
+
+    @Test
+    public void testListenerStatistics() throws Exception
+    {
+        JMXBeanRegistration jmxRegistration = this.mocker.registerMockComponent(JMXBeanRegistration.class);
+
+        final EventListener listener = mock(EventListener.class);
+        final Event event = new ApplicationStartedEvent();
+
+        when(listener.getName()).thenReturn("mylistener");
+        when(listener.getEvents()).thenReturn(Arrays.asList(event));
+        doNothing().doThrow(new RuntimeException("error")).doNothing().when(listener).onEvent(event, null, null);
+
+        ObservationManager observationManager = this.mocker.getComponentUnderTest();
+        observationManager.addListener(listener);
+
+        ArgumentCaptor<Object> statisticsCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(jmxRegistration).registerMBean(statisticsCaptor.capture(),
+            eq("type=Observation,domain=EventListenerStatistics"));
+        EventListenerStatisticsMBean statistics = (EventListenerStatisticsMBean) statisticsCaptor.getValue();
+
+        // Nothing is measured by default
+        observationManager.notify(event, null);
+        Assert.assertTrue(statistics.getStatistics().isEmpty());
+
+        statistics.setEnabled(true);
+        observationManager.notify(event, null);
+        observationManager.notify(event, null);
+
+        CompositeData row =
+            statistics.getStatistics().get(new Object[] { "mylistener", ApplicationStartedEvent.class.getName() });
+        Assert.assertEquals(2L, row.get("invocations"));
+        Assert.assertEquals(1L, row.get("errors"));
+
+        observationManager.removeListener("mylistener");
+        Assert.assertTrue(statistics.getStatistics().isEmpty());
+    }
+
+    @Test
+    public void testThreadListener() throws Exception
+    {
+        final ObservationManager observationManager = this.mocker.getComponentUnderTest();
+
+        List<String> notified = new ArrayList<>();
+        observationManager.addThreadListener(createListener("thread", notified, new ApplicationStartedEvent()));
+
+        observationManager.notify(new ApplicationStartedEvent(), null);
+        Assert.assertEquals(Arrays.asList("thread"), notified);
+
+        // Not visible from other threads
+        Assert.assertNull(observationManager.getListener("thread"));
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                observationManager.notify(new ApplicationStartedEvent(), null);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertEquals(Arrays.asList("thread"), notified);
+
+        observationManager.removeThreadListener("thread");
+        observationManager.notify(new ApplicationStartedEvent(), null);
+        Assert.assertEquals(Arrays.asList("thread"), notified);
+    }
+
+    @Test
+    public void testNotifyBatch() throws Exception
+    {
+        ObservationManager observationManager = this.mocker.getComponentUnderTest();
+
+        List<String> notified = new ArrayList<>();
+        observationManager.addListener(createListener("single", notified, new DocumentEvent()));
+
+        BatchEventListener batchListener = mock(BatchEventListener.class);
+        when(batchListener.getName()).thenReturn("batch");
+        when(batchListener.getEvents()).thenReturn(Arrays.<Event>asList(new DocumentEvent("document1")));
+        observationManager.addListener(batchListener);
+
+        List<Event> events = Arrays.<Event>asList(new DocumentEvent("document1"), new DocumentEvent("document2"),
+            new DocumentEvent("document1"), new ApplicationStartedEvent());
+
+        observationManager.notifyBatch(events, "source", "data");
+        Assert.assertEquals(Arrays.asList("single", "single", "single"), notified);
+        verify(batchListener).onEvents(Arrays.asList(events.get(0), events.get(2)), "source", "data");
+        verify(batchListener, never()).onEvent(any(Event.class), any(), any());
+
+        // Equal events are only sent once when coalescing
+        notified.clear();
+        observationManager.notifyBatch(events, "source", "data", true);
+        Assert.assertEquals(Arrays.asList("single", "single"), notified);
+        verify(batchListener).onEvents(Arrays.asList(events.get(0)), "source", "data");
+    }
+
+    @Test
+    public void testNotifyBatchWithEventsData() throws Exception
+    {
+        ObservationManager observationManager = this.mocker.getComponentUnderTest();
+
+        EventListener listener = mock(EventListener.class);
+        when(listener.getName()).thenReturn("single");
+        when(listener.getEvents()).thenReturn(Arrays.<Event>asList(new DocumentEvent()));
+        observationManager.addListener(listener);
+
+        BatchEventListener batchListener = mock(BatchEventListener.class);
+        when(batchListener.getName()).thenReturn("batch");
+        when(batchListener.getEvents()).thenReturn(Arrays.<Event>asList(new DocumentEvent()));
+        observationManager.addListener(batchListener);
+
+        List<Event> events = Arrays.<Event>asList(new DocumentEvent("document1"), new DocumentEvent("document2"));
+
+        observationManager.notifyBatchWithEventsData(events, "source", Arrays.asList("data1", "data2"));
+        verify(listener).onEvent(events.get(0), "source", "data1");
+        verify(listener).onEvent(events.get(1), "source", "data2");
+        verify(batchListener).onEvents(events, "source", Arrays.asList("data1", "data2"));
+
+        // A list passed as data is shared by all the events
+        List<String> sharedData = Arrays.asList("shared");
+        observationManager.notifyBatch(events, "source", sharedData);
+        verify(listener).onEvent(events.get(0), "source", sharedData);
+        verify(listener).onEvent(events.get(1), "source", sharedData);
+        verify(batchListener).onEvents(events, "source", sharedData);
+    }
+
+    private EventListener createListener(final String name, final List<String> notified, final Event... events)
+    {
+        return new EventListener()
+        {
+            @Override
+            public String getName()
+            {
+                return name;
+            }
+
+            @Override
+            public List<Event> getEvents()
+            {
+                return Arrays.asList(events);
+            }
+
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                notified.add(name);
+            }
+        };
+    }
 }
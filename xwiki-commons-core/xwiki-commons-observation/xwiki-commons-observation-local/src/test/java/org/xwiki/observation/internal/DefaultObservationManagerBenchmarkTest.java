@@ -0,0 +1,259 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.AbstractFilterableEvent;
+import org.xwiki.observation.event.Event;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+/**
+ * Micro-benchmarks of the {@link DefaultObservationManager} dispatch. To stay reliable on any machine they only compare
+ * the best time of several rounds with a reference path, or assert the memory allocated in the steady state.
+ *
+ * @version $Id$
+ * @since 8.2M1
+ */
+public class DefaultObservationManagerBenchmarkTest
+{
+    private static final int ROUNDS = 10;
+
+    private static final int ITERATIONS = 20000;
+
+    private static final int LISTENERS = 20;
+
+    public static class TestEvent implements Event
+    {
+        @Override
+        public boolean matches(Object otherEvent)
+        {
+            return otherEvent instanceof TestEvent;
+        }
+    }
+
+    public static class DocumentEvent extends AbstractFilterableEvent
+    {
+        public DocumentEvent(String name)
+        {
+            super(name);
+        }
+    }
+
+    public static class CountingListener extends AbstractEventListener
+    {
+        private int count;
+
+        public CountingListener(String name, Event... events)
+        {
+            super(name, events);
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            ++this.count;
+        }
+    }
+
+    /**
+     * The way listeners used to be registered: a listener and a mutable list of events.
+     */
+    private static class ListRegisteredListener
+    {
+        private final EventListener listener;
+
+        private final List<Event> events;
+
+        ListRegisteredListener(EventListener listener)
+        {
+            this.listener = listener;
+            this.events = new ArrayList<>(listener.getEvents());
+        }
+    }
+
+    @Rule
+    public final MockitoComponentMockingRule<ObservationManager> mocker =
+        new MockitoComponentMockingRule<ObservationManager>(DefaultObservationManager.class);
+
+    /**
+     * @param operation the operation to measure
+     * @return the best average time of one call to the operation among all rounds, in nanoseconds
+     */
+    private static double measure(Callable<?> operation) throws Exception
+    {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; ++i) {
+                operation.call();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return (double) best / ITERATIONS;
+    }
+
+    /**
+     * @param operation the operation to measure
+     * @return the average number of bytes allocated by one call to the operation
+     */
+    private static double measureAllocation(Callable<?> operation) throws Exception
+    {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Warm up, so that only the steady state is measured
+        measure(operation);
+
+        long threadId = Thread.currentThread().getId();
+        long start = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            operation.call();
+        }
+
+        return (double) (allocationBean.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+    }
+
+    private static void assertFaster(String message, double optimized, double reference)
+    {
+        Assert.assertTrue(String.format("%s: [%.1f] ns instead of [%.1f] ns", message, optimized, reference),
+            optimized < reference);
+    }
+
+    @Test
+    public void notifyWithoutAllocation() throws Exception
+    {
+        final ObservationManager observationManager = this.mocker.getComponentUnderTest();
+
+        // The way listeners used to be stored for an event class
+        final Map<String, ListRegisteredListener> listeners = new ConcurrentHashMap<>();
+        for (int i = 0; i < LISTENERS; ++i) {
+            CountingListener listener = new CountingListener("listener" + i, new TestEvent());
+            observationManager.addListener(listener);
+            listeners.put(listener.getName(), new ListRegisteredListener(listener));
+        }
+
+        final TestEvent event = new TestEvent();
+
+        Callable<Object> notify = new Callable<Object>()
+        {
+            @Override
+            public Object call()
+            {
+                observationManager.notify(event, null, null);
+
+                return null;
+            }
+        };
+        Callable<Object> mapNotify = new Callable<Object>()
+        {
+            @Override
+            public Object call()
+            {
+                for (ListRegisteredListener listener : listeners.values()) {
+                    for (Event listenerEvent : listener.events) {
+                        if (listenerEvent.matches(event)) {
+                            listener.listener.onEvent(event, null, null);
+                            break;
+                        }
+                    }
+                }
+
+                return null;
+            }
+        };
+
+        Assert.assertEquals(0, measureAllocation(notify), 1);
+
+        // notify() also looks for the listeners of all events and of the current thread so only make sure it's not
+        // slower than walking the old structure (it's usually between 1.3 and 4 times faster)
+        double mapDispatch = measure(mapNotify);
+        double arrayDispatch = measure(notify);
+        assertFaster("Array dispatch much slower than map dispatch", arrayDispatch, mapDispatch * 2);
+    }
+
+    @Test
+    public void notifyNameFilteredListeners() throws Exception
+    {
+        final ObservationManager observationManager = this.mocker.getComponentUnderTest();
+
+        final List<ListRegisteredListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            CountingListener listener = new CountingListener("listener" + i, new DocumentEvent("document" + i));
+            observationManager.addListener(listener);
+            listeners.add(new ListRegisteredListener(listener));
+        }
+
+        final DocumentEvent event = new DocumentEvent("document500");
+
+        // What notify() used to do: try to match the event with all the events of all the listeners
+        double scan = measure(new Callable<Object>()
+        {
+            @Override
+            public Object call()
+            {
+                for (ListRegisteredListener listener : listeners) {
+                    for (Event listenerEvent : listener.events) {
+                        if (listenerEvent.matches(event)) {
+                            listener.listener.onEvent(event, null, null);
+                            break;
+                        }
+                    }
+                }
+
+                return null;
+            }
+        });
+
+        double index = measure(new Callable<Object>()
+        {
+            @Override
+            public Object call()
+            {
+                observationManager.notify(event, null, null);
+
+                return null;
+            }
+        });
+
+        // Only the listener registered for the event name is tried with the index
+        assertFaster("Indexed dispatch less than 10 times faster than matching all listeners", index * 10, scan);
+
+        Assert.assertEquals(0, ((CountingListener) listeners.get(499).listener).count);
+        Assert.assertTrue(((CountingListener) listeners.get(500).listener).count > 0);
+    }
+}
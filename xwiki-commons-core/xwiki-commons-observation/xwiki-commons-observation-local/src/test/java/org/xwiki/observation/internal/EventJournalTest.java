@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.AbstractFilterableEvent;
+import org.xwiki.observation.event.ApplicationStartedEvent;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.event.InstanceOfEvent;
+
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link EventJournal} and {@link EventJournalReplayer}.
+ *
+ * @version $Id$
+ */
+public class EventJournalTest
+{
+    public static class DocumentEvent extends AbstractFilterableEvent
+    {
+        public DocumentEvent(String name)
+        {
+            super(name);
+        }
+    }
+
+    private EventJournal journal = new EventJournal();
+
+    @Test
+    public void recordWhenDisabled()
+    {
+        this.journal.record(new ApplicationStartedEvent(), null, System.nanoTime(), 1000);
+
+        Assert.assertEquals(0, this.journal.getSize());
+    }
+
+    @Test
+    public void recordAndReplay() throws Exception
+    {
+        this.journal.setCapacity(3);
+        this.journal.setEnabled(true);
+
+        long start = System.nanoTime();
+        this.journal.record(new ApplicationStartedEvent(), null, start, 1000);
+        this.journal.record(new DocumentEvent("view"), "source", start + 10, 2000);
+        this.journal.record(new InstanceOfEvent(Event.class), null, start + 20, 3000);
+        this.journal.record(new ApplicationStartedEvent(), this, start + 30, 4000);
+
+        // The oldest event is overwritten
+        Assert.assertEquals(3, this.journal.getSize());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Assert.assertEquals(3, this.journal.write(stream));
+
+        List<EventJournalEntry> entries = EventJournal.read(new ByteArrayInputStream(stream.toByteArray()));
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals(DocumentEvent.class.getName(), entries.get(0).getEventType());
+        Assert.assertEquals("view", entries.get(0).getFilter());
+        Assert.assertEquals(String.class.getName(), entries.get(0).getSourceType());
+        Assert.assertEquals(2000, entries.get(0).getDuration());
+        Assert.assertEquals(10, entries.get(1).getTime() - entries.get(0).getTime());
+        Assert.assertNull(entries.get(1).getFilter());
+        Assert.assertEquals(getClass().getName(), entries.get(2).getSourceType());
+        Assert.assertEquals((int) Thread.currentThread().getId(), entries.get(2).getThread());
+
+        ObservationManager observationManager = mock(ObservationManager.class);
+        EventJournalReplayer replayer = new EventJournalReplayer(observationManager, getClass().getClassLoader());
+
+        // The InstanceOfEvent can't be recreated
+        Assert.assertEquals(2, replayer.replay(new ByteArrayInputStream(stream.toByteArray()), false));
+
+        ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+        verify(observationManager, times(2)).notify(eventCaptor.capture(), isNull(), isNull());
+        Assert.assertEquals("view", ((DocumentEvent) eventCaptor.getAllValues().get(0)).getEventFilter().getFilter());
+        Assert.assertTrue(eventCaptor.getAllValues().get(1) instanceof ApplicationStartedEvent);
+    }
+
+    @Test
+    public void readNestedEvents() throws Exception
+    {
+        this.journal.setEnabled(true);
+
+        // A listener of the parent event sends the nested event which is recorded first
+        long start = System.nanoTime();
+        this.journal.record(new DocumentEvent("nested"), null, start + 10, 1000);
+        this.journal.record(new DocumentEvent("parent"), null, start, 2000);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.journal.write(stream);
+
+        List<EventJournalEntry> entries = EventJournal.read(new ByteArrayInputStream(stream.toByteArray()));
+        Assert.assertEquals("parent", entries.get(0).getFilter());
+        Assert.assertEquals("nested", entries.get(1).getFilter());
+
+        ObservationManager observationManager = mock(ObservationManager.class);
+        EventJournalReplayer replayer = new EventJournalReplayer(observationManager, getClass().getClassLoader());
+        replayer.replay(new ByteArrayInputStream(stream.toByteArray()), false);
+
+        ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+        verify(observationManager, times(2)).notify(eventCaptor.capture(), isNull(), isNull());
+        Assert.assertEquals("parent",
+            ((DocumentEvent) eventCaptor.getAllValues().get(0)).getEventFilter().getFilter());
+        Assert.assertEquals("nested",
+            ((DocumentEvent) eventCaptor.getAllValues().get(1)).getEventFilter().getFilter());
+    }
+
+    @Test
+    public void recordWhenTooManyFilters() throws Exception
+    {
+        this.journal.setEnabled(true);
+
+        for (int i = 0; i < EventJournal.MAX_NAMES; ++i) {
+            this.journal.record(new DocumentEvent("document" + i), null, System.nanoTime(), 1000);
+        }
+        this.journal.record(new DocumentEvent("overflow"), "source", System.nanoTime(), 1000);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.journal.write(stream);
+
+        // The filters don't prevent new types from being recorded
+        List<EventJournalEntry> entries = EventJournal.read(new ByteArrayInputStream(stream.toByteArray()));
+        EventJournalEntry entry = entries.get(entries.size() - 1);
+        Assert.assertNull(entry.getFilter());
+        Assert.assertEquals(DocumentEvent.class.getName(), entry.getEventType());
+        Assert.assertEquals(String.class.getName(), entry.getSourceType());
+    }
+
+    @Test
+    public void clear()
+    {
+        this.journal.setEnabled(true);
+        this.journal.record(new ApplicationStartedEvent(), null, System.nanoTime(), 1000);
+        this.journal.clear();
+
+        Assert.assertEquals(0, this.journal.getSize());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.observation.AsynchronousEventListener;
+import org.xwiki.observation.event.ApplicationStartedEvent;
+import org.xwiki.observation.event.ApplicationStoppedEvent;
+import org.xwiki.observation.event.Event;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for {@link EventListenerQueue}.
+ *
+ * @version $Id$
+ */
+public class EventListenerQueueTest
+{
+    private static class TestListener implements AsynchronousEventListener
+    {
+        private final OverflowPolicy overflowPolicy;
+
+        private final List<Event> receivedEvents = new ArrayList<>();
+
+        TestListener(OverflowPolicy overflowPolicy)
+        {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        @Override
+        public String getName()
+        {
+            return "test";
+        }
+
+        @Override
+        public List<Event> getEvents()
+        {
+            return Arrays.<Event>asList(new ApplicationStartedEvent());
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            this.receivedEvents.add(event);
+        }
+
+        @Override
+        public int getQueueCapacity()
+        {
+            return 2;
+        }
+
+        @Override
+        public OverflowPolicy getOverflowPolicy()
+        {
+            return this.overflowPolicy;
+        }
+    }
+
+    /**
+     * Executor keeping the tasks until asked to run them.
+     */
+    private static class ManualExecutor implements Executor
+    {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command)
+        {
+            this.tasks.add(command);
+        }
+
+        void runAll()
+        {
+            while (!this.tasks.isEmpty()) {
+                this.tasks.remove(0).run();
+            }
+        }
+    }
+
+    private ManualExecutor executor = new ManualExecutor();
+
+    @Test
+    public void sendInOrder()
+    {
+        TestListener listener = new TestListener(AsynchronousEventListener.OverflowPolicy.DROP);
+        EventListenerQueue queue = new EventListenerQueue(listener, this.executor, mock(Logger.class));
+
+        Event event1 = new ApplicationStartedEvent();
+        Event event2 = new ApplicationStoppedEvent();
+        queue.onEvent(event1, null, null);
+        queue.onEvent(event2, null, null);
+
+        Assert.assertTrue(listener.receivedEvents.isEmpty());
+        Assert.assertEquals(2, queue.getSize());
+        Assert.assertEquals(2, queue.getCapacity());
+        Assert.assertEquals(1, this.executor.tasks.size());
+
+        this.executor.runAll();
+
+        Assert.assertEquals(Arrays.asList(event1, event2), listener.receivedEvents);
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertEquals(0, queue.getLag());
+        Assert.assertEquals(2, queue.getProcessedEvents());
+    }
+
+    @Test
+    public void dropWhenFull()
+    {
+        TestListener listener = new TestListener(AsynchronousEventListener.OverflowPolicy.DROP);
+        EventListenerQueue queue = new EventListenerQueue(listener, this.executor, mock(Logger.class));
+
+        queue.onEvent(new ApplicationStartedEvent(), null, null);
+        queue.onEvent(new ApplicationStartedEvent(), null, null);
+        queue.onEvent(new ApplicationStoppedEvent(), null, null);
+
+        this.executor.runAll();
+
+        Assert.assertEquals(2, listener.receivedEvents.size());
+        Assert.assertEquals(1, queue.getDroppedEvents());
+    }
+
+    @Test
+    public void coalesceWhenFull()
+    {
+        TestListener listener = new TestListener(AsynchronousEventListener.OverflowPolicy.COALESCE);
+        EventListenerQueue queue = new EventListenerQueue(listener, this.executor, mock(Logger.class));
+
+        Event event = new ApplicationStartedEvent();
+        queue.onEvent(event, "source", null);
+        queue.onEvent(new ApplicationStoppedEvent(), "source", null);
+        queue.onEvent(event, "source", null);
+
+        this.executor.runAll();
+
+        Assert.assertEquals(2, listener.receivedEvents.size());
+        Assert.assertEquals(1, queue.getCoalescedEvents());
+        Assert.assertEquals(0, queue.getDroppedEvents());
+    }
+
+    @Test
+    public void blockForALimitedTime()
+    {
+        TestListener listener = new TestListener(AsynchronousEventListener.OverflowPolicy.BLOCK);
+        EventListenerQueue queue = new EventListenerQueue(listener, this.executor, mock(Logger.class));
+        queue.setBlockTimeout(10);
+
+        // Nothing consumes the queue until the events are sent
+        queue.onEvent(new ApplicationStartedEvent(), null, null);
+        queue.onEvent(new ApplicationStartedEvent(), null, null);
+        queue.onEvent(new ApplicationStoppedEvent(), null, null);
+
+        this.executor.runAll();
+
+        Assert.assertEquals(2, listener.receivedEvents.size());
+        Assert.assertEquals(1, queue.getDroppedEvents());
+    }
+
+    @Test
+    public void rejectEventsAfterDispose() throws Exception
+    {
+        TestListener listener = new TestListener(AsynchronousEventListener.OverflowPolicy.BLOCK);
+        final EventListenerQueue queue = new EventListenerQueue(listener, this.executor, mock(Logger.class));
+
+        queue.onEvent(new ApplicationStartedEvent(), null, null);
+        queue.onEvent(new ApplicationStartedEvent(), null, null);
+
+        // Wait for some room in the full queue
+        Thread sender = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                queue.onEvent(new ApplicationStoppedEvent(), null, null);
+            }
+        };
+        sender.start();
+        for (int i = 0; i < 1000 && sender.getState() != Thread.State.TIMED_WAITING; ++i) {
+            Thread.sleep(1);
+        }
+
+        queue.dispose();
+
+        sender.join(5000);
+        Assert.assertFalse(sender.isAlive());
+
+        queue.onEvent(new ApplicationStartedEvent(), null, null);
+
+        this.executor.runAll();
+
+        Assert.assertTrue(listener.receivedEvents.isEmpty());
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertEquals(4, queue.getDroppedEvents());
+    }
+}
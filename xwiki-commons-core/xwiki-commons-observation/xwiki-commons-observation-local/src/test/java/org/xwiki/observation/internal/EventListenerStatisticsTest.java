@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.management.InvocationStatistics;
+import org.xwiki.observation.event.ApplicationStartedEvent;
+
+/**
+ * Unit tests for {@link EventListenerStatistics}.
+ *
+ * @version $Id$
+ */
+public class EventListenerStatisticsTest
+{
+    private EventListenerStatistics statistics = new EventListenerStatistics();
+
+    @Test
+    public void percentiles()
+    {
+        for (int i = 0; i < 98; ++i) {
+            this.statistics.record("listener", ApplicationStartedEvent.class, 1000, false);
+        }
+        this.statistics.record("listener", ApplicationStartedEvent.class, 100000, false);
+        this.statistics.record("listener", ApplicationStartedEvent.class, 10000000, true);
+
+        InvocationStatistics eventStatistics = this.statistics.get("listener", ApplicationStartedEvent.class);
+
+        Assert.assertEquals(100, eventStatistics.getInvocations());
+        Assert.assertEquals(1, eventStatistics.getErrors());
+        Assert.assertEquals(98 * 1000 + 100000 + 10000000, eventStatistics.getTotalTime());
+        Assert.assertEquals(10000000, eventStatistics.getMaxTime());
+
+        // Rounded up to the next power of 2
+        Assert.assertEquals(1023, eventStatistics.getPercentile(0.5));
+        Assert.assertEquals(131071, eventStatistics.getPercentile(0.99));
+        Assert.assertEquals(16777215, eventStatistics.getPercentile(1));
+    }
+
+    @Test
+    public void reset()
+    {
+        this.statistics.record("listener", ApplicationStartedEvent.class, 1000, false);
+        Assert.assertEquals(1, this.statistics.getStatistics().size());
+
+        this.statistics.reset();
+        Assert.assertNull(this.statistics.get("listener", ApplicationStartedEvent.class));
+        Assert.assertTrue(this.statistics.getStatistics().isEmpty());
+    }
+}
@@ -57,8 +57,7 @@ public ScriptContext getScriptContext()
         // The Script Context is set in ScriptExecutionContextInitializer, when the XWiki Execution Context is
         // initialized so we are guaranteed it is defined when this method is called.
         ScriptContext context =
-            (ScriptContext) this.execution.getContext()
-                .getProperty(ScriptExecutionContextInitializer.SCRIPT_CONTEXT_ID);
+            this.execution.getContext().getProperty(ScriptExecutionContextInitializer.SCRIPT_CONTEXT_KEY);
 
         // We re-initialize the Script Context with all Script Context Initializers. We do this in order to ensure
         // that the Script Context always contain correct values even if user scripts or XWiki code have modified them.
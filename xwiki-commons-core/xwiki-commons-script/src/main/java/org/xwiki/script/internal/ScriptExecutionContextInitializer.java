@@ -20,13 +20,16 @@
 package org.xwiki.script.internal;
 
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
+import javax.script.ScriptContext;
 import javax.script.SimpleScriptContext;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
 import org.xwiki.context.ExecutionContextInitializer;
+import org.xwiki.context.ExecutionContextKey;
 
 /**
  * Allow registering the Script Context in the Execution Context object since it's shared during the whole execution of
@@ -44,11 +47,35 @@ public class ScriptExecutionContextInitializer implements ExecutionContextInitia
      */
     public static final String SCRIPT_CONTEXT_ID = "scriptContext";
 
+    /**
+     * The key under which the Script Context is stored in the Execution Context.
+     *
+     * @since 8.2M1
+     */
+    public static final ExecutionContextKey<ScriptContext> SCRIPT_CONTEXT_KEY =
+        ExecutionContextKey.register(SCRIPT_CONTEXT_ID, ScriptContext.class);
+
+    /**
+     * The Script Context is only created when it's actually used.
+     */
+    private static final Provider<ScriptContext> SCRIPT_CONTEXT_PROVIDER = new Provider<ScriptContext>()
+    {
+        @Override
+        public ScriptContext get()
+        {
+            return new SimpleScriptContext();
+        }
+    };
+
     @Override
     public void initialize(ExecutionContext executionContext) throws ExecutionContextException
     {
         // We're storing an instance of the Script Context class in the Execution Context so that it can be
         // shared between different script invocations during the lifetime of the Execution Context.
-        executionContext.setProperty(SCRIPT_CONTEXT_ID, new SimpleScriptContext());
+        if (executionContext.hasProperty(SCRIPT_CONTEXT_KEY)) {
+            executionContext.setProperty(SCRIPT_CONTEXT_KEY, new SimpleScriptContext());
+        } else {
+            executionContext.newProperty(SCRIPT_CONTEXT_KEY).lazy(SCRIPT_CONTEXT_PROVIDER).declare();
+        }
     }
 }
@@ -43,6 +43,7 @@
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextKey;
 import org.xwiki.xml.html.HTMLCleaner;
 import org.xwiki.xml.html.HTMLCleanerConfiguration;
 import org.xwiki.xml.html.HTMLConstants;
@@ -59,6 +60,12 @@
 @Singleton
 public class DefaultHTMLCleaner implements HTMLCleaner, Initializable
 {
+    /**
+     * The key under which the {@link DocumentBuilder} is reused in the execution context.
+     */
+    private static final ExecutionContextKey<DocumentBuilder> DOCUMENT_BUILDER_KEY =
+        ExecutionContextKey.register(DocumentBuilder.class.getName(), DocumentBuilder.class);
+
     /**
      * {@link HTMLFilter} for filtering html lists.
      */
@@ -126,11 +133,11 @@ private DocumentBuilder getAvailableDocumentBuilder() throws ParserConfiguration
         ExecutionContext econtext = this.execution.getContext();
 
         if (econtext != null) {
-            DocumentBuilder documentBuilder = (DocumentBuilder) econtext.getProperty(DocumentBuilder.class.getName());
+            DocumentBuilder documentBuilder = econtext.getProperty(DOCUMENT_BUILDER_KEY);
 
             if (documentBuilder == null) {
                 documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-                econtext.setProperty(DocumentBuilder.class.getName(), documentBuilder);
+                econtext.setProperty(DOCUMENT_BUILDER_KEY, documentBuilder);
             }
 
             return documentBuilder;